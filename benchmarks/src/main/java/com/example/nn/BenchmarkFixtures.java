@@ -0,0 +1,76 @@
+package com.example.nn;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wires the production services by hand around in-memory collaborators.
+ */
+final class BenchmarkFixtures {
+
+    static final Map<Currency, BigDecimal> MIDS = Map.of(
+            Currency.USD, new BigDecimal("4.1605"),
+            Currency.EUR, new BigDecimal("4.5866"),
+            Currency.GBP, new BigDecimal("5.2303"),
+            Currency.CHF, new BigDecimal("4.6617"));
+
+    private BenchmarkFixtures() {
+    }
+
+    static RateProvider stubRateProvider() {
+        RateSource stub = new RateSource() {
+            @Override
+            public String getName() {
+                return "stub";
+            }
+
+            @Override
+            public RateSnapshot fetch() {
+                return new RateSnapshot(MIDS, LocalDate.now(), getName(), Instant.now());
+            }
+        };
+        var composite = new CompositeRateSource(List.of(stub), List.of("stub"), "failover",
+                new SimpleMeterRegistry(), false);
+        return new RateProvider(composite, Duration.ofDays(1), Duration.ofDays(2), new SimpleMeterRegistry(), false);
+    }
+
+    static AccountService accountService(AccountRepository accountRepository, RateProvider rateProvider) {
+        var beanFactory = new StaticListableBeanFactory();
+        return new AccountService(accountRepository, rateProvider,
+                Validation.buildDefaultValidatorFactory().getValidator(),
+                new NoOpTransactionManager(), 500, 5, Duration.ofMillis(5),
+                beanFactory.getBeanProvider(AccountLedger.class),
+                beanFactory.getBeanProvider(ExchangeJournal.class),
+                new ExchangeMetrics(new SimpleMeterRegistry()),
+                beanFactory.getBeanProvider(AccountCache.class), 100,
+                new BalanceEventBus(1024, Duration.ofMillis(50), "drop_oldest", false, new SimpleMeterRegistry()));
+    }
+
+    private static final class NoOpTransactionManager implements PlatformTransactionManager {
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    }
+}
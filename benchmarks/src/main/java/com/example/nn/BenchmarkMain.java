@@ -0,0 +1,76 @@
+package com.example.nn;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Entry point of {@code benchmarks.jar}: the regular JMH command line, but results are always written as
+ * JSON, by default to {@code jmh-result-<timestamp>.json}, so runs of different releases can be compared
+ * with any JMH result viewer. {@code -rf}/{@code -rff} still override the format and file.
+ * <p>
+ * JSON results of {@link WireFormatBenchmark} get a {@code payload} secondary metric, the size in bytes of the
+ * payload the benchmark reads or writes.
+ */
+public final class BenchmarkMain {
+
+    private static final String WIRE_FORMAT_BENCHMARK = WireFormatBenchmark.class.getName() + ".";
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException, IOException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent(commandLine);
+        if (!commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLine.getResult().hasValue()) {
+            options.result("jmh-result-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json");
+        }
+        Options built = options.build();
+        new Runner(built).run();
+        if (built.getResultFormat().orElse(null) == ResultFormatType.JSON && built.getResult().hasValue()) {
+            addPayloadSizes(new File(built.getResult().get()));
+        }
+    }
+
+    private static void addPayloadSizes(File result) throws IOException {
+        if (!result.isFile()) {
+            return;
+        }
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonNode benchmarks = objectMapper.readTree(result);
+        for (JsonNode benchmark : benchmarks) {
+            String name = benchmark.path("benchmark").asText();
+            if (!name.startsWith(WIRE_FORMAT_BENCHMARK)) {
+                continue;
+            }
+            Integer bytes = WireFormatBenchmark.payloadBytes(benchmark.path("params").path("format").asText())
+                    .get(name.substring(WIRE_FORMAT_BENCHMARK.length()));
+            if (bytes == null) {
+                continue;
+            }
+            ObjectNode payload = ((ObjectNode) benchmark).withObject("/secondaryMetrics").putObject("payload");
+            payload.put("score", bytes);
+            payload.put("scoreError", "NaN");
+            payload.putArray("scoreConfidence").add(bytes).add(bytes);
+            payload.put("scoreUnit", "B");
+            payload.putArray("rawData").addArray().add(bytes);
+        }
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(result, benchmarks);
+    }
+}
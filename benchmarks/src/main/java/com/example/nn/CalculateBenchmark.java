@@ -0,0 +1,104 @@
+package com.example.nn;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the former {@link BigDecimal} balance arithmetic of {@code AccountService.calculate} with the
+ * {@link FixedPoint} one in {@link ExchangeCalculator}, which prices through the {@link RateSnapshot} cross
+ * rate matrix. Each invocation exchanges there and back, so balances stay bounded. Run with {@code -prof gc}
+ * to see the allocation per exchange.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalculateBenchmark {
+
+    @Param({"100", "12345.67"})
+    private String amount;
+
+    private BigDecimal amountDecimal;
+
+    private BigDecimal rateDecimal;
+
+    private BigDecimal legacyPln;
+
+    private BigDecimal legacyUsd;
+
+    private long amountMinor;
+
+    private RateSnapshot rates;
+
+    private Account account;
+
+    @Setup
+    public void setUp() {
+        amountDecimal = new BigDecimal(amount);
+        rateDecimal = new BigDecimal("4.1605");
+        legacyPln = new BigDecimal("1000000");
+        legacyUsd = BigDecimal.ZERO;
+        amountMinor = FixedPoint.toMinor(amountDecimal);
+        rates = new RateSnapshot(BenchmarkFixtures.MIDS, LocalDate.now(), "benchmark", Instant.now());
+        account = new Account(UUID.randomUUID(), "Jan", "Kowalski", legacyPln, legacyUsd);
+        account.setBalance(Currency.EUR, legacyPln);
+    }
+
+    @Benchmark
+    public BigDecimal bigDecimal() {
+        if (legacyPln.compareTo(amountDecimal) >= 0) {
+            BigDecimal usd = amountDecimal.divide(rateDecimal, 2, RoundingMode.DOWN);
+            legacyPln = legacyPln.subtract(amountDecimal);
+            legacyUsd = legacyUsd.add(usd);
+        }
+        BigDecimal back = legacyUsd.min(amountDecimal);
+        if (legacyUsd.compareTo(back) >= 0) {
+            // the unrounded multiply of the original USD branch, so scale grows as it did there
+            legacyPln = legacyPln.add(back.multiply(rateDecimal));
+            legacyUsd = legacyUsd.subtract(back);
+        }
+        return legacyPln;
+    }
+
+    @Benchmark
+    public long fixedPoint() {
+        return exchangeThereAndBack(Currency.PLN, Currency.USD);
+    }
+
+    /**
+     * A pair without PLN, priced by the precomputed cross rate in the same single lookup.
+     */
+    @Benchmark
+    public long crossRate() {
+        return exchangeThereAndBack(Currency.EUR, Currency.CHF);
+    }
+
+    private long exchangeThereAndBack(Currency from, Currency to) {
+        if (ExchangeCalculator.isEnoughMoney(account, amountMinor, from)) {
+            ExchangeCalculator.calculate(account, amountMinor, from, to, rates);
+        }
+        long back = Math.min(account.getMinor(to), amountMinor);
+        if (ExchangeCalculator.isEnoughMoney(account, back, to)) {
+            ExchangeCalculator.calculate(account, back, to, from, rates);
+        }
+        return account.getMinor(from);
+    }
+}
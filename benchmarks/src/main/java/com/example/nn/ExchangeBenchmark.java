@@ -0,0 +1,73 @@
+package com.example.nn;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.crossstore.ChangeSetPersister;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AccountService} lookups and exchanges against an in-memory repository and a stubbed rate,
+ * i.e. the service overhead on top of the database round trips.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExchangeBenchmark {
+
+    @Param({"1000"})
+    private int accounts;
+
+    private AccountService accountService;
+
+    private List<String> uuids;
+
+    @Setup
+    public void setUp() {
+        var rateProvider = BenchmarkFixtures.stubRateProvider();
+        rateProvider.getRate();
+        accountService = BenchmarkFixtures.accountService(new InMemoryAccountRepository(), rateProvider);
+        uuids = new ArrayList<>(accounts);
+        for (int i = 0; i < accounts; i++) {
+            Account account = accountService.createAccount(
+                    new CreateAccountRequest("Jan", "Kowalski" + i, new BigDecimal(1_000_000)));
+            uuids.add(account.getId().toString());
+        }
+    }
+
+    @Benchmark
+    public Optional<Account> getAccount() {
+        return accountService.getAccount(randomUuid());
+    }
+
+    /**
+     * Alternates direction so balances stay bounded over a long run.
+     */
+    @Benchmark
+    public Account exchange() throws ChangeSetPersister.NotFoundException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Currency from = random.nextBoolean() ? Currency.PLN : Currency.USD;
+        return accountService.exchange(randomUuid(), BigDecimal.TEN, from, from.counterpart());
+    }
+
+    private String randomUuid() {
+        return uuids.get(ThreadLocalRandom.current().nextInt(uuids.size()));
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.nn;
+
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Map-backed {@link AccountRepository}, so service benchmarks measure the service and not H2/Hibernate.
+ */
+class InMemoryAccountRepository implements AccountRepository {
+
+    private final Map<UUID, Account> accounts = new ConcurrentHashMap<>();
+
+    @Override
+    public <S extends Account> S save(S account) {
+        if (account.getId() == null) {
+            account.setId(UUID.randomUUID());
+        }
+        accounts.put(account.getId(), account);
+        return account;
+    }
+
+    @Override
+    public <S extends Account> Iterable<S> saveAll(Iterable<S> entities) {
+        entities.forEach(this::save);
+        return entities;
+    }
+
+    @Override
+    public Optional<Account> findById(UUID id) {
+        return Optional.ofNullable(accounts.get(id));
+    }
+
+    @Override
+    public boolean existsById(UUID id) {
+        return accounts.containsKey(id);
+    }
+
+    @Override
+    public Iterable<Account> findAll() {
+        return new ArrayList<>(accounts.values());
+    }
+
+    @Override
+    public Iterable<Account> findAllById(Iterable<UUID> ids) {
+        List<Account> found = new ArrayList<>();
+        ids.forEach(id -> findById(id).ifPresent(found::add));
+        return found;
+    }
+
+    @Override
+    public long count() {
+        return accounts.size();
+    }
+
+    @Override
+    public void deleteById(UUID id) {
+        accounts.remove(id);
+    }
+
+    @Override
+    public void delete(Account entity) {
+        accounts.remove(entity.getId());
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends UUID> ids) {
+        ids.forEach(accounts::remove);
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Account> entities) {
+        entities.forEach(this::delete);
+    }
+
+    @Override
+    public void deleteAll() {
+        accounts.clear();
+    }
+
+    @Override
+    public List<AccountSummary> search(String lastName, String name, Pageable pageable) {
+        return search(lastName, name, null, pageable);
+    }
+
+    @Override
+    public List<AccountSummary> searchAfter(String lastName, String name, String afterLastName, String afterName,
+                                            UUID afterId, Pageable pageable) {
+        return search(lastName, name, new AccountSummary(afterId, afterName, afterLastName), pageable);
+    }
+
+    /**
+     * Filters, sorts and limits the whole map, in the order of the database queries.
+     */
+    private List<AccountSummary> search(String lastName, String name, AccountSummary after, Pageable pageable) {
+        Predicate<String> lastNameLike = like(lastName);
+        Predicate<String> nameLike = like(name);
+        return accounts.values().stream()
+                .filter(account -> lastNameLike.test(account.getLastName()) && nameLike.test(account.getName()))
+                .map(account -> new AccountSummary(account.getId(), account.getName(), account.getLastName()))
+                .filter(summary -> after == null
+                        || ShardedAccountRepository.SEARCH_COMPARATOR.compare(summary, after) > 0)
+                .sorted(ShardedAccountRepository.SEARCH_COMPARATOR)
+                .limit(pageable.getPageSize())
+                .toList();
+    }
+
+    /**
+     * {@code like ? escape '!'} of an already escaped pattern.
+     */
+    private static Predicate<String> like(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '!' && i + 1 < pattern.length()) {
+                regex.append(Pattern.quote(String.valueOf(pattern.charAt(++i))));
+            } else if (c == '%') {
+                regex.append(".*");
+            } else if (c == '_') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        Pattern compiled = Pattern.compile(regex.toString(), Pattern.DOTALL);
+        return value -> value != null && compiled.matcher(value).matches();
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.nn;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson binding of the API payloads with an {@link ObjectMapper} configured the way Spring Boot does,
+ * plus {@link Currency#forValue} which runs for every {@code from} field.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    private ObjectReader exchangeRequestReader;
+
+    private ObjectReader createAccountRequestReader;
+
+    private ObjectWriter accountWriter;
+
+    private byte[] exchangeRequest;
+
+    private byte[] createAccountRequest;
+
+    private Account account;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        exchangeRequestReader = objectMapper.readerFor(ExchangeRequest.class);
+        createAccountRequestReader = objectMapper.readerFor(CreateAccountRequest.class);
+        accountWriter = objectMapper.writerFor(Account.class);
+        exchangeRequest = ("{\"uuid\":\"" + UUID.randomUUID() + "\",\"amount\":100.25,\"from\":\"pln\"}").getBytes();
+        createAccountRequest = "{\"name\":\"Jan\",\"lastName\":\"Kowalski\",\"balance\":2000}".getBytes();
+        account = new Account(UUID.randomUUID(), "Jan", "Kowalski", new BigDecimal("1899.75"), new BigDecimal("24.09"));
+    }
+
+    @Benchmark
+    public ExchangeRequest readExchangeRequest() throws IOException {
+        return exchangeRequestReader.readValue(exchangeRequest);
+    }
+
+    @Benchmark
+    public CreateAccountRequest readCreateAccountRequest() throws IOException {
+        return createAccountRequestReader.readValue(createAccountRequest);
+    }
+
+    @Benchmark
+    public byte[] writeAccount() throws IOException {
+        return accountWriter.writeValueAsBytes(account);
+    }
+
+    @Benchmark
+    public Currency parseCurrency() {
+        return Currency.forValue("usd");
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.nn;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The API payloads in each wire format of {@link WireFormatConfiguration}, with mappers built the same way.
+ * Accounts are written into a reused stream, as the message converters write into the response.
+ * {@link BenchmarkMain} adds the size of each payload to the JSON results, see {@link #payloadBytes}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    @Param({"json", "cbor", "smile"})
+    private String format;
+
+    private ObjectReader exchangeRequestReader;
+
+    private ObjectReader createAccountRequestReader;
+
+    private ObjectWriter accountWriter;
+
+    private byte[] exchangeRequest;
+
+    private byte[] createAccountRequest;
+
+    private Account account;
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream(512);
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = objectMapper(format);
+        exchangeRequestReader = objectMapper.readerFor(ExchangeRequest.class);
+        createAccountRequestReader = objectMapper.readerFor(CreateAccountRequest.class);
+        accountWriter = objectMapper.writerFor(Account.class);
+        exchangeRequest = objectMapper.writeValueAsBytes(exchangeRequest());
+        createAccountRequest = objectMapper.writeValueAsBytes(createAccountRequest());
+        account = account();
+    }
+
+    /**
+     * @return size in bytes of the payload each benchmark method reads or writes in {@code format}, by method name
+     */
+    static Map<String, Integer> payloadBytes(String format) throws IOException {
+        ObjectMapper objectMapper = objectMapper(format);
+        return Map.of("readExchangeRequest", objectMapper.writeValueAsBytes(exchangeRequest()).length,
+                "readCreateAccountRequest", objectMapper.writeValueAsBytes(createAccountRequest()).length,
+                "writeAccount", objectMapper.writerFor(Account.class).writeValueAsBytes(account()).length);
+    }
+
+    private static ObjectMapper objectMapper(String format) {
+        return switch (format) {
+            case "cbor" -> WireFormatConfiguration.cbor(Jackson2ObjectMapperBuilder.json());
+            case "smile" -> WireFormatConfiguration.smile(Jackson2ObjectMapperBuilder.json());
+            default -> Jackson2ObjectMapperBuilder.json().build();
+        };
+    }
+
+    private static ExchangeRequest exchangeRequest() {
+        return new ExchangeRequest(UUID.randomUUID().toString(), new BigDecimal("100.25"), Currency.PLN);
+    }
+
+    private static CreateAccountRequest createAccountRequest() {
+        return new CreateAccountRequest("Jan", "Kowalski", new BigDecimal(2000));
+    }
+
+    private static Account account() {
+        return new Account(UUID.randomUUID(), "Jan", "Kowalski", new BigDecimal("1899.75"), new BigDecimal("24.09"));
+    }
+
+    @Benchmark
+    public ExchangeRequest readExchangeRequest() throws IOException {
+        return exchangeRequestReader.readValue(exchangeRequest);
+    }
+
+    @Benchmark
+    public CreateAccountRequest readCreateAccountRequest() throws IOException {
+        return createAccountRequestReader.readValue(createAccountRequest);
+    }
+
+    @Benchmark
+    public int writeAccount() throws IOException {
+        output.reset();
+        accountWriter.writeValue(output, account);
+        return output.size();
+    }
+}
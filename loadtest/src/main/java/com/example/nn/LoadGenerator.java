@@ -0,0 +1,188 @@
+package com.example.nn;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Open-loop traffic at a fixed rate: request {@code i} is due at {@code start + i / rate} and is sent then,
+ * whether or not earlier ones have completed. Latency is measured from that due time rather than from the
+ * actual send, so a stalled server shows up in the percentiles instead of silently slowing the generator
+ * down (coordinated omission).
+ */
+final class LoadGenerator {
+
+    private static final Currency[] BOUGHT = {Currency.USD, Currency.EUR, Currency.GBP, Currency.CHF};
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final HttpClient http;
+
+    private final URI base;
+
+    private final LoadTestOptions options;
+
+    private final List<String> accountIds;
+
+    private final String lastName;
+
+    private final LoadTestOptions.Operation[] weighted;
+
+    private final Semaphore inFlight;
+
+    private final Map<LoadTestOptions.Operation, Histogram> latencies = new EnumMap<>(LoadTestOptions.Operation.class);
+
+    private final Map<LoadTestOptions.Operation, Map<Integer, LongAdder>> statuses =
+            new EnumMap<>(LoadTestOptions.Operation.class);
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder skipped = new LongAdder();
+
+    LoadGenerator(HttpClient http, URI base, LoadTestOptions options, List<String> accountIds, String lastName) {
+        this.http = http;
+        this.base = base;
+        this.options = options;
+        this.accountIds = accountIds;
+        this.lastName = lastName;
+        this.weighted = options.getMix().entrySet().stream()
+                .flatMap(weight -> Stream.generate(weight::getKey).limit(weight.getValue()))
+                .toArray(LoadTestOptions.Operation[]::new);
+        this.inFlight = new Semaphore(options.getMaxInFlight());
+        for (LoadTestOptions.Operation operation : LoadTestOptions.Operation.values()) {
+            latencies.put(operation, new ConcurrentHistogram(TimeUnit.MINUTES.toNanos(10), 3));
+            statuses.put(operation, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Sends traffic for {@code duration} and waits for the outstanding requests.
+     *
+     * @return the measured time, from the first due request to the last completed one
+     */
+    Duration run(Duration duration, boolean record) throws InterruptedException {
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / options.getRate());
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        for (long i = 0; ; i++) {
+            long due = start + i * interval;
+            if (due >= end) {
+                break;
+            }
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (!inFlight.tryAcquire()) {
+                skipped.increment();
+                continue;
+            }
+            send(weighted[ThreadLocalRandom.current().nextInt(weighted.length)], due, record);
+        }
+        inFlight.acquire(options.getMaxInFlight());
+        inFlight.release(options.getMaxInFlight());
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+
+    private void send(LoadTestOptions.Operation operation, long due, boolean record) {
+        http.sendAsync(request(operation), HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, e) -> {
+                    long latency = System.nanoTime() - due;
+                    inFlight.release();
+                    if (!record) {
+                        return;
+                    }
+                    latencies.get(operation).recordValue(Math.min(latency, latencies.get(operation).getHighestTrackableValue()));
+                    if (e != null) {
+                        failed.increment();
+                    } else {
+                        statuses.get(operation).computeIfAbsent(response.statusCode(), status -> new LongAdder()).increment();
+                    }
+                });
+    }
+
+    private HttpRequest request(LoadTestOptions.Operation operation) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .header("X-Client-Id", "client-" + random.nextInt(options.getClients()))
+                .timeout(Duration.ofSeconds(30));
+        return switch (operation) {
+            case CREATE -> request.uri(base.resolve("/account"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(
+                            "{\"name\":\"Load\",\"lastName\":\"" + lastName + "\",\"balance\":1000}"))
+                    .build();
+            case GET -> request.uri(base.resolve("/account/" + anyAccount(random)))
+                    .GET()
+                    .build();
+            case EXCHANGE -> request.uri(base.resolve("/account/exchange"))
+                    .header("Content-Type", "application/json")
+                    .PUT(HttpRequest.BodyPublishers.ofString(String.format(Locale.ROOT,
+                            "{\"uuid\":\"%s\",\"amount\":%d.%02d,\"from\":\"PLN\",\"to\":\"%s\"}",
+                            anyAccount(random), 1 + random.nextInt(100), random.nextInt(100),
+                            BOUGHT[random.nextInt(BOUGHT.length)])))
+                    .build();
+        };
+    }
+
+    private String anyAccount(ThreadLocalRandom random) {
+        return accountIds.get(random.nextInt(accountIds.size()));
+    }
+
+    void report(PrintStream out, Duration measured) throws IOException {
+        double seconds = measured.toNanos() / 1e9;
+        out.printf(Locale.ROOT, "%n%-9s %9s %9s %9s %9s %9s %9s %9s  %s%n", "operation", "count", "per sec",
+                "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "statuses");
+        Histogram all = new Histogram(TimeUnit.MINUTES.toNanos(10), 3);
+        for (LoadTestOptions.Operation operation : LoadTestOptions.Operation.values()) {
+            Histogram histogram = latencies.get(operation);
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+            all.add(histogram);
+            line(out, operation.name().toLowerCase(Locale.ROOT), histogram, seconds, new TreeMap<>(statuses.get(operation)));
+            if (options.getReportDir() != null) {
+                Files.createDirectories(options.getReportDir());
+                try (PrintStream hgrm = new PrintStream(Files.newOutputStream(
+                        options.getReportDir().resolve(operation.name().toLowerCase(Locale.ROOT) + ".hgrm")))) {
+                    histogram.outputPercentileDistribution(hgrm, 1e6);
+                }
+            }
+        }
+        line(out, "all", all, seconds, Map.of());
+        out.printf(Locale.ROOT, "%ntarget %.0f/s over %.1f s, %d failed, %d not sent (over %d in flight)%n",
+                options.getRate(), seconds, failed.sum(), skipped.sum(), options.getMaxInFlight());
+    }
+
+    private static void line(PrintStream out, String name, Histogram histogram, double seconds,
+                             Map<Integer, LongAdder> statuses) {
+        out.printf(Locale.ROOT, "%-9s %9d %9.1f", name, histogram.getTotalCount(), histogram.getTotalCount() / seconds);
+        for (double percentile : PERCENTILES) {
+            out.printf(Locale.ROOT, " %9.2f", histogram.getValueAtPercentile(percentile) / 1e6);
+        }
+        out.printf(Locale.ROOT, " %9.2f ", histogram.getMaxValue() / 1e6);
+        statuses.forEach((status, count) -> out.printf(Locale.ROOT, " %d=%d", status, count.sum()));
+        out.println();
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.nn;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+/**
+ * Entry point of {@code loadtest.jar}. Unless {@code --target} names a running service, starts an
+ * {@link NbpStub} and boots the service in-process against it on a free port, with its journal in a
+ * temporary directory. Then seeds {@code --accounts} accounts through the bulk import, runs the
+ * {@link LoadGenerator} for {@code --warmup} unrecorded and {@code --duration} recorded, and prints the
+ * latency percentiles of every operation.
+ */
+public final class LoadTestMain {
+
+    private LoadTestMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        NbpStub stub = null;
+        ConfigurableApplicationContext service = null;
+        URI base = options.getTarget();
+        try {
+            if (base == null) {
+                stub = new NbpStub(options.getStubLatency(), options.getStubFailureRate());
+                service = boot(stub, options);
+                base = URI.create("http://localhost:" + service.getEnvironment().getProperty("local.server.port"));
+            }
+            HttpClient http = HttpClient.newBuilder()
+                    .executor(Executors.newVirtualThreadPerTaskExecutor())
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .build();
+            String lastName = "load-" + System.currentTimeMillis();
+            List<String> accountIds = seed(http, base, options.getAccounts(), lastName);
+            System.out.printf("Seeded %d accounts on %s%n", accountIds.size(), base);
+
+            LoadGenerator warmup = new LoadGenerator(http, base, options, accountIds, lastName);
+            warmup.run(options.getWarmup(), false);
+            LoadGenerator generator = new LoadGenerator(http, base, options, accountIds, lastName);
+            Duration measured = generator.run(options.getDuration(), true);
+            generator.report(System.out, measured);
+            if (stub != null) {
+                System.out.printf("NBP stub: %d requests, %d failed%n", stub.getRequests(), stub.getFailures());
+            }
+        } finally {
+            if (service != null) {
+                service.close();
+            }
+            if (stub != null) {
+                stub.close();
+            }
+        }
+        System.exit(0);
+    }
+
+    private static ConfigurableApplicationContext boot(NbpStub stub, LoadTestOptions options) throws IOException {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("nn.rates.sources", "nbp");
+        properties.put("nn.rates.nbp-url", stub.latestUrl());
+        properties.put("nn.rates.nbp-history-url", stub.rangeUrl());
+        properties.put("nn.admission.enabled", "true");
+        properties.put("nn.admission.client-header", "X-Client-Id");
+        properties.put("nn.journal.directory", Files.createTempDirectory("nn-loadtest-journal").toString());
+        properties.put("nn.ledger.directory", Files.createTempDirectory("nn-loadtest-ledger").toString());
+        properties.put("logging.level.root", "WARN");
+        // command line arguments are the only source above application.properties; a repeated one would be
+        // joined with a comma rather than overridden, so the service arguments replace these defaults instead
+        for (String arg : options.getServiceArgs()) {
+            properties.remove(arg.substring(2, arg.indexOf('=')));
+        }
+        List<String> args = new ArrayList<>();
+        properties.forEach((name, value) -> args.add("--" + name + "=" + value));
+        args.addAll(options.getServiceArgs());
+        return new SpringApplication(NnApplication.class).run(args.toArray(String[]::new));
+    }
+
+    /**
+     * Imports {@code count} accounts named {@code lastName} and reads their ids back from the export, which
+     * admission control does not limit.
+     */
+    private static List<String> seed(HttpClient http, URI base, int count, String lastName)
+            throws IOException, InterruptedException {
+        StringBuilder csv = new StringBuilder("name,lastName,balance\n");
+        for (int i = 0; i < count; i++) {
+            csv.append("Load").append(i).append(',').append(lastName).append(",1000000.00\n");
+        }
+        HttpResponse<String> imported = http.send(HttpRequest.newBuilder(base.resolve("/account/import"))
+                        .header("Content-Type", "text/csv")
+                        .POST(HttpRequest.BodyPublishers.ofString(csv.toString()))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (imported.statusCode() != 200) {
+            throw new IllegalStateException("Import failed with " + imported.statusCode() + ": " + imported.body());
+        }
+        HttpResponse<InputStream> exported = http.send(HttpRequest.newBuilder(base.resolve("/account/export"))
+                        .header("Accept", "text/csv")
+                        .GET()
+                        .build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        List<String> ids = new ArrayList<>(count);
+        try (BufferedReader lines = new BufferedReader(new InputStreamReader(exported.body(), StandardCharsets.UTF_8))) {
+            lines.readLine();
+            for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+                String[] fields = line.split(",", 4);
+                if (fields.length == 4 && fields[2].equals(lastName)) {
+                    ids.add(fields[0]);
+                }
+            }
+        }
+        if (ids.isEmpty()) {
+            throw new IllegalStateException("No seeded account found in the export");
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.nn;
+
+import lombok.Getter;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Command line of {@code loadtest.jar}. Options are {@code --name=value}; any other argument is passed on to
+ * the booted service, e.g. {@code --nn.rates.refresh-interval=PT1S}.
+ */
+@Getter
+final class LoadTestOptions {
+
+    enum Operation {
+        CREATE, GET, EXCHANGE
+    }
+
+    /**
+     * Accounts seeded before the run; the get and exchange traffic picks among them.
+     */
+    private int accounts = 1000;
+
+    /**
+     * Requests started per second, whether or not earlier ones have completed.
+     */
+    private double rate = 200;
+
+    private Duration duration = Duration.ofSeconds(30);
+
+    /**
+     * Traffic at the target rate before the measured run, not recorded.
+     */
+    private Duration warmup = Duration.ofSeconds(10);
+
+    /**
+     * Relative weights of the operations.
+     */
+    private final Map<Operation, Integer> mix = new EnumMap<>(Map.of(
+            Operation.CREATE, 5, Operation.GET, 60, Operation.EXCHANGE, 35));
+
+    /**
+     * Distinct {@code X-Client-Id}s the requests are spread over, so admission control sees several clients.
+     */
+    private int clients = 100;
+
+    /**
+     * Requests allowed to be outstanding; beyond that the generator cannot keep the rate and says so.
+     */
+    private int maxInFlight = 10_000;
+
+    private Duration stubLatency = Duration.ofMillis(50);
+
+    private double stubFailureRate = 0;
+
+    /**
+     * Base URL of an already running service; when set, nothing is booted and no stub is started.
+     */
+    private URI target;
+
+    /**
+     * Directory for the {@code .hgrm} percentile distribution of every operation, none when not set.
+     */
+    private Path reportDir;
+
+    private final List<String> serviceArgs = new ArrayList<>();
+
+    static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            switch (name) {
+                case "accounts" -> options.accounts = Integer.parseInt(value);
+                case "rate" -> options.rate = Double.parseDouble(value);
+                case "duration" -> options.duration = Duration.parse(value);
+                case "warmup" -> options.warmup = Duration.parse(value);
+                case "mix" -> options.parseMix(value);
+                case "clients" -> options.clients = Integer.parseInt(value);
+                case "max-in-flight" -> options.maxInFlight = Integer.parseInt(value);
+                case "stub-latency" -> options.stubLatency = Duration.parse(value);
+                case "stub-failure-rate" -> options.stubFailureRate = Double.parseDouble(value);
+                case "target" -> options.target = URI.create(value.endsWith("/") ? value.substring(0, value.length() - 1) : value);
+                case "report-dir" -> options.reportDir = Path.of(value);
+                default -> options.serviceArgs.add(arg);
+            }
+        }
+        return options;
+    }
+
+    /**
+     * {@code create:5,get:60,exchange:35}; operations left out get no traffic.
+     */
+    private void parseMix(String value) {
+        mix.clear();
+        for (String weight : value.split(",")) {
+            String[] parts = weight.trim().split(":");
+            mix.put(Operation.valueOf(parts[0].trim().toUpperCase(Locale.ROOT)), Integer.parseInt(parts[1].trim()));
+        }
+        if (mix.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+            throw new IllegalArgumentException("Mix has no traffic: " + value);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.nn;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the NBP table A API: the latest table at {@code /api/exchangerates/tables/a/} and the
+ * tables of every weekday of a range at {@code /api/exchangerates/tables/a/{from}/{to}/}. Every response waits
+ * {@code latency}, and {@code failureRate} of them fail with 503, so the rate fetch path of the service is
+ * exercised the way a slow or flaky NBP would.
+ */
+@Slf4j
+final class NbpStub implements AutoCloseable {
+
+    static final String PATH = "/api/exchangerates/tables/a/";
+
+    private static final String[][] MIDS = {
+            {"USD", "3.9956"}, {"EUR", "4.3215"}, {"GBP", "5.0472"}, {"CHF", "4.5120"}, {"CZK", "0.1771"},
+            {"DKK", "0.5793"}, {"NOK", "0.3712"}, {"SEK", "0.3735"}, {"CAD", "2.9240"}, {"AUD", "2.6418"}
+    };
+
+    private final HttpServer server;
+
+    private final Duration latency;
+
+    private final double failureRate;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    NbpStub(Duration latency, double failureRate) throws IOException {
+        this.latency = latency;
+        this.failureRate = failureRate;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        this.server.createContext(PATH, this::handle);
+        this.server.start();
+    }
+
+    String latestUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + PATH + "?format=json";
+    }
+
+    String rangeUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + PATH + "{from}/{to}/?format=json";
+    }
+
+    long getRequests() {
+        return requests.get();
+    }
+
+    long getFailures() {
+        return failures.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try (exchange) {
+            Thread.sleep(latency);
+            if (ThreadLocalRandom.current().nextDouble() < failureRate) {
+                failures.incrementAndGet();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            String[] range = exchange.getRequestURI().getPath().substring(PATH.length()).split("/");
+            LocalDate latest = lastWeekday(LocalDate.now());
+            String body = range.length >= 2
+                    ? tables(LocalDate.parse(range[0]), LocalDate.parse(range[1]))
+                    : tables(latest, latest);
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.warn("NBP stub failed on {}: {}", exchange.getRequestURI(), e.getMessage());
+        }
+    }
+
+    private static String tables(LocalDate from, LocalDate to) {
+        StringBuilder json = new StringBuilder("[");
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            if (isWeekend(date)) {
+                continue;
+            }
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"table\":\"A\",\"effectiveDate\":\"").append(date).append("\",\"rates\":[");
+            for (int i = 0; i < MIDS.length; i++) {
+                json.append(i == 0 ? "" : ",")
+                        .append(String.format(Locale.ROOT, "{\"code\":\"%s\",\"mid\":%s}", MIDS[i][0], MIDS[i][1]));
+            }
+            json.append("]}");
+        }
+        return json.append(']').toString();
+    }
+
+    private static LocalDate lastWeekday(LocalDate date) {
+        while (isWeekend(date)) {
+            date = date.minusDays(1);
+        }
+        return date;
+    }
+
+    private static boolean isWeekend(LocalDate date) {
+        return date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -1,22 +1,31 @@
 package com.example.nn;
 
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
-import lombok.AllArgsConstructor;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
 
 @Entity
+@Table(indexes = @Index(name = "account_last_name_name_idx", columnList = "lastName, name, id"))
 @Getter
 @Setter
 @NoArgsConstructor
-@AllArgsConstructor
 public class Account {
 
     @Id
@@ -27,8 +36,86 @@ public class Account {
 
     private String lastName;
 
-    private BigDecimal plnBalance = BigDecimal.valueOf(0);
+    /**
+     * Balances in {@link FixedPoint} minor units indexed by {@link Currency} ordinal; {@link #getBalanceView()}
+     * is the JSON view.
+     */
+    @JsonIgnore
+    @Convert(converter = BalancesConverter.class)
+    @Column(nullable = false)
+    private long[] balances = new long[Currency.count()];
 
-    private BigDecimal usdBalance = BigDecimal.valueOf(0);
+    /**
+     * Optimistic lock: a save based on a stale read fails instead of overwriting a concurrent exchange.
+     */
+    @Version
+    @JsonIgnore
+    private Long version;
 
+    public Account(UUID id, String name, String lastName, BigDecimal plnBalance, BigDecimal usdBalance) {
+        this.id = id;
+        this.name = name;
+        this.lastName = lastName;
+        setBalance(Currency.PLN, plnBalance);
+        setBalance(Currency.USD, usdBalance);
+    }
+
+    public long getMinor(Currency currency) {
+        return balances[currency.ordinal()];
+    }
+
+    public void setMinor(Currency currency, long minor) {
+        balances[currency.ordinal()] = minor;
+    }
+
+    public BigDecimal getBalance(Currency currency) {
+        return FixedPoint.toDecimal(getMinor(currency));
+    }
+
+    public void setBalance(Currency currency, BigDecimal balance) {
+        setMinor(currency, FixedPoint.toMinor(balance));
+    }
+
+    @JsonIgnore
+    public BigDecimal getPlnBalance() {
+        return getBalance(Currency.PLN);
+    }
+
+    public void setPlnBalance(BigDecimal plnBalance) {
+        setBalance(Currency.PLN, plnBalance);
+    }
+
+    @JsonIgnore
+    public BigDecimal getUsdBalance() {
+        return getBalance(Currency.USD);
+    }
+
+    /**
+     * One {@code <code>Balance} property per currency, e.g. {@code plnBalance} and {@code eurBalance}.
+     */
+    @JsonAnyGetter
+    public Map<String, BigDecimal> getBalanceView() {
+        return balanceView(balances);
+    }
+
+    /**
+     * Detached copy with its own balances, for responses kept beyond the request.
+     */
+    Account copy() {
+        Account copy = new Account();
+        copy.setId(id);
+        copy.setName(name);
+        copy.setLastName(lastName);
+        copy.setBalances(balances.clone());
+        copy.setVersion(version);
+        return copy;
+    }
+
+    static Map<String, BigDecimal> balanceView(long[] balances) {
+        Map<String, BigDecimal> view = new LinkedHashMap<>();
+        for (int i = 0; i < balances.length; i++) {
+            view.put(Currency.ofOrdinal(i).name().toLowerCase(Locale.ROOT) + "Balance", FixedPoint.toDecimal(balances[i]));
+        }
+        return view;
+    }
 }
@@ -0,0 +1,328 @@
+package com.example.nn;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Moves accounts in and out in bulk, as NDJSON or CSV, without holding more than one batch of them in memory.
+ * <p>
+ * The export reads the {@code account} table through a forward-only cursor fetching
+ * {@code nn.account.export.fetch-size} rows at a time and writes every row as it is read; with the
+ * {@link AccountLedger} enabled it shows the balances flushed so far. The import parses the upload record by
+ * record, checks each one with the rules of {@link CreateAccountRequest} and inserts the valid ones in JDBC
+ * batches of {@code nn.account.import.batch-size}, one transaction per batch, so a failure keeps the batches
+ * before it.
+ * <p>
+ * With {@link AccountShards} the export reads all shards at once, writing rows in whatever order they arrive,
+ * and every import batch is split by shard and inserted in one transaction over them.
+ */
+@Slf4j
+@Service
+@Profile("!reactive")
+public class AccountBulkService {
+
+    public enum Format {
+        NDJSON, CSV
+    }
+
+    static final String EXPORT_QUERY = "select id, name, last_name, balances from account";
+
+    static final String INSERT = "insert into account (id, name, last_name, balances, version) values (?, ?, ?, ?, 0)";
+
+    static final List<String> IMPORT_COLUMNS = List.of("name", "lastName", "balance");
+
+    private static final int MAX_REPORTED_ROWS = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    private final ObjectWriter accountWriter;
+
+    private final ObjectReader requestReader;
+
+    private final Validator validator;
+
+    private final int fetchSize;
+
+    private final int batchSize;
+
+    private final AccountShards shards;
+
+    public AccountBulkService(JdbcTemplate jdbcTemplate,
+                              PlatformTransactionManager transactionManager,
+                              ObjectMapper objectMapper,
+                              Validator validator,
+                              @Value("${nn.account.export.fetch-size}") int fetchSize,
+                              @Value("${nn.account.import.batch-size}") int batchSize,
+                              ObjectProvider<AccountShards> shards) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // some drivers, PostgreSQL among them, only stream a result set inside a transaction
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.accountWriter = objectMapper.writerFor(Account.class).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.requestReader = objectMapper.readerFor(CreateAccountRequest.class);
+        this.validator = validator;
+        this.fetchSize = fetchSize;
+        this.batchSize = batchSize;
+        this.shards = shards.getIfAvailable();
+    }
+
+    /**
+     * Writes every account to {@code outputStream}: NDJSON lines shaped like {@code GET /account/{uuid}}, or CSV
+     * with an {@code id,name,lastName} header followed by one {@code <code>Balance} column per currency.
+     *
+     * @return number of accounts written
+     */
+    public long export(Format format, OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), 1 << 16);
+        if (format == Format.CSV) {
+            writer.write(csvHeader());
+        }
+        long[] count = new long[1];
+        RowCallbackHandler rowHandler = rs -> {
+            Account account = new Account();
+            account.setId(rs.getObject(1, UUID.class));
+            account.setName(rs.getString(2));
+            account.setLastName(rs.getString(3));
+            account.setBalances(BalancesConverter.decode(rs.getBytes(4)));
+            // shards are read concurrently
+            synchronized (writer) {
+                try {
+                    if (format == Format.CSV) {
+                        writeCsv(account, writer);
+                    } else {
+                        accountWriter.writeValue(writer, account);
+                        writer.write('\n');
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                count[0]++;
+            }
+        };
+        PreparedStatementCreator query = connection -> {
+            var statement = connection.prepareStatement(EXPORT_QUERY);
+            statement.setFetchSize(fetchSize);
+            return statement;
+        };
+        if (shards == null) {
+            readOnlyTransactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(query, rowHandler));
+        } else {
+            shards.parallel((shard, routing) -> {
+                shard.getJdbcTemplate().query(query, rs -> {
+                    if (routing.routes(shard, rs.getObject(1, UUID.class))) {
+                        rowHandler.processRow(rs);
+                    }
+                });
+                return null;
+            });
+        }
+        writer.flush();
+        log.info("Exported {} accounts as {}", count[0], format);
+        return count[0];
+    }
+
+    /**
+     * Creates an account of every valid record of {@code inputStream}: NDJSON objects shaped like the body of
+     * {@code POST /account}, or CSV with a header naming the {@code name}, {@code lastName} and {@code balance}
+     * columns in any order. Invalid records are skipped and reported.
+     */
+    public ImportResult importAccounts(Format format, InputStream inputStream) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8), 1 << 16);
+        int[] columns = format == Format.CSV ? csvColumns(Csv.readRecord(reader)) : null;
+        List<Object[]> batch = new ArrayList<>(batchSize);
+        List<ImportResult.RejectedRow> rejectedRows = new ArrayList<>();
+        long imported = 0;
+        long rejected = 0;
+        long row = 0;
+        while (true) {
+            CreateAccountRequest request;
+            if (format == Format.CSV) {
+                List<String> record = Csv.readRecord(reader);
+                if (record == null) {
+                    break;
+                }
+                row++;
+                if (isBlank(record)) {
+                    continue;
+                }
+                request = fromCsv(record, columns);
+                if (request.getBalance() == null && column(record, columns[2]) != null) {
+                    rejected++;
+                    report(rejectedRows, row, Map.of("balance", "Balance must be a number"));
+                    continue;
+                }
+            } else {
+                String line = reader.readLine();
+                if (line == null) {
+                    break;
+                }
+                row++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    request = requestReader.readValue(line);
+                } catch (JsonProcessingException e) {
+                    rejected++;
+                    report(rejectedRows, row, Map.of("row", "Malformed JSON"));
+                    continue;
+                }
+                if (request == null) {
+                    rejected++;
+                    report(rejectedRows, row, Map.of("row", "Record must be a JSON object"));
+                    continue;
+                }
+            }
+
+            Map<String, String> errors = validate(request);
+            if (!errors.isEmpty()) {
+                rejected++;
+                report(rejectedRows, row, errors);
+                continue;
+            }
+            batch.add(new Object[]{UUID.randomUUID(), request.getName(), request.getLastName(),
+                    BalancesConverter.encode(balances(request.getBalance()))});
+            if (batch.size() == batchSize) {
+                imported += insert(batch);
+            }
+        }
+        imported += insert(batch);
+        log.info("Imported {} accounts as {}, rejected {}", imported, format, rejected);
+        return new ImportResult(imported, rejected, rejectedRows);
+    }
+
+    private int insert(List<Object[]> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        if (shards == null) {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT, batch));
+        } else {
+            transactionTemplate.executeWithoutResult(status -> {
+                Map<AccountShards.Shard, List<Object[]>> byShard = new LinkedHashMap<>();
+                for (Object[] row : batch) {
+                    byShard.computeIfAbsent(shards.shardFor((UUID) row[0]), shard -> new ArrayList<>()).add(row);
+                }
+                byShard.forEach((shard, rows) -> shards.jdbc(shard).batchUpdate(INSERT, rows));
+            });
+        }
+        int inserted = batch.size();
+        batch.clear();
+        return inserted;
+    }
+
+    private Map<String, String> validate(CreateAccountRequest request) {
+        Map<String, String> errors = new TreeMap<>();
+        for (ConstraintViolation<CreateAccountRequest> violation : validator.validate(request)) {
+            errors.put(violation.getPropertyPath().toString(), violation.getMessage());
+        }
+        return errors;
+    }
+
+    private static void report(List<ImportResult.RejectedRow> rejectedRows, long row, Map<String, String> errors) {
+        if (rejectedRows.size() < MAX_REPORTED_ROWS) {
+            rejectedRows.add(new ImportResult.RejectedRow(row, errors));
+        }
+    }
+
+    private static long[] balances(BigDecimal plnBalance) {
+        long[] balances = new long[Currency.count()];
+        balances[Currency.PLN.ordinal()] = FixedPoint.toMinor(plnBalance);
+        return balances;
+    }
+
+    private static String csvHeader() {
+        StringBuilder header = new StringBuilder("id,name,lastName");
+        for (int i = 0; i < Currency.count(); i++) {
+            header.append(',').append(Currency.ofOrdinal(i).name().toLowerCase(Locale.ROOT)).append("Balance");
+        }
+        return header.append('\n').toString();
+    }
+
+    private static void writeCsv(Account account, Writer writer) throws IOException {
+        writer.write(account.getId().toString());
+        writer.write(',');
+        writer.write(Csv.field(account.getName()));
+        writer.write(',');
+        writer.write(Csv.field(account.getLastName()));
+        for (long balance : account.getBalances()) {
+            writer.write(',');
+            writer.write(FixedPoint.toDecimal(balance).toPlainString());
+        }
+        writer.write('\n');
+    }
+
+    /**
+     * @return index of each of {@link #IMPORT_COLUMNS} in the header, -1 when the column is missing
+     */
+    private static int[] csvColumns(List<String> header) {
+        if (header == null) {
+            return new int[]{-1, -1, -1};
+        }
+        int[] columns = new int[IMPORT_COLUMNS.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = header.indexOf(IMPORT_COLUMNS.get(i));
+        }
+        return columns;
+    }
+
+    private static CreateAccountRequest fromCsv(List<String> record, int[] columns) {
+        String balance = column(record, columns[2]);
+        BigDecimal parsed = null;
+        if (balance != null) {
+            try {
+                parsed = new BigDecimal(balance.trim());
+            } catch (NumberFormatException e) {
+                // left null, the caller rejects the record
+            }
+        }
+        return new CreateAccountRequest(column(record, columns[0]), column(record, columns[1]), parsed);
+    }
+
+    private static String column(List<String> record, int column) {
+        return column >= 0 && column < record.size() && !record.get(column).isEmpty() ? record.get(column) : null;
+    }
+
+    private static boolean isBlank(List<String> record) {
+        return record.size() == 1 && record.get(0).isBlank();
+    }
+}
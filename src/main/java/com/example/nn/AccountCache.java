@@ -0,0 +1,93 @@
+package com.example.nn;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through cache of accounts by id, enabled with {@code nn.account-cache.enabled}.
+ * <p>
+ * Unknown ids are cached as empty entries for the shorter {@code nn.account-cache.negative-ttl}, so polling
+ * a missing account does not reach the database either. Writers put the committed account back; an entry is
+ * only replaced by an account with a higher {@link Account#getVersion() version}, so a slow writer cannot
+ * overwrite a newer balance. Hit and miss counts are published as the {@code cache.*} meters of
+ * {@code accounts}.
+ */
+@Component
+@ConditionalOnProperty(name = "nn.account-cache.enabled", havingValue = "true")
+@Profile("!reactive")
+public class AccountCache {
+
+    private final Cache<UUID, Optional<Account>> accounts;
+
+    public AccountCache(@Value("${nn.account-cache.maximum-size}") long maximumSize,
+                        @Value("${nn.account-cache.ttl}") Duration ttl,
+                        @Value("${nn.account-cache.negative-ttl}") Duration negativeTtl,
+                        MeterRegistry registry) {
+        this.accounts = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new WriteExpiry(ttl.toNanos(), negativeTtl.toNanos()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, accounts, "accounts");
+    }
+
+    /**
+     * Returns the cached account, loading it once for all concurrent callers on a miss.
+     */
+    public Optional<Account> get(UUID id, Function<UUID, Optional<Account>> loader) {
+        return accounts.get(id, loader);
+    }
+
+    /**
+     * Stores an account that has just been committed.
+     */
+    public void put(Account account) {
+        accounts.asMap().merge(account.getId(), Optional.of(account),
+                (cached, updated) -> isNewer(updated.get(), cached) ? updated : cached);
+    }
+
+    public void invalidate(Collection<UUID> ids) {
+        accounts.invalidateAll(ids);
+    }
+
+    /**
+     * Expires entries a fixed time after they were written, with a separate lifetime for unknown ids.
+     */
+    private record WriteExpiry(long ttlNanos, long negativeTtlNanos) implements Expiry<UUID, Optional<Account>> {
+
+        @Override
+        public long expireAfterCreate(UUID id, Optional<Account> account, long currentTime) {
+            return account.isPresent() ? ttlNanos : negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(UUID id, Optional<Account> account, long currentTime, long currentDuration) {
+            return expireAfterCreate(id, account, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(UUID id, Optional<Account> account, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    private static boolean isNewer(Account account, Optional<Account> cached) {
+        if (cached.isEmpty() || cached.get().getVersion() == null || account.getVersion() == null) {
+            return true;
+        }
+        return account.getVersion() > cached.get().getVersion();
+    }
+}
@@ -1,34 +1,173 @@
 package com.example.nn;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.crossstore.ChangeSetPersister;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @RestController
 @RequestMapping("/account")
+@Profile("!reactive")
 public class AccountController {
 
+    static final String TEXT_CSV_VALUE = "text/csv";
+
+    static final MediaType TEXT_CSV = MediaType.parseMediaType(TEXT_CSV_VALUE);
+
+    static final String PREFER = "Prefer";
+
+    static final String RESPOND_ASYNC = "respond-async";
+
+    static final String PREFERENCE_APPLIED = "Preference-Applied";
+
     private final AccountService accountService;
 
+    private final ObjectMapper objectMapper;
+
+    private final IdempotencyStore idempotencyStore;
+
+    private final AccountBulkService accountBulkService;
+
+    private final BalanceEventBus balanceEvents;
+
+    private final Duration eventStreamTimeout;
+
+    private final ExchangeOrderQueue exchangeOrders;
+
+    private final Duration orderMaxWait;
+
     @Autowired
-    public AccountController(AccountService accountService) {
+    public AccountController(AccountService accountService, ObjectMapper objectMapper,
+                             IdempotencyStore idempotencyStore, AccountBulkService accountBulkService,
+                             BalanceEventBus balanceEvents,
+                             @Value("${nn.events.stream-timeout}") Duration eventStreamTimeout,
+                             ExchangeOrderQueue exchangeOrders,
+                             @Value("${nn.exchange.async.max-wait}") Duration orderMaxWait) {
         this.accountService = accountService;
+        this.objectMapper = objectMapper;
+        this.idempotencyStore = idempotencyStore;
+        this.accountBulkService = accountBulkService;
+        this.balanceEvents = balanceEvents;
+        this.eventStreamTimeout = eventStreamTimeout;
+        this.exchangeOrders = exchangeOrders;
+        this.orderMaxWait = orderMaxWait;
     }
 
     @GetMapping("/{uuid}")
     public ResponseEntity getAccount(@PathVariable String uuid) {
-        if (accountService.getAccount(uuid).isPresent()) {
-            return ResponseEntity.ok(accountService.getAccount(uuid).get());
+        return accountService.getAccount(uuid)
+                .<ResponseEntity>map(ResponseEntity::ok)
+                .orElseGet(() -> new ResponseEntity<>("Account not found", HttpStatus.NOT_FOUND));
+    }
+
+    @GetMapping("/{uuid}/history")
+    public ResponseEntity getHistory(@PathVariable String uuid) {
+        return accountService.getHistory(uuid)
+                .<ResponseEntity>map(ResponseEntity::ok)
+                .orElseGet(() -> new ResponseEntity<>("Exchange journal is disabled", HttpStatus.NOT_FOUND));
+    }
+
+    /**
+     * Keyset paged search by last name and name prefixes; {@code page} is the {@code nextPage} of the previous
+     * response.
+     */
+    @GetMapping
+    public ResponseEntity search(@RequestParam(required = false) String lastName,
+                                 @RequestParam(required = false) String name,
+                                 @RequestParam(required = false) String page,
+                                 @RequestParam(defaultValue = "20") int size) {
+        try {
+            return ResponseEntity.ok(accountService.search(lastName, name, page, size));
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>("Malformed page", HttpStatus.BAD_REQUEST);
         }
-        return new ResponseEntity<>("Account not found", HttpStatus.NOT_FOUND);
+    }
+
+    /**
+     * Server-sent {@code balances} events with the {@link BalanceBatch batches} of the {@link BalanceEventBus},
+     * for the given {@code uuid}s or all accounts. A client reconnects after {@code nn.events.stream-timeout}.
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter events(@RequestParam(name = "uuid", required = false) List<UUID> uuids) {
+        SseEmitter emitter = new SseEmitter(eventStreamTimeout.toMillis());
+        BalanceEventBus.Subscription subscription = balanceEvents.subscribe(uuids, () -> true, batch -> {
+            try {
+                emitter.send(SseEmitter.event().name("balances").data(batch, MediaType.APPLICATION_JSON));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, emitter::complete);
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(e -> subscription.close());
+        return emitter;
+    }
+
+    /**
+     * All accounts, streamed from a database cursor while the response is written.
+     */
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportNdjson() {
+        return export(AccountBulkService.Format.NDJSON, MediaType.APPLICATION_NDJSON);
+    }
+
+    @GetMapping(value = "/export", produces = TEXT_CSV_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportCsv() {
+        return export(AccountBulkService.Format.CSV, TEXT_CSV);
+    }
+
+    private ResponseEntity<StreamingResponseBody> export(AccountBulkService.Format format, MediaType contentType) {
+        StreamingResponseBody body = outputStream -> accountBulkService.export(format, outputStream);
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .body(body);
+    }
+
+    /**
+     * Creates accounts from an NDJSON or CSV upload, parsed while it arrives and inserted in batches.
+     */
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<ImportResult> importNdjson(HttpServletRequest request) throws IOException {
+        return ResponseEntity.ok(accountBulkService.importAccounts(AccountBulkService.Format.NDJSON,
+                request.getInputStream()));
+    }
+
+    @PostMapping(value = "/import", consumes = TEXT_CSV_VALUE)
+    public ResponseEntity<ImportResult> importCsv(HttpServletRequest request) throws IOException {
+        return ResponseEntity.ok(accountBulkService.importAccounts(AccountBulkService.Format.CSV,
+                request.getInputStream()));
     }
 
     @PostMapping()
@@ -37,18 +176,151 @@ public class AccountController {
                 accountService.createAccount(createAccountRequest));
     }
 
+    /**
+     * With an {@value IdempotencyStore#HEADER} header, a retry of a completed exchange returns its account
+     * instead of exchanging again. With {@code Prefer: respond-async} the exchange is queued on the
+     * {@link ExchangeOrderQueue} instead and answered with {@code 202 Accepted} and the {@link ExchangeOrder},
+     * its status at the {@code Location}. Queued orders are not deduplicated, so an asynchronous exchange with
+     * an idempotency key is rejected rather than risk a retry moving the money twice.
+     */
     @PutMapping("/exchange")
-    public ResponseEntity exchange(@Valid @RequestBody ExchangeRequest exchangeRequest) {
+    public ResponseEntity exchange(@Valid @RequestBody ExchangeRequest exchangeRequest,
+                                   @RequestHeader(name = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+                                   @RequestHeader(name = PREFER, required = false) String prefer) {
+        if (prefer != null && prefer.contains(RESPOND_ASYNC)) {
+            if (idempotencyKey != null) {
+                return new ResponseEntity<>(IdempotencyStore.HEADER + " is not supported with " + PREFER + ": "
+                        + RESPOND_ASYNC, HttpStatus.BAD_REQUEST);
+            }
+            return exchangeOrders.submit(exchangeRequest)
+                    .<ResponseEntity>map(order -> ResponseEntity.accepted()
+                            .location(URI.create("/account/exchange/orders/" + order.getOrderId()))
+                            .header(PREFERENCE_APPLIED, RESPOND_ASYNC)
+                            .body(order))
+                    .orElseGet(() -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                            .header(HttpHeaders.RETRY_AFTER, "1")
+                            .body("Exchange queue is full, retry later"));
+        }
         try {
-            return ResponseEntity.ok(
-                    accountService.exchange(exchangeRequest.getUuid(),
-                            exchangeRequest.getAmount(),
-                            exchangeRequest.getFrom()));
+            if (idempotencyKey == null) {
+                return ResponseEntity.ok(exchange(exchangeRequest));
+            }
+            return ResponseEntity.ok(idempotencyStore.execute(idempotencyKey, exchangeRequest, () -> {
+                try {
+                    return CompletableFuture.completedFuture(exchange(exchangeRequest));
+                } catch (ChangeSetPersister.NotFoundException e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+            }).join());
         } catch (ChangeSetPersister.NotFoundException e) {
             return new ResponseEntity<>("Account not found", HttpStatus.NOT_FOUND);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof ChangeSetPersister.NotFoundException) {
+                return new ResponseEntity<>("Account not found", HttpStatus.NOT_FOUND);
+            }
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
         }
     }
 
+    private Account exchange(ExchangeRequest exchangeRequest) throws ChangeSetPersister.NotFoundException {
+        return accountService.exchange(exchangeRequest.getUuid(),
+                exchangeRequest.getAmount(),
+                exchangeRequest.getFrom(),
+                exchangeRequest.target());
+    }
+
+    /**
+     * The current state of an asynchronous exchange. With {@code wait}, a queued order is answered once it is
+     * applied or after {@code wait}, at most {@code nn.exchange.async.max-wait}, whichever comes first.
+     */
+    @GetMapping("/exchange/orders/{orderId}")
+    public DeferredResult<ResponseEntity> exchangeOrder(@PathVariable UUID orderId,
+                                                        @RequestParam(required = false) Duration wait) {
+        DeferredResult<ResponseEntity> response;
+        ExchangeOrder order = exchangeOrders.find(orderId).orElse(null);
+        if (order == null) {
+            response = new DeferredResult<>();
+            response.setResult(new ResponseEntity<>("Order not found", HttpStatus.NOT_FOUND));
+        } else if (wait == null || wait.isNegative() || wait.isZero()) {
+            response = new DeferredResult<>();
+            response.setResult(ResponseEntity.ok(order));
+        } else {
+            Duration timeout = wait.compareTo(orderMaxWait) > 0 ? orderMaxWait : wait;
+            response = new DeferredResult<>(timeout.toMillis(), () -> ResponseEntity.ok(order));
+            DeferredResult<ResponseEntity> pending = response;
+            order.completion().thenAccept(done -> pending.setResult(ResponseEntity.ok(done)));
+        }
+        return response;
+    }
+
+    @PutMapping(value = "/exchange/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<ExchangeResult>> exchangeBatch(@RequestBody List<ExchangeRequest> exchangeRequests) {
+        return ResponseEntity.ok(accountService.exchangeBatch(exchangeRequests));
+    }
+
+    /**
+     * NDJSON variant for large batches: requests are parsed while they arrive and results are streamed back
+     * chunk by chunk, so neither side has to hold the whole batch in memory. Each non-blank line is parsed on
+     * its own, so a line that is not an exchange request is reported as {@code INVALID} in its own result.
+     */
+    @PutMapping(value = "/exchange/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exchangeBatchStream(HttpServletRequest request) throws IOException {
+        ObjectReader requestReader = objectMapper.readerFor(ExchangeRequest.class);
+        Iterator<ExchangeRequest> exchangeRequests = new BufferedReader(
+                new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8), 1 << 16)
+                .lines()
+                .filter(line -> !line.isBlank())
+                .map(line -> {
+                    try {
+                        return requestReader.<ExchangeRequest>readValue(line);
+                    } catch (JsonProcessingException e) {
+                        return null;
+                    }
+                })
+                .iterator();
+        StreamingResponseBody body = outputStream -> {
+            try (SequenceWriter writer = objectMapper.writerFor(ExchangeResult.class)
+                    .withRootValueSeparator("\n")
+                    .writeValues(outputStream)) {
+                accountService.exchangeBatch(exchangeRequests, result -> {
+                    try {
+                        writer.write(result);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    @ResponseStatus(HttpStatus.CONFLICT)
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public String handleConcurrentModification(OptimisticLockingFailureException ex) {
+        return "Account is being modified concurrently, retry later";
+    }
+
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    @ExceptionHandler(RateUnavailableException.class)
+    public String handleRateUnavailable(RateUnavailableException ex) {
+        return "Exchange rate unavailable";
+    }
+
+    @ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+    @ExceptionHandler(IdempotencyKeyReusedException.class)
+    public String handleIdempotencyKeyReused(IdempotencyKeyReusedException ex) {
+        return "Idempotency key was already used for a different request";
+    }
+
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    @ExceptionHandler(IdempotencyStoreFullException.class)
+    public String handleIdempotencyStoreFull(IdempotencyStoreFullException ex) {
+        return "Too many idempotency keys in use, retry later";
+    }
+
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public Map<String, String> handleValidationExceptions(
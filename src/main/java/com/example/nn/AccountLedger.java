@@ -0,0 +1,281 @@
+package com.example.nn;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory owner of the balances of recently exchanged accounts, enabled with {@code nn.ledger.enabled}.
+ * <p>
+ * Balances are kept as {@link FixedPoint} minor units and guarded by one of {@code nn.ledger.stripes}
+ * locks chosen by the account id, so exchanges on different accounts rarely contend. Every applied exchange
+ * is appended to a {@link LedgerReplayLog} before it becomes visible; a scheduled flush writes dirty
+ * balances back to {@link AccountRepository} in batches and drops accounts not exchanged since the previous
+ * flush, so memory follows the hot accounts rather than every account ever touched. On start the log left
+ * by the previous run is replayed over the stored balances and flushed. The log is forced to disk on every
+ * flush, so a process crash loses nothing, while an OS crash or power loss can lose the exchanges of the last
+ * flush interval.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "nn.ledger.enabled", havingValue = "true")
+@Profile("!reactive")
+public class AccountLedger {
+
+    private static final int FLUSH_CHUNK_SIZE = 1000;
+
+    private static final class Entry {
+
+        private final UUID id;
+
+        private final String name;
+
+        private final String lastName;
+
+        // guarded by the stripe lock of id
+        private final long[] balances;
+
+        // stored version when loaded, journaled with every exchange; a flush persisting them stores a higher one
+        private final long version;
+
+        private boolean dirty;
+
+        private Entry(Account account) {
+            this.id = account.getId();
+            this.name = account.getName();
+            this.lastName = account.getLastName();
+            this.balances = account.getBalances().clone();
+            this.version = account.getVersion() == null ? 0 : account.getVersion();
+        }
+
+        private Account toAccount() {
+            Account account = new Account();
+            account.setId(id);
+            account.setName(name);
+            account.setLastName(lastName);
+            account.setBalances(balances.clone());
+            return account;
+        }
+    }
+
+    private final AccountRepository accountRepository;
+
+    private final ExchangeJournal journal;
+
+    private final BalanceEventBus events;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Path directory;
+
+    private final ReentrantLock[] stripes;
+
+    private final Map<UUID, Entry> entries = new ConcurrentHashMap<>();
+
+    private LedgerReplayLog replayLog;
+
+    public AccountLedger(AccountRepository accountRepository,
+                         ObjectProvider<ExchangeJournal> journal,
+                         BalanceEventBus events,
+                         PlatformTransactionManager transactionManager,
+                         @Value("${nn.ledger.directory}") Path directory,
+                         @Value("${nn.ledger.stripes}") int stripes) {
+        this.accountRepository = accountRepository;
+        this.journal = journal.getIfAvailable();
+        this.events = events;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.directory = directory;
+        this.stripes = new ReentrantLock[Integer.highestOneBit(Math.max(stripes - 1, 1)) << 1];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    @PostConstruct
+    void recover() throws IOException {
+        replayLog = new LedgerReplayLog(directory);
+        Map<UUID, Map<Currency, Long>> replayed = new LinkedHashMap<>();
+        replayLog.replay((id, currency, balanceMinor) ->
+                replayed.computeIfAbsent(id, ignored -> new EnumMap<>(Currency.class)).put(currency, balanceMinor));
+        if (replayed.isEmpty()) {
+            return;
+        }
+
+        accountRepository.findAllById(replayed.keySet()).forEach(account -> {
+            Entry entry = new Entry(account);
+            replayed.get(account.getId()).forEach((currency, balanceMinor) ->
+                    entry.balances[currency.ordinal()] = balanceMinor);
+            entry.dirty = true;
+            entries.put(entry.id, entry);
+        });
+        log.info("Replayed ledger balances of {} accounts", replayed.size());
+        flush();
+    }
+
+    public Optional<Account> find(UUID id) {
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            return accountRepository.findById(id);
+        }
+
+        ReentrantLock lock = stripe(id);
+        lock.lock();
+        try {
+            return Optional.of(entry.toAccount());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Loads the given accounts that are not in memory yet with one query.
+     */
+    public void preload(Collection<UUID> ids) {
+        List<UUID> missing = ids.stream().filter(id -> !entries.containsKey(id)).toList();
+        if (!missing.isEmpty()) {
+            accountRepository.findAllById(missing).forEach(account -> entries.putIfAbsent(account.getId(), new Entry(account)));
+        }
+    }
+
+    /**
+     * Applies one exchange under the account's stripe lock and journals and publishes it there, so the journal
+     * and the {@link BalanceEventBus} see the exchanges of an account in the order they were applied. Events carry
+     * the version the account was loaded with, those sharing it are published in that order.
+     *
+     * @return empty when the account does not exist
+     */
+    public Optional<ExchangeOutcome> exchange(UUID id, long amountMinor, Currency from, Currency to,
+                                              RateSnapshot rates) {
+        long bought = rates.convert(amountMinor, from, to);
+        ReentrantLock lock = stripe(id);
+        while (true) {
+            Optional<Entry> found = entry(id);
+            if (found.isEmpty()) {
+                return Optional.empty();
+            }
+
+            Entry entry = found.get();
+            lock.lock();
+            try {
+                if (entries.get(id) != entry) {
+                    // dropped by a flush since it was looked up, load the persisted balances again
+                    continue;
+                }
+                if (entry.balances[from.ordinal()] < amountMinor) {
+                    return Optional.of(new ExchangeOutcome(entry.toAccount(), false));
+                }
+                long fromMinor = entry.balances[from.ordinal()] - amountMinor;
+                long toMinor = entry.balances[to.ordinal()] + bought;
+
+                replayLog.append(id, from, fromMinor, to, toMinor);
+                if (journal != null) {
+                    journal.append(id, entry.version, from, to, amountMinor, rates.crossRate(from, to), fromMinor,
+                            toMinor);
+                }
+                entry.balances[from.ordinal()] = fromMinor;
+                entry.balances[to.ordinal()] = toMinor;
+                entry.dirty = true;
+                events.publish(id, entry.version, entry.balances.clone());
+                return Optional.of(new ExchangeOutcome(entry.toAccount(), true));
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Persists balances changed since the previous flush and drops the log segments they cover. Accounts
+     * unchanged since the previous flush are already persisted and are dropped from memory.
+     * On failure the balances stay dirty and their log segments are kept for the next attempt.
+     */
+    @Scheduled(fixedDelayString = "${nn.ledger.flush-interval}")
+    public synchronized void flush() {
+        long closedSegment = replayLog.rotate();
+        Map<UUID, long[]> dirty = new HashMap<>();
+        for (Entry entry : entries.values()) {
+            ReentrantLock lock = stripe(entry.id);
+            lock.lock();
+            try {
+                if (entry.dirty) {
+                    dirty.put(entry.id, entry.balances.clone());
+                    entry.dirty = false;
+                } else {
+                    entries.remove(entry.id, entry);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        try {
+            List<UUID> ids = new ArrayList<>(dirty.keySet());
+            for (int from = 0; from < ids.size(); from += FLUSH_CHUNK_SIZE) {
+                List<UUID> chunk = ids.subList(from, Math.min(from + FLUSH_CHUNK_SIZE, ids.size()));
+                transactionTemplate.executeWithoutResult(status -> persist(chunk, dirty));
+            }
+            replayLog.deleteUpTo(closedSegment);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ledger flush of {} accounts failed, will retry: {}", dirty.size(), e.getMessage());
+            for (UUID id : dirty.keySet()) {
+                ReentrantLock lock = stripe(id);
+                lock.lock();
+                try {
+                    entries.get(id).dirty = true;
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() throws IOException {
+        flush();
+        replayLog.close();
+    }
+
+    private void persist(List<UUID> ids, Map<UUID, long[]> dirty) {
+        List<Account> accounts = new ArrayList<>(ids.size());
+        accountRepository.findAllById(ids).forEach(account -> {
+            account.setBalances(dirty.get(account.getId()));
+            accounts.add(account);
+        });
+        accountRepository.saveAll(accounts);
+    }
+
+    private Optional<Entry> entry(UUID id) {
+        Entry entry = entries.get(id);
+        if (entry != null) {
+            return Optional.of(entry);
+        }
+        return accountRepository.findById(id)
+                .map(account -> entries.computeIfAbsent(id, ignored -> new Entry(account)));
+    }
+
+    private ReentrantLock stripe(UUID id) {
+        int hash = id.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+}
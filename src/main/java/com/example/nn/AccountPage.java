@@ -0,0 +1,92 @@
+package com.example.nn;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * One page of {@code GET /account}, ordered by last name, name and id.
+ */
+@Getter
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AccountPage {
+
+    private final List<AccountSummary> accounts;
+
+    /**
+     * Opaque position after the last account, passed back as {@code page} to get the next page; {@code null} on
+     * the last page.
+     */
+    private final String nextPage;
+
+    // length of a null name in a token
+    private static final int NULL = -1;
+
+    /**
+     * Encodes the sort key of {@code last} as a URL-safe {@link #nextPage} token. Names are written as their
+     * UTF-8 bytes after the length, so a name of any length, or none, fits.
+     */
+    static String position(AccountSummary last) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeName(out, last.getLastName());
+            writeName(out, last.getName());
+            out.writeLong(last.getId().getMostSignificantBits());
+            out.writeLong(last.getId().getLeastSignificantBits());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * @throws IllegalArgumentException when {@code page} is not a token of {@link #position}
+     */
+    static AccountSummary parsePosition(String page) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                Base64.getUrlDecoder().decode(page)))) {
+            String lastName = readName(in);
+            String name = readName(in);
+            UUID id = new UUID(in.readLong(), in.readLong());
+            if (in.available() > 0) {
+                throw new IllegalArgumentException("Malformed page");
+            }
+            return new AccountSummary(id, name, lastName);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed page", e);
+        }
+    }
+
+    private static void writeName(DataOutputStream out, String name) throws IOException {
+        if (name == null) {
+            out.writeInt(NULL);
+            return;
+        }
+        byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readName(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == NULL) {
+            return null;
+        }
+        if (length < 0 || length > in.available()) {
+            throw new IllegalArgumentException("Malformed page");
+        }
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+}
@@ -1,8 +1,37 @@
 package com.example.nn;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
+import java.util.List;
 import java.util.UUID;
 
 public interface AccountRepository extends CrudRepository<Account, UUID> {
+
+    /**
+     * First page of accounts whose last name and name start with the given, already escaped, {@code like}
+     * patterns.
+     */
+    @Query("select new com.example.nn.AccountSummary(a.id, a.name, a.lastName) from Account a"
+            + " where a.lastName like :lastName escape '!' and a.name like :name escape '!'"
+            + " order by a.lastName, a.name, a.id")
+    List<AccountSummary> search(@Param("lastName") String lastName, @Param("name") String name, Pageable pageable);
+
+    /**
+     * Next page of {@link #search}, seeking past the last account of the previous one instead of skipping rows,
+     * so every page costs the same however deep it is.
+     */
+    @Query("select new com.example.nn.AccountSummary(a.id, a.name, a.lastName) from Account a"
+            + " where a.lastName like :lastName escape '!' and a.name like :name escape '!'"
+            + " and (a.lastName > :afterLastName"
+            + " or (a.lastName = :afterLastName and a.name > :afterName)"
+            + " or (a.lastName = :afterLastName and a.name = :afterName and a.id > :afterId))"
+            + " order by a.lastName, a.name, a.id")
+    List<AccountSummary> searchAfter(@Param("lastName") String lastName, @Param("name") String name,
+                                     @Param("afterLastName") String afterLastName,
+                                     @Param("afterName") String afterName,
+                                     @Param("afterId") UUID afterId,
+                                     Pageable pageable);
 }
@@ -0,0 +1,56 @@
+package com.example.nn;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.util.UUID;
+
+/**
+ * R2DBC mapping of the {@code account} table used by the reactive profile. It is converted to and from
+ * {@link Account} so both stacks share {@link ExchangeCalculator} and the JSON view of an account.
+ */
+@Table("account")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class AccountRow {
+
+    @Id
+    private UUID id;
+
+    private String name;
+
+    private String lastName;
+
+    /**
+     * Balances in the {@link BalancesConverter} format shared with the JPA mapping.
+     */
+    private byte[] balances;
+
+    /**
+     * Optimistic lock as on {@link Account}; {@code null} marks a row that has not been inserted yet.
+     */
+    @Version
+    private Long version;
+
+    static AccountRow of(Account account) {
+        return new AccountRow(account.getId(), account.getName(), account.getLastName(),
+                BalancesConverter.encode(account.getBalances()), account.getVersion());
+    }
+
+    Account toAccount() {
+        Account account = new Account();
+        account.setId(id);
+        account.setName(name);
+        account.setLastName(lastName);
+        account.setBalances(BalancesConverter.decode(balances));
+        account.setVersion(version);
+        return account;
+    }
+}
@@ -1,97 +1,398 @@
 package com.example.nn;
 
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.crossstore.ChangeSetPersister;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.time.LocalDate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+@Slf4j
 @Service
+@Profile("!reactive")
 public class AccountService {
 
-    private static final int ROUND_SCALE = 2;
-
     private final AccountRepository accountRepository;
 
-    String path = "https://api.nbp.pl/api/exchangerates/rates/a/usd/?format=json";
+    private final RateProvider rateProvider;
+
+    private final Validator validator;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final int batchChunkSize;
+
+    private final int retryMaxAttempts;
+
+    private final Duration retryBackoff;
+
+    private final AccountLedger ledger;
 
-    private RatesResponse ratesResponse;
+    private final ExchangeJournal journal;
+
+    private final ExchangeMetrics metrics;
+
+    private final AccountCache cache;
+
+    private final int searchMaxPageSize;
+
+    private final BalanceEventBus events;
 
     @Autowired
-    public AccountService(AccountRepository accountRepository) {
+    public AccountService(AccountRepository accountRepository,
+                          RateProvider rateProvider,
+                          Validator validator,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${nn.exchange.batch.chunk-size}") int batchChunkSize,
+                          @Value("${nn.exchange.retry.max-attempts}") int retryMaxAttempts,
+                          @Value("${nn.exchange.retry.backoff}") Duration retryBackoff,
+                          ObjectProvider<AccountLedger> ledger,
+                          ObjectProvider<ExchangeJournal> journal,
+                          ExchangeMetrics metrics,
+                          ObjectProvider<AccountCache> cache,
+                          @Value("${nn.account.search.max-page-size}") int searchMaxPageSize,
+                          BalanceEventBus events) {
         this.accountRepository = accountRepository;
+        this.rateProvider = rateProvider;
+        this.validator = validator;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchChunkSize = batchChunkSize;
+        this.retryMaxAttempts = retryMaxAttempts;
+        this.retryBackoff = retryBackoff;
+        this.ledger = ledger.getIfAvailable();
+        this.journal = journal.getIfAvailable();
+        this.metrics = metrics;
+        this.cache = cache.getIfAvailable();
+        this.searchMaxPageSize = searchMaxPageSize;
+        this.events = events;
     }
 
     public Optional<Account> getAccount(String uuid) {
+        if (ledger != null) {
+            return ledger.find(UUID.fromString(uuid));
+        }
+        if (cache != null) {
+            return cache.get(UUID.fromString(uuid), accountRepository::findById);
+        }
         return accountRepository.findById(UUID.fromString(uuid));
     }
 
+    /**
+     * Accounts whose last name and name start with the given prefixes, an absent prefix matching all, in pages of
+     * at most {@code nn.account.search.max-page-size}. Reads only the name index columns.
+     *
+     * @param page {@link AccountPage#getNextPage()} of the previous page, {@code null} for the first one
+     * @throws IllegalArgumentException when {@code page} is malformed
+     */
+    public AccountPage search(String lastName, String name, String page, int size) {
+        int limit = Math.max(1, Math.min(size, searchMaxPageSize));
+        // one extra row tells whether there is a next page without a count query
+        Pageable pageable = PageRequest.ofSize(limit + 1);
+        List<AccountSummary> found;
+        if (page == null) {
+            found = accountRepository.search(prefix(lastName), prefix(name), pageable);
+        } else {
+            AccountSummary after = AccountPage.parsePosition(page);
+            found = accountRepository.searchAfter(prefix(lastName), prefix(name),
+                    after.getLastName(), after.getName(), after.getId(), pageable);
+        }
+        if (found.size() <= limit) {
+            return new AccountPage(found, null);
+        }
+        List<AccountSummary> accounts = found.subList(0, limit);
+        return new AccountPage(accounts, AccountPage.position(accounts.get(limit - 1)));
+    }
+
+    private static String prefix(String value) {
+        if (value == null) {
+            return "%";
+        }
+        return value.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+    }
+
+    /**
+     * @return empty when the exchange journal is disabled
+     */
+    public Optional<List<JournalEntry>> getHistory(String uuid) {
+        return Optional.ofNullable(journal).map(enabled -> enabled.history(UUID.fromString(uuid)));
+    }
+
     public Account createAccount(CreateAccountRequest createAccountRequest) {
         var account = new Account();
         account.setName(createAccountRequest.getName());
         account.setLastName(createAccountRequest.getLastName());
         account.setPlnBalance(createAccountRequest.getBalance());
 
-        return accountRepository.save(account);
+        Account saved = accountRepository.save(account);
+        if (cache != null) {
+            cache.put(saved);
+        }
+        events.publish(saved);
+        return saved;
+    }
+
+    /**
+     * Read-check-update of one account in a transaction, or in the {@link AccountLedger} when enabled.
+     * A concurrent update of the same account makes the save fail on the version check; the whole cycle is
+     * then retried on fresh data with a jittered backoff. Applied exchanges are journaled and published on the
+     * {@link BalanceEventBus} with the account version once committed, so a rolled back exchange leaves no
+     * entry; with the ledger both happen under its lock.
+     */
+    public Account exchange(String uuid, BigDecimal amount, Currency from, Currency to)
+            throws ChangeSetPersister.NotFoundException {
+        long start = System.nanoTime();
+        UUID id = UUID.fromString(uuid);
+        long amountMinor = FixedPoint.toMinor(amount);
+        RateSnapshot rates = rateProvider.getRate();
+        if (!rates.isQuoted(from, to)) {
+            throw new RateUnavailableException("No " + from + "/" + to + " rate");
+        }
+        long rated = metrics.stage(ExchangeMetrics.Stage.RATE, start);
+        Optional<ExchangeOutcome> outcome;
+        if (ledger != null) {
+            outcome = ledger.exchange(id, amountMinor, from, to, rates);
+            metrics.stage(ExchangeMetrics.Stage.LEDGER, rated);
+        } else {
+            outcome = withRetry(() -> transactionTemplate.execute(
+                    status -> exchangeOnce(id, amountMinor, from, to, rates, status)));
+        }
+
+        if (outcome.isEmpty()) {
+            metrics.notFound();
+            throw new ChangeSetPersister.NotFoundException();
+        }
+        Account account = outcome.get().getAccount();
+        if (cache != null && ledger == null) {
+            cache.put(account);
+        }
+        if (outcome.get().isApplied()) {
+            if (ledger == null) {
+                journal(id, account.getVersion(), from, to, amountMinor, rates, account.getMinor(from),
+                        account.getMinor(to));
+                events.publish(account);
+            }
+        } else {
+            metrics.insufficientFunds();
+        }
+        metrics.exchange(start);
+        return account;
     }
 
-    public Account exchange(String uuid, BigDecimal amount, Currency from) throws ChangeSetPersister.NotFoundException {
-        Account account = getAccount(uuid).orElseThrow(ChangeSetPersister.NotFoundException::new);
+    private Optional<ExchangeOutcome> exchangeOnce(UUID id, long amountMinor, Currency from, Currency to,
+                                                   RateSnapshot rates, TransactionStatus status) {
+        long start = System.nanoTime();
+        Optional<Account> found = accountRepository.findById(id);
+        long loaded = metrics.stage(ExchangeMetrics.Stage.LOAD, start);
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Account account = found.get();
+        boolean applied = ExchangeCalculator.isEnoughMoney(account, amountMinor, from);
+        if (applied) {
+            ExchangeCalculator.calculate(account, amountMinor, from, to, rates);
+        }
+        long calculated = metrics.stage(ExchangeMetrics.Stage.CALCULATE, loaded);
 
-        if (isEnoughMoney(account, amount, from)) {
+        Account saved = accountRepository.save(account);
+        // flush here rather than on commit, so the UPDATE and its version check count as the save stage
+        status.flush();
+        metrics.stage(ExchangeMetrics.Stage.SAVE, calculated);
+        return Optional.of(new ExchangeOutcome(saved, applied));
+    }
 
-            if (ratesResponse == null || ratesResponse.getRate()
-                    .stream()
-                    .findFirst()
-                    .map(RatesResponse.Rate::getEffectiveDate)
-                    .orElse(LocalDate.EPOCH)
-                    .isBefore(LocalDate.now())) {
-                getRating();
+    /**
+     * Journals a committed exchange. The money has moved by then, so a failed append is logged rather than
+     * failing a request whose retry would move it again.
+     */
+    private void journal(UUID id, Long version, Currency from, Currency to, long amountMinor, RateSnapshot rates,
+                         long fromMinor, long toMinor) {
+        if (journal != null) {
+            try {
+                journal.append(id, version == null ? 0 : version, from, to, amountMinor, rates.crossRate(from, to),
+                        fromMinor, toMinor);
+            } catch (RuntimeException e) {
+                log.error("Exchange of account {} at version {} was committed but not journaled", id, version, e);
             }
+        }
+    }
 
-            calculate(account, amount, from, ratesResponse.getRate()
-                    .stream()
-                    .findFirst()
-                    .map(RatesResponse.Rate::getMid)
-                    .orElse(new BigDecimal(1)));
+    private <T> T withRetry(Supplier<T> action) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return action.get();
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt >= retryMaxAttempts) {
+                    throw e;
+                }
+                backoff(attempt);
+            }
         }
+    }
 
-        return accountRepository.save(account);
+    private void backoff(int attempt) {
+        long ceiling = retryBackoff.toNanos() << Math.min(attempt - 1, 10);
+        try {
+            TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying exchange", e);
+        }
     }
 
-    private void getRating() {
-        var restTemplate = new RestTemplate();
-        this.ratesResponse = restTemplate.getForObject(path, RatesResponse.class);
+    public List<ExchangeResult> exchangeBatch(List<ExchangeRequest> exchangeRequests) {
+        List<ExchangeResult> results = new ArrayList<>(exchangeRequests.size());
+        exchangeBatch(exchangeRequests.iterator(), results::add);
+        return results;
     }
 
-    private boolean isEnoughMoney(Account account, BigDecimal amount, Currency currency) {
-        if (Currency.PLN.name().equalsIgnoreCase(currency.name())) {
-            return account.getPlnBalance().compareTo(amount) >= 0;
+    /**
+     * Applies exchanges in chunks of {@code nn.exchange.batch.chunk-size}, each chunk loaded with one
+     * {@code findAllById} and written back in one transaction. All items are priced with the same rate table.
+     * A bad item, {@code null} included, only fails itself; results are handed to {@code sink} in input order as
+     * chunks complete.
+     */
+    public void exchangeBatch(Iterator<ExchangeRequest> exchangeRequests, Consumer<ExchangeResult> sink) {
+        RateSnapshot rates = rateProvider.getRate();
+        List<ExchangeRequest> chunk = new ArrayList<>(batchChunkSize);
+        while (exchangeRequests.hasNext()) {
+            chunk.add(exchangeRequests.next());
+            if (chunk.size() == batchChunkSize || !exchangeRequests.hasNext()) {
+                List<ExchangeResult> results = ledger != null
+                        ? exchangeChunkInLedger(chunk, rates)
+                        : withRetry(() -> transactionTemplate.execute(status -> exchangeChunk(chunk, rates, status)));
+                if (cache != null && ledger == null) {
+                    cache.invalidate(uuids(chunk));
+                }
+                for (int i = 0; i < results.size(); i++) {
+                    ExchangeResult result = results.get(i);
+                    if (result.getStatus() == ExchangeResult.Status.OK && ledger == null) {
+                        ExchangeRequest applied = chunk.get(i);
+                        UUID id = UUID.fromString(applied.getUuid());
+                        journal(id, result.version(), applied.getFrom(), applied.target(),
+                                FixedPoint.toMinor(applied.getAmount()), rates, result.getMinor(applied.getFrom()),
+                                result.getMinor(applied.target()));
+                        events.publish(id, result.version(), result.balances());
+                    }
+                    sink.accept(result);
+                }
+                chunk.clear();
+            }
         }
+    }
+
+    private List<ExchangeResult> exchangeChunk(List<ExchangeRequest> chunk, RateSnapshot rates,
+                                               TransactionStatus status) {
+        long start = System.nanoTime();
+        Map<UUID, Account> accounts = new HashMap<>();
+        accountRepository.findAllById(uuids(chunk)).forEach(account -> accounts.put(account.getId(), account));
+        long loaded = metrics.batchStage(ExchangeMetrics.Stage.LOAD, start);
+
+        List<ExchangeResult> results = new ArrayList<>(chunk.size());
+        Set<Account> changed = new LinkedHashSet<>();
+        for (ExchangeRequest exchangeRequest : chunk) {
+            Optional<ExchangeResult> invalid = validate(exchangeRequest, rates);
+            if (invalid.isPresent()) {
+                results.add(invalid.get());
+                continue;
+            }
 
-        if (Currency.USD.name().equalsIgnoreCase(currency.name())) {
-            return account.getUsdBalance().compareTo(amount) >= 0;
+            Account account = accounts.get(UUID.fromString(exchangeRequest.getUuid()));
+            long amountMinor = FixedPoint.toMinor(exchangeRequest.getAmount());
+            if (account == null) {
+                metrics.notFound();
+                results.add(notFound(exchangeRequest));
+            } else if (ExchangeCalculator.isEnoughMoney(account, amountMinor, exchangeRequest.getFrom())) {
+                ExchangeCalculator.calculate(account, amountMinor, exchangeRequest.getFrom(), exchangeRequest.target(),
+                        rates);
+                changed.add(account);
+                results.add(ExchangeResult.of(ExchangeResult.Status.OK, account));
+            } else {
+                metrics.insufficientFunds();
+                results.add(ExchangeResult.of(ExchangeResult.Status.INSUFFICIENT_FUNDS, account));
+            }
         }
+        long calculated = metrics.batchStage(ExchangeMetrics.Stage.CALCULATE, loaded);
 
-        return false;
+        accountRepository.saveAll(changed);
+        status.flush();
+        metrics.batchStage(ExchangeMetrics.Stage.SAVE, calculated);
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i).getStatus() == ExchangeResult.Status.OK) {
+                UUID id = UUID.fromString(chunk.get(i).getUuid());
+                results.set(i, results.get(i).withVersion(accounts.get(id).getVersion()));
+            }
+        }
+        return results;
     }
 
-    private void calculate(Account account, BigDecimal amount, Currency from, BigDecimal rate) {
-        if (Currency.PLN.name().equalsIgnoreCase(from.name())) {
-            BigDecimal moneyToExchange = amount.divide(rate, ROUND_SCALE, RoundingMode.DOWN);
-            account.setPlnBalance(account.getPlnBalance().subtract(amount));
-            account.setUsdBalance(account.getUsdBalance().add(moneyToExchange));
+    private List<ExchangeResult> exchangeChunkInLedger(List<ExchangeRequest> chunk, RateSnapshot rates) {
+        long start = System.nanoTime();
+        ledger.preload(uuids(chunk));
+        long loaded = metrics.batchStage(ExchangeMetrics.Stage.LOAD, start);
+
+        List<ExchangeResult> results = new ArrayList<>(chunk.size());
+        for (ExchangeRequest exchangeRequest : chunk) {
+            results.add(validate(exchangeRequest, rates).orElseGet(() -> ledger
+                    .exchange(UUID.fromString(exchangeRequest.getUuid()),
+                            FixedPoint.toMinor(exchangeRequest.getAmount()), exchangeRequest.getFrom(),
+                            exchangeRequest.target(), rates)
+                    .map(outcome -> {
+                        if (!outcome.isApplied()) {
+                            metrics.insufficientFunds();
+                        }
+                        return ExchangeResult.of(outcome.isApplied()
+                                ? ExchangeResult.Status.OK
+                                : ExchangeResult.Status.INSUFFICIENT_FUNDS, outcome.getAccount());
+                    })
+                    .orElseGet(() -> {
+                        metrics.notFound();
+                        return notFound(exchangeRequest);
+                    })));
         }
+        metrics.batchStage(ExchangeMetrics.Stage.LEDGER, loaded);
+        return results;
+    }
 
-        if (Currency.USD.name().equalsIgnoreCase(from.name())) {
-            BigDecimal moneyToExchange = amount.multiply(rate);
-            account.setPlnBalance(account.getPlnBalance().add(moneyToExchange));
-            account.setUsdBalance(account.getUsdBalance().subtract(amount));
+    private static Set<UUID> uuids(List<ExchangeRequest> chunk) {
+        Set<UUID> ids = new LinkedHashSet<>();
+        for (ExchangeRequest exchangeRequest : chunk) {
+            if (exchangeRequest != null) {
+                ExchangeValidation.parseUuid(exchangeRequest.getUuid()).ifPresent(ids::add);
+            }
         }
+        return ids;
+    }
+
+    private Optional<ExchangeResult> validate(ExchangeRequest exchangeRequest, RateSnapshot rates) {
+        return ExchangeValidation.validate(validator, exchangeRequest, rates);
+    }
+
+    private static ExchangeResult notFound(ExchangeRequest exchangeRequest) {
+        return ExchangeValidation.notFound(exchangeRequest);
     }
 }
@@ -0,0 +1,437 @@
+package com.example.nn;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * The databases of sharded account storage, {@code nn.shards.count} of them, each holding the {@code account}
+ * table of {@code db/shard-schema.sql}. An account lives in the shard its id maps to with the jump consistent
+ * hash, so going from n to m shards only moves the accounts that map to the new shards, about (m - n) / m of
+ * them, and never one between existing shards.
+ * <p>
+ * Which shard an account is routed to is an immutable {@link Routing}, replaced as a whole. Operations on
+ * single accounts hold the routing read lock, {@link ShardedTransactionManager transactions} from begin to
+ * end. Reads over all shards, such as an export, don't take the lock: they read the shards of one routing and
+ * skip the rows it routes elsewhere. {@link #addShards} takes the write lock for one batch of moved accounts
+ * at a time, so nothing sees an account half moved and operations only wait for one batch.
+ */
+@Slf4j
+public class AccountShards implements AutoCloseable {
+
+    static final String SCHEMA = "db/shard-schema.sql";
+
+    private static final String SELECT = "select id, name, last_name, balances, version from account";
+
+    private static final String DELETE = "delete from account where id = ?";
+
+    private static final String COPY = "insert into account (id, name, last_name, balances, version) values (?, ?, ?, ?, ?)";
+
+    private static final int MOVE_BATCH_SIZE = 1000;
+
+    @Getter
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    static final class Shard {
+
+        private final int index;
+
+        private final HikariDataSource dataSource;
+
+        private final JdbcTemplate jdbcTemplate;
+    }
+
+    /**
+     * The shards and where each account is. While accounts are moved onto new shards, the accounts mapping to a
+     * new shard stay routed to their old one until the id order of their old shard has been moved past them.
+     * Moved accounts are deleted from their old shards only once no read over all shards started before the
+     * last account was moved is still running, so until then a shard may also hold accounts routed elsewhere.
+     */
+    static final class Routing {
+
+        private final List<Shard> shards;
+
+        private final int settled;
+
+        // per settled shard the highest id moved on, null before its first batch; no array when nothing is moved
+        private final UUID[] moved;
+
+        private final boolean leftovers;
+
+        private final AtomicInteger readers = new AtomicInteger();
+
+        private Routing(List<Shard> shards, int settled, UUID[] moved, boolean leftovers) {
+            this.shards = shards;
+            this.settled = settled;
+            this.moved = moved;
+            this.leftovers = leftovers;
+        }
+
+        Shard shardFor(UUID id) {
+            int shard = shardOf(id, shards.size());
+            if (moved == null || shard < settled) {
+                return shards.get(shard);
+            }
+            int from = shardOf(id, settled);
+            UUID upTo = moved[from];
+            return shards.get(upTo != null && compareIds(id, upTo) <= 0 ? shard : from);
+        }
+
+        /**
+         * Whether the account read from {@code shard} is routed to it, rather than a copy left behind by a move.
+         */
+        boolean routes(Shard shard, UUID id) {
+            return shardFor(id) == shard;
+        }
+
+        /**
+         * Whether every shard only holds accounts routed to it, so rows need not be checked one by one.
+         */
+        boolean clean() {
+            return !leftovers;
+        }
+
+        private void leave() {
+            if (readers.decrementAndGet() == 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        private synchronized void awaitReaders() throws InterruptedException {
+            while (readers.get() > 0) {
+                wait();
+            }
+        }
+    }
+
+    private final String url;
+
+    private final int poolSize;
+
+    private final Duration lockTimeout;
+
+    private final ReadWriteLock routingLock = new ReentrantReadWriteLock();
+
+    private final ExecutorService workers;
+
+    private volatile Routing routing;
+
+    // routings replaced while accounts are moved, whose readers may still expect the moved accounts in their old shards
+    private final List<Routing> retired = new ArrayList<>();
+
+    /**
+     * @param url         JDBC URL of every shard, {@code {index}} replaced by the shard number
+     * @param lockTimeout how long {@link #addShards} waits for running operations before each batch it moves
+     */
+    public AccountShards(String url, int count, int poolSize, Duration lockTimeout, boolean virtualThreads) {
+        this.url = url;
+        this.poolSize = poolSize;
+        this.lockTimeout = lockTimeout;
+        this.workers = RateFetchThreads.perTask("account-shard", virtualThreads);
+        List<Shard> opened = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            opened.add(open(i));
+        }
+        this.routing = new Routing(List.copyOf(opened), count, null, false);
+    }
+
+    /**
+     * Jump consistent hash of Lamping and Veach: {@code shardOf(id, n + 1)} is either {@code shardOf(id, n)} or
+     * {@code n}, so adding a shard only moves accounts onto it.
+     */
+    static int shardOf(UUID id, int count) {
+        long key = id.getMostSignificantBits() ^ id.getLeastSignificantBits();
+        long shard = -1;
+        long next = 0;
+        while (next < count) {
+            shard = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((shard + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) shard;
+    }
+
+    /**
+     * The {@code order by id} of the database, which compares ids as unsigned numbers.
+     */
+    static int compareIds(UUID a, UUID b) {
+        int high = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return high != 0 ? high : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    }
+
+    ReadWriteLock routingLock() {
+        return routingLock;
+    }
+
+    public int count() {
+        return routing.shards.size();
+    }
+
+    List<Shard> all() {
+        return routing.shards;
+    }
+
+    Shard shardFor(UUID id) {
+        return routing.shardFor(id);
+    }
+
+    /**
+     * The {@code JdbcTemplate} of {@code shard}, its connection enlisted in the transaction of the current
+     * thread if there is one.
+     */
+    JdbcTemplate jdbc(Shard shard) {
+        ShardedTransactionManager.enlist(shard.getDataSource());
+        return shard.getJdbcTemplate();
+    }
+
+    <T> T routed(Supplier<T> operation) {
+        routingLock.readLock().lock();
+        try {
+            return operation.get();
+        } finally {
+            routingLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs {@code operation} on every shard of the current routing at once, outside any transaction of the
+     * calling thread and without holding the routing lock, so accounts may be moved meanwhile. The routing is
+     * handed to {@code operation} to skip the rows it {@link Routing#routes routes} to another shard.
+     *
+     * @return the results by shard index
+     */
+    <T> List<T> parallel(BiFunction<Shard, Routing, T> operation) {
+        Routing current = enter();
+        try {
+            List<CompletableFuture<T>> running = new ArrayList<>();
+            for (Shard shard : current.shards) {
+                running.add(CompletableFuture.supplyAsync(() -> operation.apply(shard, current), workers));
+            }
+            try {
+                return running.stream().map(CompletableFuture::join).toList();
+            } catch (CompletionException e) {
+                running.forEach(future -> future.cancel(true));
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        } finally {
+            current.leave();
+        }
+    }
+
+    private Routing enter() {
+        while (true) {
+            Routing current = routing;
+            current.readers.incrementAndGet();
+            if (current == routing) {
+                return current;
+            }
+            current.leave();
+        }
+    }
+
+    /**
+     * Grows to {@code count} shards and moves the accounts that map to the new ones. Each old shard is moved in
+     * id order, a batch at a time under the routing write lock: the batch is copied, then routed to the new
+     * shards. The old copies are deleted at the end, once the reads over all shards that may still look for
+     * them are done. A failure part way leaves every account routed to a complete copy, and running it again
+     * with the same {@code count} picks up where it stopped.
+     *
+     * @return number of accounts moved
+     * @throws IllegalArgumentException when {@code count} is less than the current number of shards, or an
+     *                                  unfinished run grows to another number
+     * @throws IllegalStateException    when operations hold the routing lock longer than
+     *                                  {@code nn.shards.rebalance-lock-timeout}
+     */
+    public synchronized long addShards(int count) {
+        Routing current = routing;
+        if (count < current.shards.size()) {
+            throw new IllegalArgumentException("Shards can only be added, there are " + current.shards.size());
+        }
+        if (current.moved != null && count != current.shards.size()) {
+            throw new IllegalArgumentException("Growing to " + current.shards.size()
+                    + " shards is unfinished, run it again first");
+        }
+        if (current.moved == null && current.leftovers) {
+            // an earlier run stopped before deleting what it moved
+            deleteLeftovers();
+            current = routing;
+        }
+        int from = current.settled;
+        if (count > current.shards.size()) {
+            List<Shard> grown = new ArrayList<>(current.shards);
+            for (int i = current.shards.size(); i < count; i++) {
+                grown.add(open(i));
+            }
+            // nothing is routed to the new shards yet
+            publish(new Routing(List.copyOf(grown), current.shards.size(), new UUID[current.shards.size()], true));
+        }
+
+        long moved = 0;
+        if (routing.moved != null) {
+            for (int source = 0; source < routing.settled; source++) {
+                moved += moveFrom(source);
+            }
+            Routing complete = routing;
+            writeLocked(() -> {
+                publish(new Routing(complete.shards, complete.shards.size(), null, true));
+                return null;
+            });
+        }
+        if (routing.leftovers) {
+            deleteLeftovers();
+        }
+        log.info("Grew account storage from {} to {} shards, moved {} accounts", from, count, moved);
+        return moved;
+    }
+
+    private long moveFrom(int source) {
+        long moved = 0;
+        int batchMoved;
+        do {
+            batchMoved = writeLocked(() -> moveBatch(source));
+            moved += Math.max(batchMoved, 0);
+        } while (batchMoved >= 0);
+        return moved;
+    }
+
+    /**
+     * Copies the accounts of the next batch of ids of {@code source} that map to new shards and routes them
+     * there. Deletes before inserting, so the copies left by an earlier failed run are replaced.
+     *
+     * @return number of accounts moved, -1 once {@code source} has no ids left
+     */
+    private int moveBatch(int source) {
+        Routing current = routing;
+        UUID after = current.moved[source];
+        Shard from = current.shards.get(source);
+        List<Object[]> rows = after == null
+                ? from.getJdbcTemplate().query(SELECT + " order by id limit ?", AccountShards::row, MOVE_BATCH_SIZE)
+                : from.getJdbcTemplate().query(SELECT + " where id > ? order by id limit ?", AccountShards::row,
+                        after, MOVE_BATCH_SIZE);
+        if (rows.isEmpty()) {
+            return -1;
+        }
+        Map<Shard, List<Object[]>> byTarget = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            UUID id = (UUID) row[0];
+            int target = shardOf(id, current.shards.size());
+            if (target >= current.settled && shardOf(id, current.settled) == source) {
+                byTarget.computeIfAbsent(current.shards.get(target), shard -> new ArrayList<>()).add(row);
+            }
+        }
+        int moved = 0;
+        for (Map.Entry<Shard, List<Object[]>> batch : byTarget.entrySet()) {
+            JdbcTemplate target = batch.getKey().getJdbcTemplate();
+            target.batchUpdate(DELETE, batch.getValue().stream().map(row -> new Object[]{row[0]}).toList());
+            target.batchUpdate(COPY, batch.getValue());
+            moved += batch.getValue().size();
+        }
+        UUID[] movedUpTo = current.moved.clone();
+        movedUpTo[source] = (UUID) rows.get(rows.size() - 1)[0];
+        publish(new Routing(current.shards, current.settled, movedUpTo, true));
+        return moved;
+    }
+
+    private static Object[] row(ResultSet rs, int row) throws SQLException {
+        return new Object[]{rs.getObject(1, UUID.class), rs.getString(2), rs.getString(3), rs.getBytes(4),
+                rs.getLong(5)};
+    }
+
+    /**
+     * Deletes the accounts each shard holds that are routed elsewhere. Nothing but reads over all shards of
+     * earlier routings still looks at them, so this only waits for those and not under the routing lock.
+     */
+    private void deleteLeftovers() {
+        try {
+            for (Routing earlier : retired) {
+                earlier.awaitReaders();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for reads of moved accounts", e);
+        }
+        retired.clear();
+        Routing current = routing;
+        for (Shard shard : current.shards) {
+            List<Object[]> batch = new ArrayList<>();
+            shard.getJdbcTemplate().query("select id from account", rs -> {
+                UUID id = rs.getObject(1, UUID.class);
+                if (!current.routes(shard, id)) {
+                    batch.add(new Object[]{id});
+                }
+            });
+            for (int from = 0; from < batch.size(); from += MOVE_BATCH_SIZE) {
+                shard.getJdbcTemplate().batchUpdate(DELETE,
+                        batch.subList(from, Math.min(from + MOVE_BATCH_SIZE, batch.size())));
+            }
+        }
+        routing = new Routing(current.shards, current.settled, null, false);
+    }
+
+    // called by the single rebalancing thread, under the routing write lock once accounts are routed differently
+    private void publish(Routing next) {
+        retired.add(routing);
+        routing = next;
+    }
+
+    private <T> T writeLocked(Supplier<T> operation) {
+        Lock writeLock = routingLock.writeLock();
+        try {
+            if (!writeLock.tryLock(lockTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new IllegalStateException("Operations held the account routing longer than " + lockTimeout
+                        + ", run it again to continue");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the account routing", e);
+        }
+        try {
+            return operation.get();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private Shard open(int index) {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .url(url.replace("{index}", Integer.toString(index)))
+                .build();
+        dataSource.setPoolName("account-shard-" + index);
+        dataSource.setMaximumPoolSize(poolSize);
+        new ResourceDatabasePopulator(new ClassPathResource(SCHEMA)).execute(dataSource);
+        return new Shard(index, dataSource, new JdbcTemplate(dataSource));
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+        routing.shards.forEach(shard -> shard.getDataSource().close());
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.nn;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.UUID;
+
+/**
+ * Search result: only the columns covered by the name index, without the balances.
+ */
+@Getter
+@AllArgsConstructor
+public class AccountSummary {
+
+    private final UUID id;
+
+    private final String name;
+
+    private final String lastName;
+}
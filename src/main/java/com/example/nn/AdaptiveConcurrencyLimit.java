@@ -0,0 +1,93 @@
+package com.example.nn;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bound on concurrently handled requests that follows their latency, in the manner of the gradient limit of
+ * Netflix concurrency-limits.
+ * <p>
+ * Two moving averages of the latency are kept, a short one over about the last 10 requests and a long one
+ * over about the last 100. While the short one stays within {@link #TOLERANCE} of the long one, the limit
+ * grows by about its square root per request; once requests queue somewhere downstream, in the connection
+ * pool or on NBP, the short average rises and the limit shrinks in proportion, by at most half per step.
+ * It does not grow while less than half of it is in use, so a quiet period does not leave a limit no load
+ * ever tested.
+ */
+final class AdaptiveConcurrencyLimit {
+
+    static final double TOLERANCE = 1.5;
+
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile int limit;
+
+    // guarded by this
+    private double estimatedLimit;
+
+    private double shortRttNanos;
+
+    private double longRttNanos;
+
+    AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.estimatedLimit = initialLimit;
+        this.limit = initialLimit;
+    }
+
+    boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases a permit of {@link #tryAcquire} and adapts the limit to the latency of its request.
+     */
+    void release(long rttNanos) {
+        int concurrent = inFlight.getAndDecrement();
+        update(rttNanos, concurrent);
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void update(long rttNanos, int concurrent) {
+        if (longRttNanos == 0) {
+            shortRttNanos = rttNanos;
+            longRttNanos = rttNanos;
+            return;
+        }
+        shortRttNanos = shortRttNanos * 0.9 + rttNanos * 0.1;
+        longRttNanos = longRttNanos * 0.99 + rttNanos * 0.01;
+        if (longRttNanos > 2 * shortRttNanos) {
+            // latency recovered from a slow period, let the baseline come down faster than it went up
+            longRttNanos *= 0.95;
+        }
+        if (concurrent < estimatedLimit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRttNanos / shortRttNanos));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit,
+                estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+        limit = (int) estimatedLimit;
+    }
+}
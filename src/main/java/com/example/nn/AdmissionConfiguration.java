@@ -0,0 +1,52 @@
+package com.example.nn;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+
+/**
+ * Admission control of the {@code /account} API, enabled with {@code nn.admission.enabled}. The filter runs
+ * after the HTTP server metrics filter, so rejected requests are still counted there.
+ */
+@Configuration
+@ConditionalOnProperty(name = "nn.admission.enabled", havingValue = "true")
+public class AdmissionConfiguration {
+
+    static final int FILTER_ORDER = Ordered.HIGHEST_PRECEDENCE + 10;
+
+    @Bean
+    public AdmissionControl admissionControl(@Value("${nn.admission.rate}") double rate,
+                                             @Value("${nn.admission.burst}") int burst,
+                                             @Value("${nn.admission.max-clients}") long maxClients,
+                                             @Value("${nn.admission.concurrency.initial}") int initialLimit,
+                                             @Value("${nn.admission.concurrency.min}") int minLimit,
+                                             @Value("${nn.admission.concurrency.max}") int maxLimit,
+                                             MeterRegistry registry) {
+        return new AdmissionControl(new ClientRateLimiter(rate, burst, maxClients),
+                new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit), registry);
+    }
+
+    @Bean
+    @Profile("!reactive")
+    public FilterRegistrationBean<AdmissionFilter> admissionFilter(AdmissionControl admissionControl,
+                                                                   @Value("${nn.admission.client-header}")
+                                                                   String clientHeader) {
+        FilterRegistrationBean<AdmissionFilter> registration =
+                new FilterRegistrationBean<>(new AdmissionFilter(admissionControl, clientHeader));
+        registration.setOrder(FILTER_ORDER);
+        return registration;
+    }
+
+    @Bean
+    @Profile("reactive")
+    public ReactiveAdmissionFilter reactiveAdmissionFilter(AdmissionControl admissionControl,
+                                                           @Value("${nn.admission.client-header}")
+                                                           String clientHeader) {
+        return new ReactiveAdmissionFilter(admissionControl, clientHeader);
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.nn;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission of {@code /account} requests, shared by the servlet and the reactive filter: a client over its
+ * {@link ClientRateLimiter rate} is turned away with 429, and an exchange over the
+ * {@link AdaptiveConcurrencyLimit concurrency limit} with 503, both at once and with a {@code Retry-After}
+ * header, instead of queueing until everyone times out. Only exchanges take part in the concurrency limit, so
+ * it adapts to the latency of the exchange pipeline rather than to that of cached reads.
+ * <p>
+ * The streaming endpoints are not admitted here: an event stream or an export holds its request for minutes
+ * and would both occupy a permit and distort the latency the limit adapts to. So does an NDJSON exchange batch,
+ * which is still streaming when the servlet filter returns. The same goes for long polls of asynchronous
+ * exchange orders, which wait on the order queue rather than do work.
+ */
+public class AdmissionControl {
+
+    public static final String RETRY_AFTER = "Retry-After";
+
+    /**
+     * Outcome of {@link #tryAdmit}; an admitted request has to be {@link #complete completed}.
+     *
+     * @param permit whether the request holds a permit of the concurrency limit
+     */
+    public record Decision(HttpStatus rejection, long retryAfterSeconds, boolean permit) {
+
+        static final Decision ADMITTED = new Decision(null, 0, true);
+
+        static final Decision ADMITTED_UNLIMITED = new Decision(null, 0, false);
+
+        public boolean isAdmitted() {
+            return rejection == null;
+        }
+    }
+
+    private final ClientRateLimiter rateLimiter;
+
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
+
+    private final Counter rateLimited;
+
+    private final Counter overloaded;
+
+    public AdmissionControl(ClientRateLimiter rateLimiter, AdaptiveConcurrencyLimit concurrencyLimit,
+                            MeterRegistry registry) {
+        this.rateLimiter = rateLimiter;
+        this.concurrencyLimit = concurrencyLimit;
+        this.rateLimited = Counter.builder("nn.admission.rejections")
+                .tag("reason", "rate_limited")
+                .register(registry);
+        this.overloaded = Counter.builder("nn.admission.rejections")
+                .tag("reason", "overloaded")
+                .register(registry);
+        Gauge.builder("nn.admission.limit", concurrencyLimit, AdaptiveConcurrencyLimit::getLimit)
+                .description("Current adaptive concurrency limit")
+                .register(registry);
+        Gauge.builder("nn.admission.in-flight", concurrencyLimit, AdaptiveConcurrencyLimit::getInFlight)
+                .register(registry);
+    }
+
+    /**
+     * @param contentType {@code Content-Type} header of the request, {@code null} when absent
+     */
+    static boolean isControlled(String path, String contentType) {
+        return path.startsWith("/account")
+                && !path.startsWith("/account/events")
+                && !path.startsWith("/account/export")
+                && !path.startsWith("/account/import")
+                && !path.startsWith("/account/exchange/orders")
+                && !(path.startsWith("/account/exchange/batch") && isNdjson(contentType));
+    }
+
+    /**
+     * Whether a {@link #isControlled controlled} request is an exchange, the requests the concurrency limit
+     * applies to.
+     */
+    static boolean isExchange(String path) {
+        return path.startsWith("/account/exchange");
+    }
+
+    private static boolean isNdjson(String contentType) {
+        return contentType != null && contentType.regionMatches(true, 0, MediaType.APPLICATION_NDJSON_VALUE, 0,
+                MediaType.APPLICATION_NDJSON_VALUE.length());
+    }
+
+    /**
+     * @param exchange whether the request is an {@link #isExchange exchange}
+     */
+    public Decision tryAdmit(String client, boolean exchange) {
+        long wait = rateLimiter.tryAcquire(client, System.nanoTime());
+        if (wait > 0) {
+            rateLimited.increment();
+            return new Decision(HttpStatus.TOO_MANY_REQUESTS, Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait) + 1),
+                    false);
+        }
+        if (!exchange) {
+            return Decision.ADMITTED_UNLIMITED;
+        }
+        if (!concurrencyLimit.tryAcquire()) {
+            overloaded.increment();
+            return new Decision(HttpStatus.SERVICE_UNAVAILABLE, 1, false);
+        }
+        return Decision.ADMITTED;
+    }
+
+    public void complete(Decision decision, long startNanos) {
+        if (decision.permit()) {
+            concurrencyLimit.release(System.nanoTime() - startNanos);
+        }
+    }
+}
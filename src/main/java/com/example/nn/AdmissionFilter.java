@@ -0,0 +1,58 @@
+package com.example.nn;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * {@link AdmissionControl} in front of the servlet {@code /account} endpoints. Clients are told apart by
+ * {@code nn.admission.client-header} when set, e.g. to a header a gateway sets, and by remote address otherwise;
+ * behind a load balancer every client has the same remote address, so the header is then required.
+ */
+public class AdmissionFilter extends OncePerRequestFilter {
+
+    private final AdmissionControl admissionControl;
+
+    private final String clientHeader;
+
+    public AdmissionFilter(AdmissionControl admissionControl, String clientHeader) {
+        this.admissionControl = admissionControl;
+        this.clientHeader = clientHeader;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !AdmissionControl.isControlled(request.getRequestURI().substring(request.getContextPath().length()),
+                request.getContentType());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        AdmissionControl.Decision decision = admissionControl.tryAdmit(client(request),
+                AdmissionControl.isExchange(request.getRequestURI().substring(request.getContextPath().length())));
+        if (!decision.isAdmitted()) {
+            response.setStatus(decision.rejection().value());
+            response.setHeader(AdmissionControl.RETRY_AFTER, Long.toString(decision.retryAfterSeconds()));
+            response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+            response.getWriter().write(decision.rejection().getReasonPhrase());
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            admissionControl.complete(decision, start);
+        }
+    }
+
+    private String client(HttpServletRequest request) {
+        String client = clientHeader.isEmpty() ? null : request.getHeader(clientHeader);
+        return client != null ? client : request.getRemoteAddr();
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.nn;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Events of one flush to one subscriber of the {@link BalanceEventBus}, in publishing order, at most one per
+ * account.
+ */
+@Getter
+@AllArgsConstructor
+public class BalanceBatch {
+
+    private final List<BalanceEvent> events;
+
+    /**
+     * Events of other accounts dropped since the previous batch because the subscriber fell behind; their
+     * accounts should be read again.
+     */
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private final long dropped;
+}
@@ -0,0 +1,48 @@
+package com.example.nn;
+
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Balances of one account right after a committed change, published on the {@link BalanceEventBus}.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public class BalanceEvent {
+
+    /**
+     * Increases with every published event. Publishing order is not commit order; order the events of one
+     * account by {@link #getVersion() version}.
+     */
+    private final long sequence;
+
+    private final UUID accountId;
+
+    /**
+     * Stored version of the account after the change. Events are published after their change commits, so two
+     * events of one account may be published out of order; the one with the higher version is the newer.
+     */
+    private final long version;
+
+    /**
+     * {@link FixedPoint} minor units by {@link Currency} ordinal, never modified after publishing.
+     */
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    private final long[] balances;
+
+    /**
+     * The same {@code <code>Balance} properties as the JSON view of {@link Account}.
+     */
+    @JsonAnyGetter
+    public Map<String, BigDecimal> getBalanceView() {
+        return Account.balanceView(balances);
+    }
+}
@@ -0,0 +1,276 @@
+package com.example.nn;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * In-process fan-out of {@link BalanceEvent balance changes} to subscribers such as the
+ * {@code GET /account/events} streams.
+ * <p>
+ * Publishing never waits for a subscriber: it appends the event to the pending buffer of every interested
+ * subscriber and returns, and costs one check when nobody listens. A pending event of an account is replaced
+ * by one of the same account with an equal or higher version, so a buffer holds at most
+ * {@code nn.events.buffer-size} accounts and never swaps newer balances for older ones. Writers publish after
+ * their commit, so an older version can also arrive after a newer one was already delivered; each subscriber
+ * remembers the versions it delivered of its last {@code nn.events.buffer-size} accounts and drops such
+ * events, so its balances never go backwards. When
+ * a slow subscriber's buffer is full of other accounts, {@code nn.events.overflow} either drops its oldest
+ * event, counting it in the next batch, or disconnects it. Every {@code nn.events.flush-interval} the buffers
+ * are drained into one {@link BalanceBatch} per subscriber, delivered off the publishing threads; a subscriber
+ * still busy with its previous batch, or not ready for one, keeps collecting until the next flush.
+ */
+@Slf4j
+@Component
+public class BalanceEventBus {
+
+    public enum Overflow {
+        DROP_OLDEST, DISCONNECT
+    }
+
+    private final int bufferSize;
+
+    private final Overflow overflow;
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final ScheduledExecutorService flusher;
+
+    private final ExecutorService delivery;
+
+    private final Counter published;
+
+    private final Counter coalesced;
+
+    private final Counter dropped;
+
+    public BalanceEventBus(@Value("${nn.events.buffer-size}") int bufferSize,
+                           @Value("${nn.events.flush-interval}") Duration flushInterval,
+                           @Value("${nn.events.overflow}") String overflow,
+                           @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                           MeterRegistry registry) {
+        this.bufferSize = bufferSize;
+        this.overflow = Overflow.valueOf(overflow.trim().toUpperCase(Locale.ROOT));
+        this.flusher = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("balance-events").daemon().factory());
+        // a subscriber writing to a slow client blocks its own delivery thread only
+        this.delivery = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("balance-events-", 0).factory())
+                : Executors.newCachedThreadPool(Thread.ofPlatform().name("balance-events-", 0).daemon().factory());
+        this.published = Counter.builder("nn.events.published")
+                .description("Balance events handed to subscribers")
+                .register(registry);
+        this.coalesced = Counter.builder("nn.events.coalesced")
+                .description("Pending balance events replaced by a newer one of the same account")
+                .register(registry);
+        this.dropped = Counter.builder("nn.events.dropped")
+                .description("Balance events dropped because a subscriber fell behind")
+                .register(registry);
+        Gauge.builder("nn.events.subscribers", subscriptions, List::size)
+                .register(registry);
+        long interval = flushInterval.toNanos();
+        flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    public void publish(Account account) {
+        if (!subscriptions.isEmpty()) {
+            publish(account.getId(), account.getVersion() == null ? 0 : account.getVersion(),
+                    account.getBalances().clone());
+        }
+    }
+
+    /**
+     * @param version  stored version of the account with these balances
+     * @param balances snapshot of the balances, not modified afterwards
+     */
+    void publish(UUID accountId, long version, long[] balances) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        BalanceEvent event = new BalanceEvent(sequence.incrementAndGet(), accountId, version, balances);
+        for (Subscription subscription : subscriptions) {
+            if (subscription.accepts(accountId)) {
+                if (!subscription.offer(event)) {
+                    close(subscription);
+                }
+                published.increment();
+            }
+        }
+    }
+
+    /**
+     * Subscribes to the events of {@code accountIds}, of all accounts when empty or {@code null}.
+     *
+     * @param ready    whether the subscriber can take a batch now; it is asked again on the next flush if not
+     * @param consumer receives the batches, one at a time; may block, an exception closes the subscription
+     * @param onClose  called once the bus closed the subscription itself, after an overflow or a failed delivery
+     */
+    public Subscription subscribe(Collection<UUID> accountIds, BooleanSupplier ready, Consumer<BalanceBatch> consumer,
+                                  Runnable onClose) {
+        Subscription subscription = new Subscription(accountIds == null ? Set.of() : Set.copyOf(accountIds), ready,
+                consumer, onClose);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    public int subscribers() {
+        return subscriptions.size();
+    }
+
+    void flush() {
+        for (Subscription subscription : subscriptions) {
+            if (!subscription.ready.getAsBoolean() || !subscription.delivering.compareAndSet(false, true)) {
+                continue;
+            }
+            BalanceBatch batch = subscription.drain();
+            if (batch == null) {
+                subscription.delivering.set(false);
+                continue;
+            }
+            delivery.execute(() -> {
+                try {
+                    subscription.consumer.accept(batch);
+                } catch (RuntimeException e) {
+                    log.debug("Balance event delivery failed, closing subscription: {}", e.getMessage());
+                    close(subscription);
+                } finally {
+                    subscription.delivering.set(false);
+                }
+            });
+        }
+    }
+
+    private void close(Subscription subscription) {
+        if (subscriptions.remove(subscription)) {
+            delivery.execute(subscription.onClose);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        flusher.shutdownNow();
+        delivery.shutdownNow();
+    }
+
+    /**
+     * One subscriber with its pending events. Closing it stops delivery; it does not call {@code onClose}.
+     */
+    public final class Subscription implements AutoCloseable {
+
+        private final Set<UUID> accountIds;
+
+        private final BooleanSupplier ready;
+
+        private final Consumer<BalanceBatch> consumer;
+
+        private final Runnable onClose;
+
+        private final AtomicBoolean delivering = new AtomicBoolean();
+
+        /**
+         * Pending events by account in publishing order; guarded by {@code this}.
+         */
+        private LinkedHashMap<UUID, BalanceEvent> pending = new LinkedHashMap<>();
+
+        private long droppedSinceDrain;
+
+        /**
+         * Last delivered version of the most recently delivered accounts, oldest first; guarded by {@code this}.
+         */
+        private final LinkedHashMap<UUID, Long> delivered = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Long> eldest) {
+                return size() > bufferSize;
+            }
+        };
+
+        private Subscription(Set<UUID> accountIds, BooleanSupplier ready, Consumer<BalanceBatch> consumer,
+                             Runnable onClose) {
+            this.accountIds = accountIds;
+            this.ready = ready;
+            this.consumer = consumer;
+            this.onClose = onClose;
+        }
+
+        private boolean accepts(UUID accountId) {
+            return accountIds.isEmpty() || accountIds.contains(accountId);
+        }
+
+        /**
+         * @return false when the buffer is full and the subscriber has to be disconnected
+         */
+        private synchronized boolean offer(BalanceEvent event) {
+            BalanceEvent replaced = pending.get(event.getAccountId());
+            Long deliveredVersion = delivered.get(event.getAccountId());
+            if ((replaced != null && replaced.getVersion() > event.getVersion())
+                    || (deliveredVersion != null && deliveredVersion > event.getVersion())) {
+                // published late by a writer that committed before the pending or delivered one, nothing new to
+                // deliver; an equal version is kept, the ledger and batch chunks publish several under one
+                coalesced.increment();
+                return true;
+            }
+            // removed first, so a replaced event moves to the end and the batch stays in publishing order
+            if (replaced != null) {
+                pending.remove(event.getAccountId());
+                coalesced.increment();
+            } else if (pending.size() >= bufferSize) {
+                if (overflow == Overflow.DISCONNECT) {
+                    return false;
+                }
+                Iterator<BalanceEvent> oldest = pending.values().iterator();
+                oldest.next();
+                oldest.remove();
+                droppedSinceDrain++;
+                dropped.increment();
+            }
+            pending.put(event.getAccountId(), event);
+            return true;
+        }
+
+        private synchronized BalanceBatch drain() {
+            if (pending.isEmpty() && droppedSinceDrain == 0) {
+                return null;
+            }
+            BalanceBatch batch = new BalanceBatch(new ArrayList<>(pending.values()), droppedSinceDrain);
+            for (BalanceEvent event : pending.values()) {
+                // removed first, so the account moves to the newest end
+                delivered.remove(event.getAccountId());
+                delivered.put(event.getAccountId(), event.getVersion());
+            }
+            pending = new LinkedHashMap<>();
+            droppedSinceDrain = 0;
+            return batch;
+        }
+
+        @Override
+        public void close() {
+            subscriptions.remove(this);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.nn;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Stores the per-currency balances of an account in one binary column, eight big-endian bytes per
+ * {@link Currency} ordinal. Values written before a currency was added are shorter and read back with a zero
+ * balance for it, so adding a currency needs no schema change.
+ */
+@Converter
+public class BalancesConverter implements AttributeConverter<long[], byte[]> {
+
+    @Override
+    public byte[] convertToDatabaseColumn(long[] balances) {
+        return encode(balances);
+    }
+
+    @Override
+    public long[] convertToEntityAttribute(byte[] column) {
+        return decode(column);
+    }
+
+    static byte[] encode(long[] balances) {
+        ByteBuffer column = ByteBuffer.allocate(balances.length * Long.BYTES);
+        column.asLongBuffer().put(balances);
+        return column.array();
+    }
+
+    static long[] decode(byte[] column) {
+        long[] balances = new long[Currency.count()];
+        decode(column, balances, 0);
+        return balances;
+    }
+
+    /**
+     * Decodes into the {@code Currency.count()} elements of {@code balances} from {@code offset}.
+     *
+     * @return whether the column holds whole balances of known currencies only
+     */
+    static boolean decode(byte[] column, long[] balances, int offset) {
+        int count = column == null ? 0 : Math.min(column.length / Long.BYTES, Currency.count());
+        if (count > 0) {
+            ByteBuffer.wrap(column).asLongBuffer().get(balances, offset, count);
+        }
+        Arrays.fill(balances, offset + count, offset + Currency.count(), 0);
+        return column != null && count * Long.BYTES == column.length;
+    }
+}
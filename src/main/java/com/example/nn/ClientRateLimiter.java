@@ -0,0 +1,54 @@
+package com.example.nn;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket per client, kept as a single timestamp so admitting a request is one compare-and-set.
+ * <p>
+ * This is the generic cell rate algorithm: each client has the theoretical arrival time of its next request,
+ * which every admitted request pushes one emission interval ({@code 1 / rate}) further. A request is admitted
+ * while that time is at most {@code burst - 1} intervals ahead of now, which is a full bucket of {@code burst}
+ * tokens refilled at {@code rate} per second. Clients idle long enough to have refilled their bucket are
+ * evicted; a new entry is a full bucket again.
+ */
+final class ClientRateLimiter {
+
+    private final long intervalNanos;
+
+    private final long toleranceNanos;
+
+    private final Cache<String, AtomicLong> arrivals;
+
+    ClientRateLimiter(double ratePerSecond, int burst, long maximumClients) {
+        this.intervalNanos = (long) (1_000_000_000L / ratePerSecond);
+        this.toleranceNanos = intervalNanos * (burst - 1);
+        this.arrivals = Caffeine.newBuilder()
+                .maximumSize(maximumClients)
+                .expireAfterAccess(Duration.ofNanos(toleranceNanos + intervalNanos))
+                .build();
+    }
+
+    /**
+     * Takes a token of {@code client} if it has one.
+     *
+     * @return 0 when admitted, otherwise the nanoseconds until the client has a token again
+     */
+    long tryAcquire(String client, long nowNanos) {
+        AtomicLong arrival = arrivals.get(client, key -> new AtomicLong(nowNanos));
+        while (true) {
+            long current = arrival.get();
+            long theoretical = Math.max(current, nowNanos);
+            long wait = theoretical - nowNanos - toleranceNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (arrival.compareAndSet(current, theoretical + intervalNanos)) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.nn;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Combines the sources listed in {@code nn.rates.sources} either by trying them in order ({@code failover})
+ * or by asking all of them at once and taking the first answer ({@code race}), so one slow upstream cannot
+ * hold the refresh back. Latency of every call is recorded per source, both in {@link RateSourceStats} and
+ * as the {@code nn.rates.fetch} timer tagged with source and outcome.
+ */
+@Slf4j
+@Component
+public class CompositeRateSource {
+
+    enum Strategy {
+        FAILOVER, RACE
+    }
+
+    private final List<RateSource> sources;
+
+    private final Strategy strategy;
+
+    private final Map<String, RateSourceStats> stats = new LinkedHashMap<>();
+
+    private final MeterRegistry registry;
+
+    private final ExecutorService racers;
+
+    public CompositeRateSource(List<RateSource> available,
+                               @Value("${nn.rates.sources}") List<String> order,
+                               @Value("${nn.rates.strategy}") String strategy,
+                               MeterRegistry registry,
+                               @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.registry = registry;
+        this.racers = RateFetchThreads.perTask("rate-source", virtualThreads);
+        Map<String, RateSource> byName = available.stream()
+                .collect(Collectors.toMap(RateSource::getName, Function.identity()));
+        this.sources = new ArrayList<>();
+        for (String name : order) {
+            RateSource source = byName.get(name.trim());
+            if (source == null) {
+                throw new IllegalStateException("Unknown or disabled rate source: " + name);
+            }
+            sources.add(source);
+            stats.put(source.getName(), new RateSourceStats(source.getName()));
+        }
+        if (sources.isEmpty()) {
+            throw new IllegalStateException("No rate sources configured");
+        }
+        this.strategy = Strategy.valueOf(strategy.trim().toUpperCase());
+    }
+
+    public RateSnapshot fetch() {
+        return strategy == Strategy.RACE ? race() : failover();
+    }
+
+    /**
+     * History is a bulk job rather than a race against the clock, so it is always asked of the sources in
+     * order, whatever the strategy.
+     */
+    public List<RateSnapshot> fetchRange(LocalDate from, LocalDate to) {
+        RuntimeException failure = null;
+        for (RateSource source : sources) {
+            try {
+                return source.fetchRange(from, to);
+            } catch (RuntimeException e) {
+                log.debug("Rate source {} failed to deliver history: {}", source.getName(), e.getMessage());
+                failure = e;
+            }
+        }
+        throw new RateUnavailableException("No rate source delivered history", failure);
+    }
+
+    public Collection<RateSourceStats> getStats() {
+        return stats.values();
+    }
+
+    private RateSnapshot failover() {
+        RuntimeException failure = null;
+        for (RateSource source : sources) {
+            try {
+                return timed(source);
+            } catch (RuntimeException e) {
+                log.debug("Rate source {} failed: {}", source.getName(), e.getMessage());
+                failure = e;
+            }
+        }
+        throw new RateUnavailableException("All rate sources failed", failure);
+    }
+
+    private RateSnapshot race() {
+        CompletableFuture<RateSnapshot> first = new CompletableFuture<>();
+        AtomicInteger remaining = new AtomicInteger(sources.size());
+        for (RateSource source : sources) {
+            CompletableFuture.supplyAsync(() -> timed(source), racers).whenComplete((snapshot, error) -> {
+                if (error == null) {
+                    first.complete(snapshot);
+                } else if (remaining.decrementAndGet() == 0) {
+                    first.completeExceptionally(error);
+                }
+            });
+        }
+        try {
+            return first.join();
+        } catch (CompletionException e) {
+            throw new RateUnavailableException("All rate sources failed", e.getCause());
+        }
+    }
+
+    private RateSnapshot timed(RateSource source) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            RateSnapshot snapshot = source.fetch();
+            success = true;
+            return snapshot;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            stats.get(source.getName()).record(elapsed, success);
+            Timer.builder("nn.rates.fetch")
+                    .tag("source", source.getName())
+                    .tag("outcome", success ? "success" : "failure")
+                    .register(registry)
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+            if (!success) {
+                registry.counter("nn.rates.fetch.failures", "source", source.getName()).increment();
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        racers.shutdownNow();
+    }
+}
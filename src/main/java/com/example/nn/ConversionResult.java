@@ -0,0 +1,36 @@
+package com.example.nn;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Price of an amount in another currency at a past date, see {@link RateHistory}.
+ */
+@Getter
+@AllArgsConstructor
+public class ConversionResult {
+
+    private final BigDecimal amount;
+
+    private final Currency from;
+
+    private final Currency to;
+
+    /**
+     * Date of the table the conversion was priced with, the requested date or the business day before it.
+     */
+    private final LocalDate effectiveDate;
+
+    private final BigDecimal rate;
+
+    private final BigDecimal result;
+
+    static ConversionResult of(RateSnapshot rates, long amountMinor, Currency from, Currency to) {
+        return new ConversionResult(FixedPoint.toDecimal(amountMinor), from, to, rates.getEffectiveDate(),
+                BigDecimal.valueOf(rates.crossRate(from, to), FixedPoint.CROSS_RATE_SCALE).stripTrailingZeros(),
+                FixedPoint.toDecimal(rates.convert(amountMinor, from, to)));
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.nn;
 
 import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Digits;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
@@ -22,5 +23,6 @@ public class CreateAccountRequest {
 
     @NotNull(message = "Balance is mandatory")
     @DecimalMin(value = "0.0", inclusive = false, message = "Balance must be more than zero")
+    @Digits(integer = 13, fraction = 2, message = "Balance must have at most 13 integer digits and 2 decimal places")
     BigDecimal balance;
 }
@@ -3,11 +3,32 @@ package com.example.nn;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import org.yaml.snakeyaml.util.EnumUtils;
 
+/**
+ * Currencies quoted in NBP table A that accounts can hold. Ordinals index balance arrays, stored balances and
+ * journal records, so new currencies are only ever appended.
+ */
 public enum Currency {
-    PLN, USD;
+    PLN, USD, EUR, GBP, CHF, CZK, DKK, NOK, SEK, CAD, AUD;
+
+    private static final Currency[] VALUES = values();
+
+    public static int count() {
+        return VALUES.length;
+    }
+
+    public static Currency ofOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
 
     @JsonCreator
     public static Currency forValue(String name) {
         return EnumUtils.findEnumInsensitiveCase(Currency.class, name);
     }
+
+    /**
+     * Currency bought when an exchange names no target, the original PLN/USD pair.
+     */
+    public Currency counterpart() {
+        return this == PLN ? USD : PLN;
+    }
 }
@@ -0,0 +1,26 @@
+package com.example.nn;
+
+/**
+ * Allocation-free balance arithmetic of an exchange on {@link FixedPoint} minor units.
+ */
+final class ExchangeCalculator {
+
+    private ExchangeCalculator() {
+    }
+
+    static boolean isEnoughMoney(Account account, long amountMinor, Currency from) {
+        return account.getMinor(from) >= amountMinor;
+    }
+
+    /**
+     * Moves {@code amountMinor} out of the {@code from} balance and its equivalent, rounded down,
+     * into the {@code to} one. Does not check funds.
+     *
+     * @throws RateUnavailableException when {@code rates} has no rate for the pair; the account is unchanged
+     */
+    static void calculate(Account account, long amountMinor, Currency from, Currency to, RateSnapshot rates) {
+        long bought = rates.convert(amountMinor, from, to);
+        account.setMinor(from, account.getMinor(from) - amountMinor);
+        account.setMinor(to, account.getMinor(to) + bought);
+    }
+}
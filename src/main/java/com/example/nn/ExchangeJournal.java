@@ -0,0 +1,455 @@
+package com.example.nn;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Append-only audit journal of applied exchanges in fixed-size memory-mapped segment files.
+ * <p>
+ * Every entry is a 72 byte record: a marker, the from- and to-currency ordinals, the timestamp, the account id,
+ * amount, cross rate, the resulting balances of both currencies as {@link FixedPoint} longs and the account
+ * version the exchange produced. The marker is written last and segments start zero-filled, so a reader stops
+ * at the first record without a marker. Appends only copy into the mapped segment; a thread of the journal
+ * forces written pages to disk every {@code nn.journal.sync-interval}, so many appends share one fsync. With
+ * {@code nn.journal.wait-for-sync} an append returns only once it is durable.
+ * <p>
+ * Exchanges are appended once committed, or under the ledger lock, so the journal never holds one that was
+ * rolled back. Two committed exchanges of an account may then be appended in either order; the account
+ * version orders them, {@link #history} and {@link #replay} go by it rather than by position.
+ * <p>
+ * Only the newest {@code nn.journal.retained-segments} segments are kept, older ones are deleted when a new
+ * segment is started. The retained segments stay mapped, and an index of the first and last retained segment
+ * holding entries of each account bounds the segments a history lookup reads; an account without retained
+ * entries is answered without reading any.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "nn.journal.enabled", havingValue = "true")
+public class ExchangeJournal {
+
+    static final int RECORD_SIZE = 72;
+
+    private static final int MARKER = 0x4E4E4A32;
+
+    private static final String PREFIX = "journal-";
+
+    private static final String SUFFIX = ".seg";
+
+    private static final String LOCK_FILE = "journal.lock";
+
+    private final Path directory;
+
+    private final int recordsPerSegment;
+
+    private final boolean waitForSync;
+
+    private final Duration syncInterval;
+
+    private final int historyLimit;
+
+    private final int retainedSegments;
+
+    // its own thread, so a sync waited for is never queued behind other scheduled work
+    private final ScheduledExecutorService syncer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // holds the lock of the directory while open, segments are only written by one journal at a time
+    private FileChannel lockChannel;
+
+    private final Condition synced = lock.newCondition();
+
+    // guarded by lock
+    private final NavigableMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+
+    // guarded by lock, spans reaching back before the oldest retained segment are clipped when read and
+    // dropped once their last segment is deleted
+    private final Map<UUID, Span> spans = new HashMap<>();
+
+    private MappedByteBuffer segment;
+
+    private long segmentNumber;
+
+    private int position;
+
+    private long appended;
+
+    private long durable;
+
+    public ExchangeJournal(@Value("${nn.journal.directory}") Path directory,
+                           @Value("${nn.journal.segment-records}") int recordsPerSegment,
+                           @Value("${nn.journal.sync-interval}") Duration syncInterval,
+                           @Value("${nn.journal.wait-for-sync}") boolean waitForSync,
+                           @Value("${nn.journal.history-limit}") int historyLimit,
+                           @Value("${nn.journal.retained-segments}") int retainedSegments) {
+        this.directory = directory;
+        this.recordsPerSegment = recordsPerSegment;
+        this.syncInterval = syncInterval;
+        this.waitForSync = waitForSync;
+        this.historyLimit = historyLimit;
+        this.retainedSegments = Math.max(1, retainedSegments);
+        this.syncer = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("journal-sync").daemon().factory());
+    }
+
+    @PostConstruct
+    void open() throws IOException {
+        Files.createDirectories(directory);
+        lockDirectory();
+        List<Long> existing = segmentFiles();
+        segmentNumber = existing.isEmpty() ? 0 : existing.get(existing.size() - 1);
+        for (long number : existing) {
+            if (number <= segmentNumber - retainedSegments) {
+                Files.delete(path(number));
+            } else if (number < segmentNumber) {
+                segments.put(number, map(number, FileChannel.MapMode.READ_ONLY));
+            }
+        }
+        segment = map(segmentNumber, FileChannel.MapMode.READ_WRITE);
+        segments.put(segmentNumber, segment);
+        position = 0;
+        while (position < recordsPerSegment && segment.getInt(position * RECORD_SIZE) == MARKER) {
+            position++;
+        }
+        segments.forEach((number, records) -> {
+            int end = number == segmentNumber ? position * RECORD_SIZE : records.capacity();
+            for (int offset = 0; offset < end && records.getInt(offset) == MARKER; offset += RECORD_SIZE) {
+                index(new UUID(records.getLong(offset + 16), records.getLong(offset + 24)), number);
+            }
+        });
+        long interval = syncInterval.toNanos();
+        syncer.scheduleWithFixedDelay(this::sync, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Called once the exchange is committed, or under the ledger lock.
+     *
+     * @param version     account version the exchange produced; exchanges applied together may share one
+     * @param amountMinor exchanged amount in {@link FixedPoint} minor units of {@code from}
+     * @param crossRate   {@link RateSnapshot#crossRate} the exchange was priced with
+     * @param fromMinor   resulting balance of {@code from}
+     * @param toMinor     resulting balance of {@code to}
+     */
+    public void append(UUID accountId, long version, Currency from, Currency to, long amountMinor, long crossRate,
+                       long fromMinor, long toMinor) {
+        long sequence;
+        lock.lock();
+        try {
+            if (position == recordsPerSegment) {
+                roll();
+            }
+            int offset = position * RECORD_SIZE;
+            segment.put(offset + 4, (byte) from.ordinal())
+                    .put(offset + 5, (byte) to.ordinal())
+                    .putLong(offset + 8, Instant.now().toEpochMilli())
+                    .putLong(offset + 16, accountId.getMostSignificantBits())
+                    .putLong(offset + 24, accountId.getLeastSignificantBits())
+                    .putLong(offset + 32, amountMinor)
+                    .putLong(offset + 40, crossRate)
+                    .putLong(offset + 48, fromMinor)
+                    .putLong(offset + 56, toMinor)
+                    .putLong(offset + 64, version)
+                    .putInt(offset, MARKER);
+            position++;
+            sequence = ++appended;
+            index(accountId, segmentNumber);
+
+            if (waitForSync) {
+                while (durable < sequence) {
+                    synced.awaitUninterruptibly();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Group commit: one force covers everything appended since the previous one.
+     */
+    public void sync() {
+        MappedByteBuffer toForce;
+        long upTo;
+        lock.lock();
+        try {
+            if (durable == appended) {
+                return;
+            }
+            toForce = segment;
+            upTo = appended;
+        } finally {
+            lock.unlock();
+        }
+
+        // force outside the lock so appends continue meanwhile; a roll forces the old segment itself
+        toForce.force();
+
+        lock.lock();
+        try {
+            durable = Math.max(durable, upTo);
+            synced.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Streams all entries of all segments in append order.
+     */
+    public void forEach(Consumer<JournalEntry> consumer) {
+        List<Map.Entry<Long, MappedByteBuffer>> retained;
+        long currentSegment;
+        int currentPosition;
+        lock.lock();
+        try {
+            retained = new ArrayList<>(segments.entrySet());
+            currentSegment = segmentNumber;
+            currentPosition = position;
+        } finally {
+            lock.unlock();
+        }
+
+        for (Map.Entry<Long, MappedByteBuffer> retainedSegment : retained) {
+            MappedByteBuffer records = retainedSegment.getValue();
+            // records of the current segment past the snapshot may still be in the middle of being written
+            int end = retainedSegment.getKey() == currentSegment ? currentPosition * RECORD_SIZE : records.capacity();
+            for (int offset = 0; offset < end && records.getInt(offset) == MARKER; offset += RECORD_SIZE) {
+                consumer.accept(read(records, offset));
+            }
+        }
+    }
+
+    /**
+     * The last {@code nn.journal.history-limit} retained entries of the account, oldest first by version and
+     * in append order within one. Only the segments between the first and last one holding entries of the
+     * account are read, from the newest one backwards, so an active account is answered from the tail of the
+     * journal.
+     */
+    public List<JournalEntry> history(UUID accountId) {
+        List<Map.Entry<Long, MappedByteBuffer>> candidates;
+        long currentSegment;
+        int currentPosition;
+        lock.lock();
+        try {
+            Span span = spans.get(accountId);
+            long oldest = segments.firstKey();
+            if (span == null || span.last() < oldest) {
+                return List.of();
+            }
+            candidates = new ArrayList<>(segments.subMap(Math.max(span.first(), oldest), true, span.last(), true)
+                    .descendingMap().entrySet());
+            currentSegment = segmentNumber;
+            currentPosition = position;
+        } finally {
+            lock.unlock();
+        }
+
+        long mostSignificant = accountId.getMostSignificantBits();
+        long leastSignificant = accountId.getLeastSignificantBits();
+        List<JournalEntry> history = new ArrayList<>();
+        for (int i = 0; i < candidates.size() && history.size() < historyLimit; i++) {
+            MappedByteBuffer records = candidates.get(i).getValue();
+            int end = candidates.get(i).getKey() == currentSegment ? currentPosition * RECORD_SIZE : records.capacity();
+            for (int offset = end - RECORD_SIZE; offset >= 0 && history.size() < historyLimit; offset -= RECORD_SIZE) {
+                if (records.getInt(offset) == MARKER && records.getLong(offset + 16) == mostSignificant
+                        && records.getLong(offset + 24) == leastSignificant) {
+                    history.add(read(records, offset));
+                }
+            }
+        }
+        Collections.reverse(history);
+        history.sort(Comparator.comparingLong(JournalEntry::getVersion));
+        return history;
+    }
+
+    /**
+     * Rebuilds the latest balances of every account with retained entries, e.g. to verify or restore the account store.
+     * Only currencies that took part in a journaled exchange of the account are present. An entry replaces
+     * the balances of entries with a lower account version, and of earlier entries with the same one.
+     */
+    public Map<UUID, Map<Currency, BigDecimal>> replay() {
+        Map<UUID, Map<Currency, BigDecimal>> latest = new HashMap<>();
+        Map<UUID, Map<Currency, Long>> versions = new HashMap<>();
+        forEach(entry -> {
+            Map<Currency, BigDecimal> balances = latest.computeIfAbsent(entry.getAccountId(),
+                    ignored -> new EnumMap<>(Currency.class));
+            Map<Currency, Long> balanceVersions = versions.computeIfAbsent(entry.getAccountId(),
+                    ignored -> new EnumMap<>(Currency.class));
+            if (entry.getVersion() >= balanceVersions.getOrDefault(entry.getFrom(), Long.MIN_VALUE)) {
+                balances.put(entry.getFrom(), entry.getFromBalance());
+                balanceVersions.put(entry.getFrom(), entry.getVersion());
+            }
+            if (entry.getVersion() >= balanceVersions.getOrDefault(entry.getTo(), Long.MIN_VALUE)) {
+                balances.put(entry.getTo(), entry.getToBalance());
+                balanceVersions.put(entry.getTo(), entry.getVersion());
+            }
+        });
+        return latest;
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        syncer.shutdownNow();
+        lock.lock();
+        try {
+            segment.force();
+            durable = appended;
+            synced.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        // closing the channel releases the lock
+        lockChannel.close();
+    }
+
+    /**
+     * Every journal finds its write position by scanning for markers, so two of them in one directory would
+     * overwrite each other's records. Fails instead of waiting for the other one, be it in another process or
+     * in another application context of this one.
+     */
+    private void lockDirectory() throws IOException {
+        lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        FileLock directoryLock;
+        try {
+            directoryLock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            directoryLock = null;
+        }
+        if (directoryLock == null) {
+            lockChannel.close();
+            throw new IllegalStateException("Exchange journal directory " + directory.toAbsolutePath()
+                    + " is in use by another journal");
+        }
+    }
+
+    private void roll() {
+        segment.force();
+        durable = appended;
+        synced.signalAll();
+        try {
+            segment = map(++segmentNumber, FileChannel.MapMode.READ_WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        segments.put(segmentNumber, segment);
+        position = 0;
+
+        // readers that took the dropped mapping before keep reading it, the file is gone once they are done
+        boolean droppedAny = false;
+        while (segments.firstKey() <= segmentNumber - retainedSegments) {
+            long dropped = segments.pollFirstEntry().getKey();
+            droppedAny = true;
+            try {
+                Files.deleteIfExists(path(dropped));
+            } catch (IOException e) {
+                log.warn("Could not delete journal segment {}: {}", dropped, e.getMessage());
+            }
+        }
+        if (droppedAny) {
+            long oldest = segments.firstKey();
+            spans.values().removeIf(span -> span.last() < oldest);
+        }
+    }
+
+    /**
+     * Number of accounts with entries in the retained segments.
+     */
+    int indexedAccounts() {
+        lock.lock();
+        try {
+            return spans.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // guarded by lock
+    private void index(UUID accountId, long number) {
+        Span span = spans.get(accountId);
+        if (span == null) {
+            spans.put(accountId, new Span(number, number));
+        } else if (span.last() != number) {
+            spans.put(accountId, new Span(span.first(), number));
+        }
+    }
+
+    /**
+     * Segments of the journal holding entries of one account.
+     */
+    private record Span(long first, long last) {
+    }
+
+    private static JournalEntry read(ByteBuffer records, int offset) {
+        return new JournalEntry(
+                Instant.ofEpochMilli(records.getLong(offset + 8)),
+                new UUID(records.getLong(offset + 16), records.getLong(offset + 24)),
+                Currency.ofOrdinal(records.get(offset + 4)),
+                Currency.ofOrdinal(records.get(offset + 5)),
+                FixedPoint.toDecimal(records.getLong(offset + 32)),
+                BigDecimal.valueOf(records.getLong(offset + 40), FixedPoint.CROSS_RATE_SCALE).stripTrailingZeros(),
+                FixedPoint.toDecimal(records.getLong(offset + 48)),
+                FixedPoint.toDecimal(records.getLong(offset + 56)),
+                records.getLong(offset + 64));
+    }
+
+    private MappedByteBuffer map(long number, FileChannel.MapMode mode) throws IOException {
+        Path file = path(number);
+        StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[]{StandardOpenOption.READ}
+                : new StandardOpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE};
+        try (FileChannel channel = FileChannel.open(file, options)) {
+            long size = mode == FileChannel.MapMode.READ_ONLY ? channel.size() : (long) recordsPerSegment * RECORD_SIZE;
+            return channel.map(mode, 0, size);
+        }
+    }
+
+    private Path path(long number) {
+        return directory.resolve(String.format("%s%020d%s", PREFIX, number, SUFFIX));
+    }
+
+    private List<Long> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(PREFIX) && name.endsWith(SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.nn;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Meters of the exchange pipeline. Timers are registered once up front, so recording a stage is one
+ * {@code nanoTime} call and one histogram update on the hot path. Stages of a single exchange are tagged
+ * {@code kind=single}, stages of a whole batch chunk {@code kind=batch}, so chunk timings do not skew the
+ * per-exchange ones.
+ */
+@Component
+public class ExchangeMetrics {
+
+    public enum Stage {
+        RATE, LOAD, CALCULATE, SAVE, LEDGER
+    }
+
+    private final Timer exchange;
+
+    private final Map<Stage, Timer> stages = new EnumMap<>(Stage.class);
+
+    private final Map<Stage, Timer> batchStages = new EnumMap<>(Stage.class);
+
+    private final Counter insufficientFunds;
+
+    private final Counter notFound;
+
+    private final AtomicBoolean exchanged = new AtomicBoolean();
+
+    private final List<Runnable> firstExchangeListeners = new CopyOnWriteArrayList<>();
+
+    public ExchangeMetrics(MeterRegistry registry) {
+        this.exchange = Timer.builder("nn.exchange")
+                .description("Whole exchange, from request to committed result")
+                .register(registry);
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, stageTimer(registry, stage, "single"));
+            batchStages.put(stage, stageTimer(registry, stage, "batch"));
+        }
+        this.insufficientFunds = Counter.builder("nn.exchange.rejections")
+                .tag("reason", "insufficient_funds")
+                .register(registry);
+        this.notFound = Counter.builder("nn.exchange.rejections")
+                .tag("reason", "not_found")
+                .register(registry);
+    }
+
+    private static Timer stageTimer(MeterRegistry registry, Stage stage, String kind) {
+        return Timer.builder("nn.exchange.stage")
+                .description("One stage of an exchange or of a batch chunk")
+                .tag("stage", stage.name().toLowerCase())
+                .tag("kind", kind)
+                .register(registry);
+    }
+
+    /**
+     * Records the stage of a single exchange as ending now.
+     *
+     * @return now, the start of the next stage
+     */
+    public long stage(Stage stage, long startNanos) {
+        return record(stages.get(stage), startNanos);
+    }
+
+    /**
+     * Records the stage of a batch chunk as ending now.
+     *
+     * @return now, the start of the next stage
+     */
+    public long batchStage(Stage stage, long startNanos) {
+        return record(batchStages.get(stage), startNanos);
+    }
+
+    private static long record(Timer timer, long startNanos) {
+        long now = System.nanoTime();
+        timer.record(now - startNanos, TimeUnit.NANOSECONDS);
+        return now;
+    }
+
+    public void exchange(long startNanos) {
+        exchange.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        if (!exchanged.get() && exchanged.compareAndSet(false, true)) {
+            firstExchangeListeners.forEach(Runnable::run);
+        }
+    }
+
+    /**
+     * Runs {@code listener} once, when the first exchange of this instance has completed.
+     */
+    public void onFirstExchange(Runnable listener) {
+        firstExchangeListeners.add(listener);
+    }
+
+    public void insufficientFunds() {
+        insufficientFunds.increment();
+    }
+
+    public void notFound() {
+        notFound.increment();
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.nn;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An exchange submitted to the {@link ExchangeOrderQueue}. It stays {@code QUEUED} until the writer of its
+ * partition applied it, then it is {@code DONE} with the {@link ExchangeResult} of the exchange, which may
+ * itself be e.g. {@code INSUFFICIENT_FUNDS}, or {@code FAILED} when it could not be applied, e.g. without a
+ * rate table.
+ */
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ExchangeOrder {
+
+    public enum Status {
+        QUEUED, DONE, FAILED
+    }
+
+    private final UUID orderId;
+
+    @JsonIgnore
+    private final ExchangeRequest request;
+
+    private volatile Status status = Status.QUEUED;
+
+    private volatile ExchangeResult result;
+
+    private volatile String message;
+
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    private final CompletableFuture<ExchangeOrder> completion = new CompletableFuture<>();
+
+    ExchangeOrder(UUID orderId, ExchangeRequest request) {
+        this.orderId = orderId;
+        this.request = request;
+    }
+
+    /**
+     * Completes with this order once it is no longer {@code QUEUED}.
+     */
+    CompletableFuture<ExchangeOrder> completion() {
+        return completion;
+    }
+
+    void complete(ExchangeResult result) {
+        this.result = result;
+        this.status = Status.DONE;
+        completion.complete(this);
+    }
+
+    void fail(String message) {
+        this.message = message;
+        this.status = Status.FAILED;
+        completion.complete(this);
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.nn;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exchanges submitted with {@code Prefer: respond-async}, applied off the request thread.
+ * <p>
+ * Orders go to one of {@code nn.exchange.async.partitions} bounded queues chosen by the account id, each
+ * drained by its own writer thread. A writer takes what has queued up, at most
+ * {@code nn.exchange.async.batch-size} orders, and applies them in arrival order as one
+ * {@link AccountService#exchangeBatch batch}: one read and one write per batch instead of per exchange. All
+ * orders of an account go through the same writer, so they are applied one after another without waiting for
+ * each other's locks, while accounts of different partitions are written in parallel. When a batch fails, its
+ * orders not committed yet are applied one by one, so a bad order fails only itself. A full queue rejects
+ * the order instead of blocking the caller. Orders can be looked up by id for {@code nn.exchange.async.retention}
+ * after they were submitted.
+ */
+@Slf4j
+@Component
+@Profile("!reactive")
+public class ExchangeOrderQueue {
+
+    private static final Duration SHUTDOWN_WAIT = Duration.ofSeconds(5);
+
+    private final AccountService accountService;
+
+    private final int batchSize;
+
+    private final List<ArrayBlockingQueue<ExchangeOrder>> partitions;
+
+    private final List<Thread> writers;
+
+    private final Cache<UUID, ExchangeOrder> orders;
+
+    private final Counter rejected;
+
+    private final DistributionSummary batches;
+
+    private volatile boolean stopping;
+
+    public ExchangeOrderQueue(AccountService accountService,
+                              @Value("${nn.exchange.async.partitions}") int partitions,
+                              @Value("${nn.exchange.async.queue-capacity}") int queueCapacity,
+                              @Value("${nn.exchange.async.batch-size}") int batchSize,
+                              @Value("${nn.exchange.async.retained-orders}") long retainedOrders,
+                              @Value("${nn.exchange.async.retention}") Duration retention,
+                              MeterRegistry registry) {
+        this.accountService = accountService;
+        this.batchSize = batchSize;
+        int count = partitions > 0 ? partitions : Runtime.getRuntime().availableProcessors();
+        List<ArrayBlockingQueue<ExchangeOrder>> queues = new ArrayList<>(count);
+        List<Thread> threads = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ArrayBlockingQueue<ExchangeOrder> queue = new ArrayBlockingQueue<>(queueCapacity);
+            queues.add(queue);
+            threads.add(Thread.ofPlatform()
+                    .name("exchange-writer-" + i)
+                    .daemon()
+                    .unstarted(() -> write(queue)));
+        }
+        this.partitions = List.copyOf(queues);
+        this.writers = List.copyOf(threads);
+        this.orders = Caffeine.newBuilder()
+                .maximumSize(retainedOrders)
+                .expireAfterWrite(retention)
+                .build();
+        this.rejected = Counter.builder("nn.exchange.orders.rejected")
+                .description("Asynchronous exchanges rejected because their partition queue was full")
+                .register(registry);
+        this.batches = DistributionSummary.builder("nn.exchange.orders.batch")
+                .description("Asynchronous exchanges applied per partition write")
+                .register(registry);
+        Gauge.builder("nn.exchange.orders.queued", this.partitions,
+                        queued -> queued.stream().mapToInt(ArrayBlockingQueue::size).sum())
+                .description("Asynchronous exchanges waiting for their partition writer")
+                .register(registry);
+        writers.forEach(Thread::start);
+    }
+
+    /**
+     * Queues {@code request} behind the earlier orders of its account.
+     *
+     * @return the queued order, empty when the partition of the account is full or the queue is shutting down
+     */
+    public Optional<ExchangeOrder> submit(ExchangeRequest request) {
+        ExchangeOrder order = new ExchangeOrder(UUID.randomUUID(), request);
+        if (stopping || !partitions.get(partitionOf(request.getUuid())).offer(order)) {
+            rejected.increment();
+            return Optional.empty();
+        }
+        orders.put(order.getOrderId(), order);
+        return Optional.of(order);
+    }
+
+    public Optional<ExchangeOrder> find(UUID orderId) {
+        return Optional.ofNullable(orders.getIfPresent(orderId));
+    }
+
+    int partitionCount() {
+        return partitions.size();
+    }
+
+    /**
+     * The same account always maps to the same partition, however its id is spelled; a malformed id is
+     * rejected by the writer, any partition will do.
+     */
+    int partitionOf(String uuid) {
+        int hash = ExchangeValidation.parseUuid(uuid).map(UUID::hashCode).orElse(uuid.hashCode());
+        return Math.floorMod(hash ^ (hash >>> 16), partitions.size());
+    }
+
+    private void write(ArrayBlockingQueue<ExchangeOrder> queue) {
+        List<ExchangeOrder> batch = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            try {
+                apply(batch);
+            } catch (Throwable e) {
+                // keep writing, an exiting writer would leave its partition queued forever
+                log.error("Failed to apply {} asynchronous exchanges", batch.size(), e);
+                queued(batch).forEach(order -> order.fail("Exchange failed"));
+            }
+            batch.clear();
+        }
+    }
+
+    private void apply(List<ExchangeOrder> batch) {
+        batches.record(batch.size());
+        try {
+            exchange(batch);
+        } catch (RuntimeException e) {
+            // orders of chunks committed before the failure are done and must not be applied again
+            List<ExchangeOrder> left = queued(batch);
+            if (left.size() == 1 || e instanceof RateUnavailableException) {
+                log.warn("Failed to apply {} asynchronous exchanges", left.size(), e);
+                String message = failure(e);
+                left.forEach(order -> order.fail(message));
+                return;
+            }
+            log.warn("Failed to apply {} asynchronous exchanges together, applying them one by one: {}",
+                    left.size(), e.getMessage());
+            for (ExchangeOrder order : left) {
+                try {
+                    exchange(List.of(order));
+                } catch (RuntimeException orderFailure) {
+                    log.warn("Failed to apply asynchronous exchange {}", order.getOrderId(), orderFailure);
+                    order.fail(failure(orderFailure));
+                }
+            }
+        }
+    }
+
+    /**
+     * Completes each order as soon as the chunk holding it committed.
+     */
+    private void exchange(List<ExchangeOrder> orders) {
+        Iterator<ExchangeOrder> pending = orders.iterator();
+        accountService.exchangeBatch(orders.stream().map(ExchangeOrder::getRequest).iterator(),
+                result -> pending.next().complete(result));
+    }
+
+    private static List<ExchangeOrder> queued(List<ExchangeOrder> orders) {
+        return orders.stream().filter(order -> order.getStatus() == ExchangeOrder.Status.QUEUED).toList();
+    }
+
+    private static String failure(RuntimeException e) {
+        if (e instanceof RateUnavailableException) {
+            return "Exchange rate unavailable";
+        }
+        if (e instanceof OptimisticLockingFailureException) {
+            return "Account is being modified concurrently, retry later";
+        }
+        return "Exchange failed";
+    }
+
+    /**
+     * Stops taking orders and gives the writers {@link #SHUTDOWN_WAIT} to apply the queued ones; orders still
+     * queued after that are failed.
+     */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        stopping = true;
+        long deadline = System.nanoTime() + SHUTDOWN_WAIT.toNanos();
+        while (partitions.stream().anyMatch(queue -> !queue.isEmpty()) && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        writers.forEach(Thread::interrupt);
+        for (Thread writer : writers) {
+            writer.join(SHUTDOWN_WAIT.toMillis());
+        }
+        List<ExchangeOrder> left = new ArrayList<>();
+        partitions.forEach(queue -> queue.drainTo(left));
+        if (!left.isEmpty()) {
+            log.warn("Failed {} asynchronous exchanges still queued on shutdown", left.size());
+            left.forEach(order -> order.fail("Shutting down"));
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.nn;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Account state after an exchange attempt on an existing account.
+ */
+@Getter
+@AllArgsConstructor
+public class ExchangeOutcome {
+
+    private final Account account;
+
+    /**
+     * False when the account did not hold enough money and nothing changed.
+     */
+    private final boolean applied;
+}
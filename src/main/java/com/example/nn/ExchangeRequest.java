@@ -1,6 +1,8 @@
 package com.example.nn;
 
+import jakarta.validation.constraints.AssertTrue;
 import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Digits;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
@@ -19,8 +21,27 @@ public class ExchangeRequest {
 
     @NotNull(message = "Amount is mandatory")
     @DecimalMin(value = "0.0", inclusive = false, message = "Amount must be more than zero")
+    @Digits(integer = 13, fraction = 2, message = "Amount must have at most 13 integer digits and 2 decimal places")
     private BigDecimal amount;
 
     @NotNull(message = "From is mandatory")
     private Currency from;
+
+    /**
+     * Currency bought; optional, defaults to {@link Currency#counterpart()} of {@link #from}.
+     */
+    private Currency to;
+
+    public ExchangeRequest(String uuid, BigDecimal amount, Currency from) {
+        this(uuid, amount, from, null);
+    }
+
+    Currency target() {
+        return to != null ? to : from.counterpart();
+    }
+
+    @AssertTrue(message = "From and to must differ")
+    boolean isDistinctCurrencies() {
+        return from == null || to != from;
+    }
 }
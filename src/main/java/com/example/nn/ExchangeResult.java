@@ -0,0 +1,93 @@
+package com.example.nn;
+
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * Outcome of one item of a batch exchange. Balances are copied at the time the item was applied,
+ * so several items for the same account each report their own intermediate state.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ExchangeResult {
+
+    public enum Status {
+        OK, INSUFFICIENT_FUNDS, NOT_FOUND, INVALID
+    }
+
+    private final String uuid;
+
+    private final Status status;
+
+    private final String message;
+
+    /**
+     * {@link FixedPoint} minor units by {@link Currency} ordinal, {@code null} when the item failed.
+     */
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    private final long[] balances;
+
+    /**
+     * Stored version of the account once the item committed, set by the writer after the flush.
+     */
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    private final long version;
+
+    @JsonIgnore
+    public BigDecimal getBalance(Currency currency) {
+        return balances == null ? null : FixedPoint.toDecimal(balances[currency.ordinal()]);
+    }
+
+    @JsonIgnore
+    public BigDecimal getPlnBalance() {
+        return getBalance(Currency.PLN);
+    }
+
+    @JsonIgnore
+    public BigDecimal getUsdBalance() {
+        return getBalance(Currency.USD);
+    }
+
+    /**
+     * The same {@code <code>Balance} properties as the JSON view of {@link Account}.
+     */
+    @JsonAnyGetter
+    public Map<String, BigDecimal> getBalanceView() {
+        return balances == null ? Map.of() : Account.balanceView(balances);
+    }
+
+    long[] balances() {
+        return balances;
+    }
+
+    long version() {
+        return version;
+    }
+
+    long getMinor(Currency currency) {
+        return balances[currency.ordinal()];
+    }
+
+    ExchangeResult withVersion(Long version) {
+        return new ExchangeResult(uuid, status, message, balances, version == null ? 0 : version);
+    }
+
+    static ExchangeResult of(Status status, Account account) {
+        return new ExchangeResult(account.getId().toString(), status, null, account.getBalances().clone(),
+                account.getVersion() == null ? 0 : account.getVersion());
+    }
+
+    static ExchangeResult failed(String uuid, Status status, String message) {
+        return new ExchangeResult(uuid, status, message, null, 0);
+    }
+}
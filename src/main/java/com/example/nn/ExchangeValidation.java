@@ -0,0 +1,59 @@
+package com.example.nn;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Per-item checks of a batch exchange, shared by the servlet and the reactive stack. A batch item is not bound
+ * through {@code @Valid}, so a bad item is reported in its own result instead of failing the whole batch. A
+ * {@code null} item stands for a JSON {@code null} or a streamed line that is not an exchange request.
+ */
+final class ExchangeValidation {
+
+    private ExchangeValidation() {
+    }
+
+    static Optional<ExchangeResult> validate(Validator validator, ExchangeRequest exchangeRequest, RateSnapshot rates) {
+        if (exchangeRequest == null) {
+            return Optional.of(ExchangeResult.failed(null, ExchangeResult.Status.INVALID,
+                    "Exchange request is missing or malformed"));
+        }
+        Set<ConstraintViolation<ExchangeRequest>> violations = validator.validate(exchangeRequest);
+        if (!violations.isEmpty()) {
+            return Optional.of(ExchangeResult.failed(exchangeRequest.getUuid(), ExchangeResult.Status.INVALID,
+                    violations.stream()
+                            .map(ConstraintViolation::getMessage)
+                            .sorted()
+                            .collect(Collectors.joining(", "))));
+        }
+        if (parseUuid(exchangeRequest.getUuid()).isEmpty()) {
+            return Optional.of(ExchangeResult.failed(exchangeRequest.getUuid(), ExchangeResult.Status.INVALID,
+                    "uuid is malformed"));
+        }
+        if (!rates.isQuoted(exchangeRequest.getFrom(), exchangeRequest.target())) {
+            return Optional.of(ExchangeResult.failed(exchangeRequest.getUuid(), ExchangeResult.Status.INVALID,
+                    "No " + exchangeRequest.getFrom() + "/" + exchangeRequest.target() + " exchange rate"));
+        }
+        return Optional.empty();
+    }
+
+    static ExchangeResult notFound(ExchangeRequest exchangeRequest) {
+        return ExchangeResult.failed(exchangeRequest.getUuid(), ExchangeResult.Status.NOT_FOUND, "Account not found");
+    }
+
+    static Optional<UUID> parseUuid(String uuid) {
+        if (uuid == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(UUID.fromString(uuid));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+}
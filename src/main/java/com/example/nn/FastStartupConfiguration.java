@@ -0,0 +1,40 @@
+package com.example.nn;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.annotation.Schedules;
+import org.springframework.util.ClassUtils;
+
+@Configuration
+public class FastStartupConfiguration {
+
+    /**
+     * With {@code spring.main.lazy-initialization}, as in the fast-startup profile, beans are only created when
+     * first used. The exchange path is kept eager: its controllers, services and their repositories, journal
+     * and rate provider are created on start, so the rate fetch is scheduled right away and the first
+     * {@code /account} request does not pay for building them.
+     */
+    @Bean
+    static LazyInitializationExcludeFilter eagerExchangePath() {
+        return LazyInitializationExcludeFilter.forBeanTypes(AccountController.class, ReactiveAccountController.class,
+                AccountService.class, ReactiveAccountService.class, RateProvider.class, StartupReport.class);
+    }
+
+    /**
+     * {@code @Scheduled} methods are only registered when their bean is created, so a lazy bean with one, such
+     * as {@link PortfolioValuation} or {@link AccountLedger}, would never run on its schedule.
+     */
+    @Bean
+    static LazyInitializationExcludeFilter eagerScheduledBeans() {
+        return (beanName, beanDefinition, beanType) -> beanType != null
+                && !MethodIntrospector.selectMethods(ClassUtils.getUserClass(beanType),
+                        (MethodIntrospector.MetadataLookup<Boolean>) method ->
+                                AnnotatedElementUtils.hasAnnotation(method, Scheduled.class)
+                                        || AnnotatedElementUtils.hasAnnotation(method, Schedules.class) ? true : null)
+                .isEmpty();
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.nn;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Reads rate tables in the NBP JSON format from a local resource, e.g. {@code classpath:rates/table-a.json}.
+ * The latest table is the current rate and all of them are history. The resource is re-read on every fetch,
+ * so the file can be replaced while the service runs.
+ */
+@Component
+@ConditionalOnProperty("nn.rates.file.location")
+public class FileRateSource implements RateSource {
+
+    private final ObjectMapper objectMapper;
+
+    private final Resource location;
+
+    public FileRateSource(ObjectMapper objectMapper, @Value("${nn.rates.file.location}") Resource location) {
+        this.objectMapper = objectMapper;
+        this.location = location;
+    }
+
+    @Override
+    public String getName() {
+        return "file";
+    }
+
+    @Override
+    public RateSnapshot fetch() {
+        return RateSnapshot.of(read(), getName(), Instant.now());
+    }
+
+    @Override
+    public List<RateSnapshot> fetchRange(LocalDate from, LocalDate to) {
+        Instant fetchedAt = Instant.now();
+        return Arrays.stream(read())
+                .filter(table -> table.getEffectiveDate() != null
+                        && !table.getEffectiveDate().isBefore(from) && !table.getEffectiveDate().isAfter(to))
+                .sorted(Comparator.comparing(RatesTable::getEffectiveDate))
+                .map(table -> RateSnapshot.of(table, getName(), fetchedAt))
+                .toList();
+    }
+
+    private RatesTable[] read() {
+        try (InputStream inputStream = location.getInputStream()) {
+            return objectMapper.readValue(inputStream, RatesTable[].class);
+        } catch (IOException e) {
+            throw new RateUnavailableException("Cannot read rates from " + location, e);
+        }
+    }
+}
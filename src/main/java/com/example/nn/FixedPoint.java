@@ -0,0 +1,74 @@
+package com.example.nn;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * Money as {@code long} minor units (grosze/cents, scale 2) and mid rates as {@code long} scaled by 10^6.
+ * <p>
+ * Rounding rules: the API takes amounts of whole minor units only, at most two decimals and 13 integer digits
+ * as checked by {@link #isMoney}, and rejects others with 400 rather than truncating them; every conversion
+ * rounds down to a whole minor unit, in favour of the bank. {@link BigDecimal} is only produced for the JSON
+ * boundary.
+ */
+public final class FixedPoint {
+
+    public static final int MONEY_SCALE = 2;
+
+    public static final int RATE_SCALE = 6;
+
+    /**
+     * Scale of the cross rates reported for a currency pair, fine enough that any pair of four-decimal NBP mid
+     * rates is shown without visible rounding.
+     */
+    public static final int CROSS_RATE_SCALE = 10;
+
+    static final long CROSS_RATE_ONE = 10_000_000_000L;
+
+    private FixedPoint() {
+    }
+
+    /**
+     * Whether {@code amount} passes the {@code @Digits(integer = 13, fraction = 2)} of the request bodies and
+     * imported records, so it is a whole number of minor units that fits in a {@code long}. Query parameters
+     * such as the {@code /rates/convert} amount are checked with it directly.
+     */
+    public static boolean isMoney(BigDecimal amount) {
+        BigDecimal stripped = amount.stripTrailingZeros();
+        return stripped.precision() - stripped.scale() <= 13 && stripped.scale() <= MONEY_SCALE;
+    }
+
+    /**
+     * Minor units of an amount that passed {@link #isMoney}; any further decimals would be truncated.
+     */
+    public static long toMinor(BigDecimal amount) {
+        return amount.setScale(MONEY_SCALE, RoundingMode.DOWN).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Smallest-scale decimal of a minor amount, so whole amounts render as {@code 2000} and not {@code 2000.00}.
+     */
+    public static BigDecimal toDecimal(long minor) {
+        if (minor % 100 == 0) {
+            return BigDecimal.valueOf(minor / 100);
+        }
+        return minor % 10 == 0 ? BigDecimal.valueOf(minor / 10, 1) : BigDecimal.valueOf(minor, MONEY_SCALE);
+    }
+
+    public static long toScaledRate(BigDecimal rate) {
+        return rate.setScale(RATE_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * {@code a * b / c} for non-negative operands, exact even when {@code a * b} does not fit in a long.
+     */
+    static long multiplyDivide(long a, long b, long c) {
+        long high = Math.multiplyHigh(a, b);
+        long low = a * b;
+        if (high == 0 && low >= 0) {
+            return low / c;
+        }
+        return BigInteger.valueOf(a).multiply(BigInteger.valueOf(b)).divide(BigInteger.valueOf(c)).longValueExact();
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.nn;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Results of {@code PUT /account/exchange} by the client's {@value #HEADER} header, so a retried request
+ * returns the account of the first one instead of moving the money again.
+ * <p>
+ * The first request with a key runs the exchange; duplicates arriving while it runs wait for the same result,
+ * later ones get it from memory without reaching the repository or the rate provider. Only completed exchanges
+ * are kept: a failed one is forgotten, so its retry runs again. Exchanges in flight are held apart from the
+ * completed ones and never evicted. Completed ones only leave by age, {@code nn.idempotency.ttl} after the
+ * exchange completed, as any other eviction would let a retry move the money again; once both together reach
+ * {@code nn.idempotency.maximum-size}, a new key is refused with {@link IdempotencyStoreFullException}
+ * instead. Hit and miss counts of the completed ones are published as the {@code cache.*} meters of
+ * {@code idempotency}.
+ */
+@Component
+public class IdempotencyStore {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private final ConcurrentHashMap<String, Entry> inFlight = new ConcurrentHashMap<>();
+
+    private final Cache<String, Entry> completed;
+
+    private final long maximumSize;
+
+    public IdempotencyStore(@Value("${nn.idempotency.maximum-size}") long maximumSize,
+                            @Value("${nn.idempotency.ttl}") Duration ttl,
+                            MeterRegistry registry) {
+        this.maximumSize = maximumSize;
+        this.completed = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, completed, "idempotency");
+    }
+
+    /**
+     * Runs {@code exchange} once per {@code key}; every request with the same key completes with its account.
+     * A {@code null} account, an unknown one, is not kept either.
+     *
+     * @throws IdempotencyKeyReusedException when {@code key} was already used for a different request
+     * @throws IdempotencyStoreFullException when {@code key} is new and the store holds its maximum size
+     */
+    public CompletableFuture<Account> execute(String key, ExchangeRequest request,
+                                              Supplier<CompletableFuture<Account>> exchange) {
+        Entry entry = new Entry(Fingerprint.of(request), new CompletableFuture<>());
+        Entry[] found = new Entry[1];
+        // a key moves from inFlight to completed under the same compute, so a lookup sees it in one of them
+        inFlight.compute(key, (k, running) -> {
+            found[0] = running != null ? running : completed.getIfPresent(k);
+            if (found[0] != null) {
+                return running;
+            }
+            if (isFull()) {
+                throw new IdempotencyStoreFullException("Idempotency store holds " + maximumSize + " keys");
+            }
+            found[0] = entry;
+            return entry;
+        });
+        Entry cached = found[0];
+        if (cached != entry) {
+            if (!cached.fingerprint().equals(entry.fingerprint())) {
+                throw new IdempotencyKeyReusedException("Idempotency key " + key + " was used for a different request");
+            }
+            return cached.result().copy();
+        }
+        try {
+            exchange.get().whenComplete((account, e) -> complete(key, entry, account, e));
+        } catch (RuntimeException e) {
+            complete(key, entry, null, e);
+        }
+        return entry.result().copy();
+    }
+
+    private boolean isFull() {
+        if (inFlight.size() + completed.estimatedSize() < maximumSize) {
+            return false;
+        }
+        // the estimate still counts expired entries until the cache cleans them up
+        completed.cleanUp();
+        return inFlight.size() + completed.estimatedSize() >= maximumSize;
+    }
+
+    private void complete(String key, Entry entry, Account account, Throwable e) {
+        inFlight.computeIfPresent(key, (k, running) -> {
+            if (running == entry && e == null && account != null) {
+                // expires a full ttl after the result is known
+                completed.put(k, entry);
+            }
+            return running == entry ? null : running;
+        });
+        if (e != null) {
+            entry.result().completeExceptionally(e);
+        } else {
+            // a copy, the account itself may be cached and change with later exchanges
+            entry.result().complete(account == null ? null : account.copy());
+        }
+    }
+    private record Entry(Fingerprint fingerprint, CompletableFuture<Account> result) {
+    }
+
+    private record Fingerprint(String uuid, BigDecimal amount, Currency from, Currency to) {
+
+        static Fingerprint of(ExchangeRequest request) {
+            return new Fingerprint(request.getUuid(), request.getAmount().stripTrailingZeros(), request.getFrom(),
+                    request.target());
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.nn;
+
+public class IdempotencyStoreFullException extends RuntimeException {
+
+    public IdempotencyStoreFullException(String message) {
+        super(message);
+    }
+}
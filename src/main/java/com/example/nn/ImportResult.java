@@ -0,0 +1,29 @@
+package com.example.nn;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of {@code POST /account/import}. Only the first rejected rows are listed, so the response stays small
+ * however bad the upload is.
+ */
+@Getter
+@AllArgsConstructor
+public class ImportResult {
+
+    private final long imported;
+
+    private final long rejected;
+
+    private final List<RejectedRow> rejectedRows;
+
+    /**
+     * @param row    1-based number of the record in the upload, the CSV header not counted
+     * @param errors messages by field, the same as the validation errors of {@code POST /account}
+     */
+    public record RejectedRow(long row, Map<String, String> errors) {
+    }
+}
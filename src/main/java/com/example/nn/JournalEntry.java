@@ -0,0 +1,43 @@
+package com.example.nn;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * One applied exchange as read back from the {@link ExchangeJournal}.
+ */
+@Getter
+@AllArgsConstructor
+public class JournalEntry {
+
+    private final Instant timestamp;
+
+    private final UUID accountId;
+
+    private final Currency from;
+
+    private final Currency to;
+
+    private final BigDecimal amount;
+
+    /**
+     * Price of one {@code from} in {@code to}.
+     */
+    private final BigDecimal rate;
+
+    /**
+     * Balances of the two exchanged currencies right after the exchange.
+     */
+    private final BigDecimal fromBalance;
+
+    private final BigDecimal toBalance;
+
+    /**
+     * Version of the account the exchange produced, orders entries of the account.
+     */
+    private final long version;
+}
@@ -0,0 +1,151 @@
+package com.example.nn;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Append-only log of absolute ledger balances, one fixed-size record per applied exchange holding the new
+ * balances of its two currencies.
+ * <p>
+ * The log is split into numbered segments. A flush rotates to a new segment first and deletes the older
+ * segments once their balances are persisted, so on restart only balances newer than the last flush are
+ * replayed. Records hold absolute values, so replaying a record twice is harmless.
+ * <p>
+ * An append only writes to the page cache; a segment is forced to disk when it is rotated or closed. Records
+ * therefore survive a crash of the process, but not one of the OS, until the next rotation.
+ */
+class LedgerReplayLog implements Closeable {
+
+    static final int RECORD_SIZE = 40;
+
+    // segments of the two-currency format are named "ledger-"
+    private static final String PREFIX = "ledger2-";
+
+    private static final String SUFFIX = ".log";
+
+    interface RecordConsumer {
+        void accept(UUID id, Currency currency, long balanceMinor);
+    }
+
+    private final Path directory;
+
+    private final ReadWriteLock rotation = new ReentrantReadWriteLock();
+
+    private FileChannel channel;
+
+    private long segment;
+
+    LedgerReplayLog(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        List<Long> existing = segments();
+        this.segment = existing.isEmpty() ? 0 : existing.get(existing.size() - 1) + 1;
+        this.channel = open(segment);
+    }
+
+    void append(UUID id, Currency from, long fromMinor, Currency to, long toMinor) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits())
+                .putInt(from.ordinal())
+                .putInt(to.ordinal())
+                .putLong(fromMinor)
+                .putLong(toMinor)
+                .flip();
+        rotation.readLock().lock();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            rotation.readLock().unlock();
+        }
+    }
+
+    /**
+     * Syncs and closes the current segment and continues in a new one.
+     *
+     * @return number of the closed segment, everything up to it may be deleted once flushed
+     */
+    long rotate() {
+        rotation.writeLock().lock();
+        try {
+            channel.force(true);
+            channel.close();
+            long closed = segment;
+            channel = open(++segment);
+            return closed;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            rotation.writeLock().unlock();
+        }
+    }
+
+    void deleteUpTo(long lastSegment) throws IOException {
+        for (long number : segments()) {
+            if (number <= lastSegment) {
+                Files.deleteIfExists(path(number));
+            }
+        }
+    }
+
+    /**
+     * Feeds all records of all segments to {@code consumer} in write order. A torn record at the end of a
+     * segment, left by a crash in the middle of a write, is ignored.
+     */
+    void replay(RecordConsumer consumer) throws IOException {
+        for (long number : segments()) {
+            ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(path(number)));
+            while (records.remaining() >= RECORD_SIZE) {
+                UUID id = new UUID(records.getLong(), records.getLong());
+                Currency from = Currency.ofOrdinal(records.getInt());
+                Currency to = Currency.ofOrdinal(records.getInt());
+                consumer.accept(id, from, records.getLong());
+                consumer.accept(id, to, records.getLong());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        rotation.writeLock().lock();
+        try {
+            channel.force(true);
+            channel.close();
+        } finally {
+            rotation.writeLock().unlock();
+        }
+    }
+
+    private List<Long> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(PREFIX) && name.endsWith(SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private FileChannel open(long number) throws IOException {
+        return FileChannel.open(path(number), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private Path path(long number) {
+        return directory.resolve(String.format("%s%020d%s", PREFIX, number, SUFFIX));
+    }
+}
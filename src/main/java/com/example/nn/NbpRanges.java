@@ -0,0 +1,34 @@
+package com.example.nn;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Splits a date range into the requests the NBP API accepts, which cover at most 93 days each.
+ */
+final class NbpRanges {
+
+    static final int MAX_DAYS = 93;
+
+    private NbpRanges() {
+    }
+
+    static List<RateSnapshot> fetch(LocalDate from, LocalDate to, String source,
+                                    BiFunction<LocalDate, LocalDate, RatesTable[]> request) {
+        List<RateSnapshot> snapshots = new ArrayList<>();
+        for (LocalDate start = from; !start.isAfter(to); start = start.plusDays(MAX_DAYS)) {
+            LocalDate end = start.plusDays(MAX_DAYS - 1);
+            RatesTable[] tables = request.apply(start, end.isAfter(to) ? to : end);
+            Instant fetchedAt = Instant.now();
+            if (tables != null) {
+                for (RatesTable table : tables) {
+                    snapshots.add(RateSnapshot.of(table, source, fetchedAt));
+                }
+            }
+        }
+        return snapshots;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.nn;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+@Component
+@Profile("!reactive")
+public class NbpRateSource implements RateSource {
+
+    private final RestTemplate restTemplate;
+
+    private final URI path;
+
+    private final String historyPath;
+
+    public NbpRateSource(RestTemplate restTemplate,
+                         @Value("${nn.rates.nbp-url}") String path,
+                         @Value("${nn.rates.nbp-history-url}") String historyPath) {
+        this.restTemplate = restTemplate;
+        this.path = URI.create(path);
+        this.historyPath = historyPath;
+    }
+
+    @Override
+    public String getName() {
+        return "nbp";
+    }
+
+    @Override
+    public RateSnapshot fetch() {
+        return RateSnapshot.of(restTemplate.getForObject(path, RatesTable[].class), getName(), Instant.now());
+    }
+
+    @Override
+    public List<RateSnapshot> fetchRange(LocalDate from, LocalDate to) {
+        return NbpRanges.fetch(from, to, getName(), (start, end) -> {
+            try {
+                return restTemplate.getForObject(historyPath, RatesTable[].class, start, end);
+            } catch (HttpClientErrorException.NotFound e) {
+                // NBP answers 404 for a range without any table, e.g. a long weekend
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,547 @@
+package com.example.nn;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Values every account in PLN at the current rates and checks the balance invariants, for finance's exposure
+ * figures and as a consistency check of the stored balances.
+ * <p>
+ * Accounts are read like the export, through a forward-only cursor, with {@link AccountShards} from all shards
+ * at once. The reading thread only decodes rows into chunks of {@code nn.valuation.chunk-size} accounts; each
+ * chunk is valued on a fork/join pool of {@code nn.valuation.parallelism} threads, split in halves down to
+ * {@value #LEAF_SIZE} accounts and the partial totals merged on the way back up. At most two chunks per
+ * thread are in flight, the reader waits for the pool beyond that, so memory does not grow with the number of
+ * accounts. Totals are kept exact in minor units, wider than {@code long} where a sum needs it.
+ * <p>
+ * Runs are started on demand through {@code /actuator/valuation} or by {@code nn.valuation.cron}, one at a
+ * time; a start while one runs joins it. With the {@link AccountLedger} enabled the balances are those flushed
+ * so far.
+ */
+@Slf4j
+@Service
+@Profile("!reactive")
+public class PortfolioValuation {
+
+    static final int LEAF_SIZE = 1024;
+
+    private static final int MAX_REPORTED_VIOLATIONS = 100;
+
+    private static final long PROGRESS_INTERVAL = 1_000_000;
+
+    private static final String QUERY = "select id, balances from account";
+
+    /**
+     * Upper bounds of the histogram buckets in PLN minor units, above the first bucket of empty and negative
+     * accounts.
+     */
+    private static final long[] BUCKET_BOUNDS = {100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L,
+            100_000_000L, 1_000_000_000L, 10_000_000_000L, 100_000_000_000L};
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    private final RateProvider rateProvider;
+
+    private final AccountShards shards;
+
+    private final int chunkSize;
+
+    private final int fetchSize;
+
+    private final ForkJoinPool pool;
+
+    private final ExecutorService runner;
+
+    private final Timer duration;
+
+    private final AtomicReference<CompletableFuture<ValuationReport>> running = new AtomicReference<>();
+
+    private final AtomicLong valued = new AtomicLong();
+
+    private volatile Instant startedAt;
+
+    private volatile ValuationReport lastReport;
+
+    private volatile String lastFailure;
+
+    public PortfolioValuation(JdbcTemplate jdbcTemplate,
+                              PlatformTransactionManager transactionManager,
+                              RateProvider rateProvider,
+                              ObjectProvider<AccountShards> shards,
+                              @Value("${nn.valuation.chunk-size}") int chunkSize,
+                              @Value("${nn.valuation.parallelism}") int parallelism,
+                              @Value("${nn.account.export.fetch-size}") int fetchSize,
+                              @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                              MeterRegistry registry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.rateProvider = rateProvider;
+        this.shards = shards.getIfAvailable();
+        this.chunkSize = chunkSize;
+        this.fetchSize = fetchSize;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.runner = RateFetchThreads.single("valuation", virtualThreads);
+        this.duration = Timer.builder("nn.valuation")
+                .description("Time to value all accounts")
+                .register(registry);
+        Gauge.builder("nn.valuation.accounts", valued, AtomicLong::get)
+                .description("Accounts valued by the current or last valuation run")
+                .register(registry);
+    }
+
+    @Scheduled(cron = "${nn.valuation.cron}")
+    public void scheduledRun() {
+        start();
+    }
+
+    /**
+     * Starts a run unless one is already running, in which case the running one is returned.
+     */
+    public CompletableFuture<ValuationReport> start() {
+        while (true) {
+            CompletableFuture<ValuationReport> current = running.get();
+            if (current != null) {
+                return current;
+            }
+
+            CompletableFuture<ValuationReport> next = new CompletableFuture<>();
+            if (running.compareAndSet(null, next)) {
+                runner.execute(() -> runInto(next));
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Progress of the current run, if any, and the outcome of the last one.
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("running", running.get() != null);
+        if (startedAt != null) {
+            status.put("startedAt", startedAt);
+            status.put("accountsValued", valued.get());
+        }
+        if (lastFailure != null) {
+            status.put("lastFailure", lastFailure);
+        }
+        if (lastReport != null) {
+            status.put("lastReport", lastReport);
+        }
+        return status;
+    }
+
+    private void runInto(CompletableFuture<ValuationReport> result) {
+        ValuationReport report = null;
+        Throwable failure = null;
+        try {
+            report = duration.record(this::run);
+            lastReport = report;
+            lastFailure = null;
+        } catch (RuntimeException e) {
+            log.warn("Valuation failed", e);
+            failure = e;
+        } catch (Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            if (failure != null) {
+                lastFailure = failure.getMessage() != null ? failure.getMessage() : failure.getClass().getSimpleName();
+            }
+            // cleared first, so whoever waited on the run sees it finished
+            running.set(null);
+            if (failure == null) {
+                result.complete(report);
+            } else {
+                result.completeExceptionally(failure);
+            }
+        }
+    }
+
+    private ValuationReport run() {
+        RateSnapshot rates = rateProvider.getRate();
+        startedAt = Instant.now();
+        valued.set(0);
+        log.info("Valuing all accounts at the rates of {} from {}", rates.getEffectiveDate(), rates.getSource());
+        Run run = new Run(rates);
+        PreparedStatementCreator query = connection -> {
+            var statement = connection.prepareStatement(QUERY);
+            statement.setFetchSize(fetchSize);
+            return statement;
+        };
+        if (shards == null) {
+            Run.Reader reader = run.new Reader();
+            readOnlyTransactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(query, reader));
+            reader.finish();
+        } else {
+            shards.parallel((shard, routing) -> {
+                Run.Reader reader = run.new Reader();
+                shard.getJdbcTemplate().query(query, rs -> {
+                    if (routing.routes(shard, rs.getObject(1, UUID.class))) {
+                        reader.processRow(rs);
+                    }
+                });
+                reader.finish();
+                return null;
+            });
+        }
+        ValuationReport report = run.complete().report(rates, startedAt, Instant.now());
+        log.info("Valued {} accounts at {} PLN, {} with negative balances, {} malformed", report.getAccounts(),
+                report.getPlnValue(), report.getNegativeBalanceAccounts(), report.getMalformedAccounts());
+        return report;
+    }
+
+    /**
+     * One valuation: chunks handed over by the readers, valued on the pool and merged as they complete.
+     */
+    private final class Run {
+
+        private final RateSnapshot rates;
+
+        private final Semaphore inFlight = new Semaphore(pool.getParallelism() * 2);
+
+        // guarded by this
+        private final List<CompletableFuture<Totals>> pending = new ArrayList<>();
+
+        // guarded by this
+        private Totals merged = new Totals();
+
+        private Run(RateSnapshot rates) {
+            this.rates = rates;
+        }
+
+        /**
+         * Reads rows of one cursor into chunks; not thread safe, every reading thread has its own.
+         */
+        private final class Reader implements RowCallbackHandler {
+
+            private Chunk chunk = new Chunk(chunkSize);
+
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                chunk.add(rs.getObject(1, UUID.class), rs.getBytes(2));
+                if (chunk.size == chunkSize) {
+                    submit(chunk);
+                    chunk = new Chunk(chunkSize);
+                }
+            }
+
+            private void finish() {
+                if (chunk.size > 0) {
+                    submit(chunk);
+                }
+            }
+        }
+
+        private void submit(Chunk chunk) {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while valuing accounts", e);
+            }
+            CompletableFuture<Totals> valuing = CompletableFuture
+                    .supplyAsync(new ValueTask(chunk, rates, 0, chunk.size)::invoke, pool)
+                    .whenComplete((totals, e) -> {
+                        inFlight.release();
+                        if (totals != null) {
+                            synchronized (this) {
+                                merged.merge(totals);
+                            }
+                            long total = valued.addAndGet(chunk.size);
+                            if (total / PROGRESS_INTERVAL != (total - chunk.size) / PROGRESS_INTERVAL) {
+                                log.info("Valued {} accounts", total);
+                            }
+                        }
+                    });
+            synchronized (this) {
+                // failed chunks are kept, so complete() fails the run with them
+                pending.removeIf(done -> done.isDone() && !done.isCompletedExceptionally());
+                pending.add(valuing);
+            }
+        }
+
+        private Totals complete() {
+            List<CompletableFuture<Totals>> waiting;
+            synchronized (this) {
+                waiting = List.copyOf(pending);
+            }
+            CompletableFuture.allOf(waiting.toArray(CompletableFuture[]::new)).join();
+            synchronized (this) {
+                return merged;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        runner.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    /**
+     * Accounts as read, the balances of account {@code i} at {@code i * Currency.count()}.
+     */
+    private static final class Chunk {
+
+        private final UUID[] ids;
+
+        private final long[] balances;
+
+        private final boolean[] wellFormed;
+
+        private int size;
+
+        private Chunk(int capacity) {
+            ids = new UUID[capacity];
+            balances = new long[capacity * Currency.count()];
+            wellFormed = new boolean[capacity];
+        }
+
+        private void add(UUID id, byte[] column) {
+            ids[size] = id;
+            wellFormed[size] = BalancesConverter.decode(column, balances, size * Currency.count());
+            size++;
+        }
+    }
+
+    private static final class ValueTask extends RecursiveTask<Totals> {
+
+        private final Chunk chunk;
+
+        private final RateSnapshot rates;
+
+        private final int from;
+
+        private final int to;
+
+        private ValueTask(Chunk chunk, RateSnapshot rates, int from, int to) {
+            this.chunk = chunk;
+            this.rates = rates;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Totals compute() {
+            if (to - from <= LEAF_SIZE) {
+                return Totals.of(chunk, rates, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            ValueTask left = new ValueTask(chunk, rates, from, middle);
+            left.fork();
+            Totals right = new ValueTask(chunk, rates, middle, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * Partial result over some accounts; merging two gives the result over both.
+     */
+    private static final class Totals {
+
+        private long accounts;
+
+        private final ExactSum[] balances = ExactSum.array(Currency.count());
+
+        private final ExactSum plnValue = new ExactSum();
+
+        private final long[] histogram = new long[BUCKET_BOUNDS.length + 2];
+
+        private long unvaluedBalances;
+
+        private long negativeBalanceAccounts;
+
+        private long malformedAccounts;
+
+        private final List<ValuationReport.Violation> violations = new ArrayList<>();
+
+        static Totals of(Chunk chunk, RateSnapshot rates, int from, int to) {
+            int count = Currency.count();
+            boolean[] quoted = new boolean[count];
+            for (int c = 0; c < count; c++) {
+                quoted[c] = rates.isQuoted(Currency.ofOrdinal(c), Currency.PLN);
+            }
+            Totals totals = new Totals();
+            for (int i = from; i < to; i++) {
+                long value = 0;
+                boolean negative = false;
+                boolean outOfRange = false;
+                for (int c = 0, offset = i * count; c < count; c++) {
+                    long balance = chunk.balances[offset + c];
+                    if (balance == 0) {
+                        continue;
+                    }
+                    totals.balances[c].add(balance);
+                    negative |= balance < 0;
+                    if (!quoted[c]) {
+                        totals.unvaluedBalances++;
+                        continue;
+                    }
+                    long converted;
+                    try {
+                        converted = rates.convert(balance, Currency.ofOrdinal(c), Currency.PLN);
+                    } catch (ArithmeticException e) {
+                        totals.unvaluedBalances++;
+                        outOfRange = true;
+                        continue;
+                    }
+                    // summed exactly, the account's own value only picks its bucket and may saturate
+                    totals.plnValue.add(converted);
+                    value = saturatedAdd(value, converted);
+                }
+                totals.accounts++;
+                totals.histogram[bucket(value)]++;
+                if (negative) {
+                    totals.negativeBalanceAccounts++;
+                    totals.report(chunk.ids[i], "negative balance");
+                }
+                if (!chunk.wellFormed[i]) {
+                    totals.malformedAccounts++;
+                    totals.report(chunk.ids[i], "malformed balances");
+                }
+                if (outOfRange) {
+                    totals.report(chunk.ids[i], "PLN value out of range");
+                }
+            }
+            return totals;
+        }
+
+        private static long saturatedAdd(long a, long b) {
+            long sum = a + b;
+            if (((a ^ sum) & (b ^ sum)) < 0) {
+                return a < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+            }
+            return sum;
+        }
+
+        private static int bucket(long plnMinor) {
+            if (plnMinor <= 0) {
+                return 0;
+            }
+            for (int b = 0; b < BUCKET_BOUNDS.length; b++) {
+                if (plnMinor < BUCKET_BOUNDS[b]) {
+                    return b + 1;
+                }
+            }
+            return BUCKET_BOUNDS.length + 1;
+        }
+
+        private void report(UUID id, String invariant) {
+            if (violations.size() < MAX_REPORTED_VIOLATIONS) {
+                violations.add(new ValuationReport.Violation(id, invariant));
+            }
+        }
+
+        Totals merge(Totals other) {
+            accounts += other.accounts;
+            for (int c = 0; c < balances.length; c++) {
+                balances[c].add(other.balances[c]);
+            }
+            plnValue.add(other.plnValue);
+            for (int b = 0; b < histogram.length; b++) {
+                histogram[b] += other.histogram[b];
+            }
+            unvaluedBalances += other.unvaluedBalances;
+            negativeBalanceAccounts += other.negativeBalanceAccounts;
+            malformedAccounts += other.malformedAccounts;
+            other.violations.forEach(violation -> report(violation.id(), violation.invariant()));
+            return this;
+        }
+
+        ValuationReport report(RateSnapshot rates, Instant startedAt, Instant completedAt) {
+            Map<Currency, BigDecimal> totals = new EnumMap<>(Currency.class);
+            for (int c = 0; c < balances.length; c++) {
+                totals.put(Currency.ofOrdinal(c), balances[c].toDecimal());
+            }
+            BigDecimal pln = plnValue.toDecimal();
+            BigDecimal usdMid = rates.mid(Currency.USD);
+            BigDecimal usd = usdMid == null ? null : pln.divide(usdMid, FixedPoint.MONEY_SCALE, RoundingMode.DOWN);
+            Map<String, Long> buckets = new LinkedHashMap<>();
+            buckets.put("0", histogram[0]);
+            for (int b = 0; b < BUCKET_BOUNDS.length; b++) {
+                buckets.put("<" + FixedPoint.toDecimal(BUCKET_BOUNDS[b]).toPlainString(), histogram[b + 1]);
+            }
+            buckets.put(">=" + FixedPoint.toDecimal(BUCKET_BOUNDS[BUCKET_BOUNDS.length - 1]).toPlainString(),
+                    histogram[BUCKET_BOUNDS.length + 1]);
+            return new ValuationReport(startedAt, completedAt, rates.getEffectiveDate(), rates.getSource(), accounts,
+                    totals, pln, usd, buckets, unvaluedBalances, negativeBalanceAccounts, malformedAccounts,
+                    List.copyOf(violations));
+        }
+    }
+
+    /**
+     * Sum of minor units, spilling into a {@link BigInteger} instead of overflowing.
+     */
+    private static final class ExactSum {
+
+        private long sum;
+
+        private BigInteger spilled = BigInteger.ZERO;
+
+        static ExactSum[] array(int length) {
+            ExactSum[] sums = new ExactSum[length];
+            for (int i = 0; i < length; i++) {
+                sums[i] = new ExactSum();
+            }
+            return sums;
+        }
+
+        void add(long value) {
+            long result = sum + value;
+            if (((sum ^ result) & (value ^ result)) < 0) {
+                spilled = spilled.add(BigInteger.valueOf(sum));
+                result = value;
+            }
+            sum = result;
+        }
+
+        void add(ExactSum other) {
+            spilled = spilled.add(other.spilled);
+            add(other.sum);
+        }
+
+        BigDecimal toDecimal() {
+            BigDecimal total = new BigDecimal(spilled.add(BigInteger.valueOf(sum)), FixedPoint.MONEY_SCALE)
+                    .stripTrailingZeros();
+            // like FixedPoint.toDecimal, 2000 and not 2E+3
+            return total.scale() < 0 ? total.setScale(0) : total;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.nn;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+@RestController
+@RequestMapping("/rates")
+public class RateController {
+
+    private final RateProvider rateProvider;
+
+    private final CompositeRateSource rateSource;
+
+    private final RateHistory rateHistory;
+
+    @Autowired
+    public RateController(RateProvider rateProvider, CompositeRateSource rateSource, RateHistory rateHistory) {
+        this.rateProvider = rateProvider;
+        this.rateSource = rateSource;
+        this.rateHistory = rateHistory;
+    }
+
+    @GetMapping
+    public ResponseEntity<RateSnapshot> getRate() {
+        return ResponseEntity.ok(rateProvider.getRate());
+    }
+
+    @GetMapping("/sources")
+    public ResponseEntity<Collection<RateSourceStats>> getSourceStats() {
+        return ResponseEntity.ok(rateSource.getStats());
+    }
+
+    @GetMapping("/history/{date}")
+    public ResponseEntity getHistory(@PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        return rateHistory.asOf(date)
+                .<ResponseEntity>map(ResponseEntity::ok)
+                .orElseGet(() -> new ResponseEntity<>("No rate table for " + date, HttpStatus.NOT_FOUND));
+    }
+
+    /**
+     * Prices {@code amount} at the table in effect on {@code date}, from the local {@link RateHistory} only.
+     * The amount follows the rules of an exchange request: positive, at most 13 integer digits and 2 decimals.
+     */
+    @GetMapping("/convert")
+    public ResponseEntity convert(@RequestParam BigDecimal amount,
+                                  @RequestParam Currency from,
+                                  @RequestParam Currency to,
+                                  @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        if (amount.signum() <= 0) {
+            return new ResponseEntity<>("Amount must be more than zero", HttpStatus.BAD_REQUEST);
+        }
+        if (!FixedPoint.isMoney(amount)) {
+            return new ResponseEntity<>("Amount must have at most 13 integer digits and 2 decimal places",
+                    HttpStatus.BAD_REQUEST);
+        }
+        return rateHistory.asOf(date)
+                .filter(rates -> rates.isQuoted(from, to))
+                .<ResponseEntity>map(rates -> ResponseEntity.ok(
+                        ConversionResult.of(rates, FixedPoint.toMinor(amount), from, to)))
+                .orElseGet(() -> new ResponseEntity<>("No " + from + "/" + to + " rate for " + date,
+                        HttpStatus.NOT_FOUND));
+    }
+
+    /**
+     * Backfills {@link RateHistory} with the tables from {@code from} to {@code to}; 400 for a range
+     * {@link RateHistory#backfillAsync} does not take, 409 while another backfill runs.
+     */
+    @PostMapping("/history/backfill")
+    public CompletableFuture<ResponseEntity> backfill(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            return rateHistory.backfillAsync(from, to)
+                    .<ResponseEntity>thenApply(tables -> ResponseEntity.ok(
+                            Map.of("tables", tables, "stored", rateHistory.size())));
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST));
+        } catch (IllegalStateException e) {
+            return CompletableFuture.completedFuture(new ResponseEntity<>(e.getMessage(), HttpStatus.CONFLICT));
+        }
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(ArithmeticException.class)
+    public String handleArithmetic(ArithmeticException ex) {
+        return "Amount is out of range";
+    }
+
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    @ExceptionHandler(RateUnavailableException.class)
+    public String handleRateUnavailable(RateUnavailableException ex) {
+        return "Exchange rate unavailable";
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.nn;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Threads for outbound rate fetches. With {@code spring.threads.virtual.enabled} every fetch runs on its own
+ * virtual thread, so a slow upstream parks a continuation instead of pinning a platform thread.
+ */
+final class RateFetchThreads {
+
+    private RateFetchThreads() {
+    }
+
+    static ExecutorService single(String name, boolean virtual) {
+        return Executors.newSingleThreadExecutor(factory(name, virtual));
+    }
+
+    static ExecutorService perTask(String name, boolean virtual) {
+        return virtual
+                ? Executors.newThreadPerTaskExecutor(factory(name, true))
+                : Executors.newCachedThreadPool(factory(name, false));
+    }
+
+    private static ThreadFactory factory(String name, boolean virtual) {
+        return virtual
+                ? Thread.ofVirtual().name(name + "-", 0).factory()
+                : Thread.ofPlatform().name(name).daemon().factory();
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.nn;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Local store of past rate tables by effective date, so past conversions are priced without a remote call.
+ * <p>
+ * Tables come from bulk backfills of a date range, {@code nn.rates.history.backfill-days} of them on start,
+ * and from every table {@link RateProvider} fetches. They are kept in a sorted map, so the lookup by date is
+ * O(log n). A date NBP published no table for, such as a weekend or holiday, is priced with the table of the
+ * previous business day, looking back at most {@code nn.rates.history.max-lookback}. A backfill covers at
+ * most {@code nn.rates.history.max-backfill} between {@link #FIRST_TABLE} and today, and only one runs at a
+ * time.
+ */
+@Slf4j
+@Component
+public class RateHistory {
+
+    /**
+     * The first table A published by NBP, the oldest date NBP serves.
+     */
+    static final LocalDate FIRST_TABLE = LocalDate.of(2002, 1, 2);
+
+    private final CompositeRateSource rateSource;
+
+    private final Period maxLookback;
+
+    private final int backfillDays;
+
+    private final Period maxBackfill;
+
+    private final AtomicBoolean backfilling = new AtomicBoolean();
+
+    private final ConcurrentSkipListMap<LocalDate, RateSnapshot> tables = new ConcurrentSkipListMap<>();
+
+    private final ExecutorService backfiller;
+
+    public RateHistory(CompositeRateSource rateSource,
+                       RateProvider rateProvider,
+                       @Value("${nn.rates.history.max-lookback}") Period maxLookback,
+                       @Value("${nn.rates.history.backfill-days}") int backfillDays,
+                       @Value("${nn.rates.history.max-backfill}") Period maxBackfill,
+                       @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.rateSource = rateSource;
+        this.maxLookback = maxLookback;
+        this.backfillDays = backfillDays;
+        this.maxBackfill = maxBackfill;
+        this.backfiller = RateFetchThreads.single("rate-backfill", virtualThreads);
+        rateProvider.onRefresh(this::record);
+    }
+
+    /**
+     * Stores {@code snapshot} under its effective date, replacing an earlier fetch of the same table.
+     */
+    public void record(RateSnapshot snapshot) {
+        if (snapshot.getEffectiveDate() != null) {
+            tables.put(snapshot.getEffectiveDate(), snapshot);
+        }
+    }
+
+    /**
+     * @return the table in effect on {@code date}, empty when none is stored within the lookback
+     */
+    public Optional<RateSnapshot> asOf(LocalDate date) {
+        Map.Entry<LocalDate, RateSnapshot> entry = tables.floorEntry(date);
+        if (entry == null || entry.getKey().isBefore(date.minus(maxLookback))) {
+            return Optional.empty();
+        }
+        return Optional.of(entry.getValue());
+    }
+
+    /**
+     * Fetches and stores all tables published between {@code from} and {@code to} inclusive.
+     *
+     * @return number of tables stored
+     */
+    public int backfill(LocalDate from, LocalDate to) {
+        List<RateSnapshot> fetched = rateSource.fetchRange(from, to);
+        fetched.forEach(this::record);
+        log.info("Backfilled {} rate tables from {} to {}", fetched.size(), from, to);
+        return fetched.size();
+    }
+
+    /**
+     * {@link #backfill} on a background thread, so request and event loop threads do not wait on the fetch.
+     *
+     * @throws IllegalArgumentException when the range is reversed, not between {@link #FIRST_TABLE} and today
+     *                                  or longer than {@code nn.rates.history.max-backfill}
+     * @throws IllegalStateException    when another backfill is still running
+     */
+    public CompletableFuture<Integer> backfillAsync(LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("Backfill range ends before it starts");
+        }
+        if (from.isBefore(FIRST_TABLE) || to.isAfter(LocalDate.now())) {
+            throw new IllegalArgumentException("Backfill range must be between " + FIRST_TABLE + " and today");
+        }
+        if (from.plus(maxBackfill).isBefore(to)) {
+            throw new IllegalArgumentException("Backfill range must not be longer than " + maxBackfill);
+        }
+        if (!backfilling.compareAndSet(false, true)) {
+            throw new IllegalStateException("A rate history backfill is already running");
+        }
+        return CompletableFuture.supplyAsync(() -> backfill(from, to), backfiller)
+                .whenComplete((tables, e) -> backfilling.set(false));
+    }
+
+    public int size() {
+        return tables.size();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void backfillOnStart() {
+        if (backfillDays > 0) {
+            LocalDate today = LocalDate.now();
+            try {
+                backfillAsync(today.minusDays(backfillDays), today).exceptionally(e -> {
+                    log.warn("Rate history backfill failed: {}", e.getMessage());
+                    return 0;
+                });
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                log.warn("Rate history backfill not started: {}", e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        backfiller.shutdownNow();
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.nn;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Serves the current rate table from an immutable snapshot and refreshes it in the background.
+ * <p>
+ * Request threads only read the snapshot. A refresh is triggered by the schedule or by a reader that finds
+ * the snapshot older than the refresh interval; concurrent triggers share one in-flight fetch. The last
+ * known rate keeps being served until it is older than {@code nn.rates.max-staleness}. The age of the served
+ * snapshot is published as the {@code nn.rates.age} gauge.
+ */
+@Slf4j
+@Component
+public class RateProvider {
+
+    private final CompositeRateSource rateSource;
+
+    private final Duration refreshInterval;
+
+    private final Duration maxStaleness;
+
+    private final AtomicReference<RateSnapshot> snapshot = new AtomicReference<>();
+
+    private final AtomicReference<CompletableFuture<RateSnapshot>> inFlight = new AtomicReference<>();
+
+    private final ExecutorService refresher;
+
+    private final List<Consumer<RateSnapshot>> listeners = new CopyOnWriteArrayList<>();
+
+    public RateProvider(CompositeRateSource rateSource,
+                        @Value("${nn.rates.refresh-interval}") Duration refreshInterval,
+                        @Value("${nn.rates.max-staleness}") Duration maxStaleness,
+                        MeterRegistry registry,
+                        @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.rateSource = rateSource;
+        this.refresher = RateFetchThreads.single("rate-refresh", virtualThreads);
+        this.refreshInterval = refreshInterval;
+        this.maxStaleness = maxStaleness;
+        Gauge.builder("nn.rates.age", this, RateProvider::ageSeconds)
+                .description("Age of the rate currently served")
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    /**
+     * Returns the current rate without a remote call unless no usable snapshot exists.
+     *
+     * @throws RateUnavailableException when there is no rate younger than the staleness bound and a fetch fails
+     */
+    public RateSnapshot getRate() {
+        RateSnapshot current = usableSnapshot();
+        return current != null ? current : awaitRefresh();
+    }
+
+    /**
+     * Non-blocking variant of {@link #getRate()} for callers that must not wait on the fetch, such as event
+     * loop threads. Completes exceptionally with {@link RateUnavailableException} where {@link #getRate()}
+     * would throw it.
+     */
+    public CompletableFuture<RateSnapshot> getRateAsync() {
+        RateSnapshot current = usableSnapshot();
+        if (current != null) {
+            return CompletableFuture.completedFuture(current);
+        }
+        return refresh()
+                .exceptionallyCompose(e -> refresh())
+                .exceptionallyCompose(e -> CompletableFuture.failedFuture(
+                        new RateUnavailableException("Exchange rate unavailable", unwrap(e))));
+    }
+
+    /**
+     * @return the current snapshot if it is within the staleness bound, starting a refresh when it is due;
+     * {@code null} when a fetch has to be awaited
+     */
+    private RateSnapshot usableSnapshot() {
+        RateSnapshot current = snapshot.get();
+        if (current == null) {
+            return null;
+        }
+
+        Duration age = current.age(Instant.now());
+        if (age.compareTo(maxStaleness) > 0) {
+            return null;
+        }
+        if (age.compareTo(refreshInterval) > 0) {
+            refresh();
+        }
+        return current;
+    }
+
+    /**
+     * Calls {@code listener} on the refresh thread with every newly fetched snapshot, before the refresh
+     * completes. A listener that throws is logged and does not fail the refresh.
+     */
+    public void onRefresh(Consumer<RateSnapshot> listener) {
+        listeners.add(listener);
+    }
+
+    @Scheduled(fixedDelayString = "${nn.rates.refresh-interval}")
+    public void scheduledRefresh() {
+        refresh();
+    }
+
+    /**
+     * Starts a fetch unless one is already running, in which case the running one is returned.
+     */
+    CompletableFuture<RateSnapshot> refresh() {
+        while (true) {
+            CompletableFuture<RateSnapshot> running = inFlight.get();
+            if (running != null) {
+                return running;
+            }
+
+            CompletableFuture<RateSnapshot> next = new CompletableFuture<>();
+            if (inFlight.compareAndSet(null, next)) {
+                try {
+                    refresher.execute(() -> fetchInto(next));
+                } catch (RejectedExecutionException e) {
+                    inFlight.compareAndSet(next, null);
+                    next.completeExceptionally(e);
+                }
+                return next;
+            }
+        }
+    }
+
+    private void fetchInto(CompletableFuture<RateSnapshot> result) {
+        RateSnapshot fetched = null;
+        Throwable failure = null;
+        try {
+            fetched = rateSource.fetch();
+            snapshot.set(fetched);
+            notifyListeners(fetched);
+        } catch (RuntimeException e) {
+            log.warn("Rate refresh failed: {}", e.getMessage());
+            failure = e;
+        } catch (Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            // cleared before completing so that waiters retrying on failure start a new fetch
+            inFlight.compareAndSet(result, null);
+            if (failure == null) {
+                result.complete(fetched);
+            } else {
+                result.completeExceptionally(failure);
+            }
+        }
+    }
+
+    private void notifyListeners(RateSnapshot fetched) {
+        for (Consumer<RateSnapshot> listener : listeners) {
+            try {
+                listener.accept(fetched);
+            } catch (RuntimeException e) {
+                log.warn("Rate refresh listener failed", e);
+            }
+        }
+    }
+
+    private RateSnapshot awaitRefresh() {
+        try {
+            return refresh().join();
+        } catch (CompletionException e) {
+            // the fetch we joined may have started long before this call, give it one fresh attempt
+            try {
+                return refresh().join();
+            } catch (CompletionException retry) {
+                throw new RateUnavailableException("Exchange rate unavailable", retry.getCause());
+            }
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    private double ageSeconds() {
+        RateSnapshot current = snapshot.get();
+        return current == null ? Double.NaN : current.age(Instant.now()).toMillis() / 1000.0;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        refresher.shutdownNow();
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.nn;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Immutable matrix of the rates between all {@link Currency currencies} quoted in one NBP table, together with
+ * the source it came from and the moment it was fetched. The cross rate of every pair is computed once per
+ * fetch, so pricing an exchange is an array lookup. Instances are published through an atomic reference, so
+ * they must never be mutated.
+ */
+@Getter
+public final class RateSnapshot {
+
+    /**
+     * Mid rates in PLN of the quoted currencies, PLN itself included.
+     */
+    private final Map<Currency, BigDecimal> mids;
+
+    private final LocalDate effectiveDate;
+
+    private final String source;
+
+    private final Instant fetchedAt;
+
+    /**
+     * Cross rate of the pair {@code from * count + to} as the reduced fraction {@code numerator / denominator}
+     * of the two {@link FixedPoint} mid rates, so a conversion is exact up to its single rounding down.
+     * A zero denominator marks a pair the table has no rate for.
+     */
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    private final long[] numerators;
+
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    private final long[] denominators;
+
+    /**
+     * The same cross rates scaled by 10^{@link FixedPoint#CROSS_RATE_SCALE}, for the journal and reporting.
+     */
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    private final long[] crossRates;
+
+    public RateSnapshot(Map<Currency, BigDecimal> mids, LocalDate effectiveDate, String source, Instant fetchedAt) {
+        Map<Currency, BigDecimal> quoted = new EnumMap<>(Currency.class);
+        quoted.putAll(mids);
+        quoted.put(Currency.PLN, BigDecimal.ONE);
+        this.mids = Collections.unmodifiableMap(quoted);
+        this.effectiveDate = effectiveDate;
+        this.source = source;
+        this.fetchedAt = fetchedAt;
+
+        int count = Currency.count();
+        long[] scaled = new long[count];
+        quoted.forEach((currency, mid) -> scaled[currency.ordinal()] = FixedPoint.toScaledRate(mid));
+        this.numerators = new long[count * count];
+        this.denominators = new long[count * count];
+        this.crossRates = new long[count * count];
+        for (int from = 0; from < count; from++) {
+            for (int to = 0; to < count; to++) {
+                if (scaled[from] > 0 && scaled[to] > 0) {
+                    int pair = from * count + to;
+                    long gcd = gcd(scaled[from], scaled[to]);
+                    numerators[pair] = scaled[from] / gcd;
+                    denominators[pair] = scaled[to] / gcd;
+                    crossRates[pair] = FixedPoint.multiplyDivide(numerators[pair], FixedPoint.CROSS_RATE_ONE,
+                            denominators[pair]);
+                }
+            }
+        }
+    }
+
+    public Duration age(Instant now) {
+        return Duration.between(fetchedAt, now);
+    }
+
+    public BigDecimal mid(Currency currency) {
+        return mids.get(currency);
+    }
+
+    public boolean isQuoted(Currency from, Currency to) {
+        return denominators[pair(from, to)] != 0;
+    }
+
+    /**
+     * {@code amountMinor} of {@code from} in minor units of {@code to}, rounded down.
+     *
+     * @throws RateUnavailableException when the table has no rate for one of the currencies
+     */
+    public long convert(long amountMinor, Currency from, Currency to) {
+        int pair = pair(from, to);
+        long denominator = denominators[pair];
+        if (denominator == 0) {
+            throw new RateUnavailableException("No " + from + "/" + to + " rate in the table of " + effectiveDate);
+        }
+        return FixedPoint.multiplyDivide(amountMinor, numerators[pair], denominator);
+    }
+
+    /**
+     * @return price of one {@code from} in {@code to} scaled by 10^{@link FixedPoint#CROSS_RATE_SCALE},
+     * rounded down, or 0 when the pair is not quoted
+     */
+    public long crossRate(Currency from, Currency to) {
+        return crossRates[pair(from, to)];
+    }
+
+    /**
+     * Snapshot of the latest of {@code ratesTables}.
+     */
+    static RateSnapshot of(RatesTable[] ratesTables, String source, Instant fetchedAt) {
+        if (ratesTables == null || ratesTables.length == 0) {
+            throw new RateUnavailableException("Empty rates response");
+        }
+        RatesTable latest = ratesTables[0];
+        for (RatesTable ratesTable : ratesTables) {
+            if (ratesTable.getEffectiveDate() != null && (latest.getEffectiveDate() == null
+                    || ratesTable.getEffectiveDate().isAfter(latest.getEffectiveDate()))) {
+                latest = ratesTable;
+            }
+        }
+        return of(latest, source, fetchedAt);
+    }
+
+    static RateSnapshot of(RatesTable ratesTable, String source, Instant fetchedAt) {
+        if (ratesTable == null || ratesTable.getRates() == null) {
+            throw new RateUnavailableException("Empty rates response");
+        }
+        Map<Currency, BigDecimal> mids = new EnumMap<>(Currency.class);
+        for (RatesTable.Rate rate : ratesTable.getRates()) {
+            Currency currency = known(rate.getCode());
+            if (currency != null && rate.getMid() != null && rate.getMid().signum() > 0) {
+                mids.put(currency, rate.getMid());
+            }
+        }
+        if (mids.isEmpty()) {
+            throw new RateUnavailableException("Rates table contains no mid rate of a supported currency");
+        }
+        return new RateSnapshot(mids, ratesTable.getEffectiveDate(), source, fetchedAt);
+    }
+
+    private static Currency known(String code) {
+        for (int i = 0; i < Currency.count(); i++) {
+            if (Currency.ofOrdinal(i).name().equals(code)) {
+                return Currency.ofOrdinal(i);
+            }
+        }
+        return null;
+    }
+
+    private static int pair(Currency from, Currency to) {
+        return from.ordinal() * Currency.count() + to.ordinal();
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long remainder = a % b;
+            a = b;
+            b = remainder;
+        }
+        return a;
+    }
+}
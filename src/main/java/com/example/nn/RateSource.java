@@ -0,0 +1,26 @@
+package com.example.nn;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Origin of NBP rate tables. Implementations are called from the background refresher only and may block.
+ */
+public interface RateSource {
+
+    String getName();
+
+    /**
+     * @throws RuntimeException when the source cannot deliver a rate; the composite then moves on to the next one
+     */
+    RateSnapshot fetch();
+
+    /**
+     * Tables published between {@code from} and {@code to} inclusive, in date order, for {@link RateHistory}.
+     *
+     * @throws RuntimeException when the source has no history or cannot deliver it
+     */
+    default List<RateSnapshot> fetchRange(LocalDate from, LocalDate to) {
+        throw new RateUnavailableException(getName() + " has no historical rates");
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.nn;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free call statistics of a single {@link RateSource}.
+ */
+public class RateSourceStats {
+
+    @Getter
+    private final String source;
+
+    private final LongAdder successes = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    private final AtomicLong lastNanos = new AtomicLong();
+
+    RateSourceStats(String source) {
+        this.source = source;
+    }
+
+    void record(long nanos, boolean success) {
+        (success ? successes : failures).increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        lastNanos.set(nanos);
+    }
+
+    public long getSuccesses() {
+        return successes.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public Duration getLastLatency() {
+        return Duration.ofNanos(lastNanos.get());
+    }
+
+    public Duration getMaxLatency() {
+        return Duration.ofNanos(maxNanos.get());
+    }
+
+    public Duration getMeanLatency() {
+        long calls = getSuccesses() + getFailures();
+        return calls == 0 ? Duration.ZERO : Duration.ofNanos(totalNanos.sum() / calls);
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.nn;
+
+public class RateUnavailableException extends RuntimeException {
+
+    public RateUnavailableException(String message) {
+        super(message);
+    }
+
+    public RateUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -1,35 +1,36 @@
 package com.example.nn;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
-import lombok.Setter;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
 
+/**
+ * One NBP exchange rate table, e.g. table A with the mid rates of all quoted currencies in PLN. The API wraps
+ * it in a single element array.
+ */
 @JsonIgnoreProperties(ignoreUnknown = true)
 @Getter
-@Setter
 @NoArgsConstructor
 @AllArgsConstructor
-public class RatesResponse {
+public class RatesTable {
 
-    @JsonProperty("rates")
-    private List<Rate> rate;
+    private LocalDate effectiveDate;
+
+    private List<Rate> rates;
 
     @JsonIgnoreProperties(ignoreUnknown = true)
     @Getter
     @NoArgsConstructor
     @AllArgsConstructor
     static class Rate {
-        @JsonProperty("mid")
-        private BigDecimal mid;
 
-        @JsonProperty("effectiveDate")
-        private LocalDate effectiveDate;
+        private String code;
+
+        private BigDecimal mid;
     }
 }
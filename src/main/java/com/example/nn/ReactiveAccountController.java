@@ -0,0 +1,139 @@
+package com.example.nn;
+
+import jakarta.validation.Valid;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.validation.FieldError;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.bind.support.WebExchangeBindException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The {@code /account} API of {@link AccountController} served by {@link ReactiveAccountService} in the
+ * {@code reactive} profile. Requests, responses and error bodies are the same.
+ */
+@RestController
+@RequestMapping("/account")
+@Profile("reactive")
+public class ReactiveAccountController {
+
+    private final ReactiveAccountService accountService;
+
+    private final IdempotencyStore idempotencyStore;
+
+    private final BalanceEventBus balanceEvents;
+
+    public ReactiveAccountController(ReactiveAccountService accountService, IdempotencyStore idempotencyStore,
+                                     BalanceEventBus balanceEvents) {
+        this.accountService = accountService;
+        this.idempotencyStore = idempotencyStore;
+        this.balanceEvents = balanceEvents;
+    }
+
+    @GetMapping("/{uuid}")
+    public Mono<ResponseEntity<Object>> getAccount(@PathVariable String uuid) {
+        return accountService.getAccount(uuid)
+                .<ResponseEntity<Object>>map(ResponseEntity::ok)
+                .defaultIfEmpty(new ResponseEntity<>("Account not found", HttpStatus.NOT_FOUND));
+    }
+
+    @GetMapping("/{uuid}/history")
+    public Mono<ResponseEntity<Object>> getHistory(@PathVariable String uuid) {
+        return accountService.getHistory(uuid)
+                .<ResponseEntity<Object>>map(ResponseEntity::ok)
+                .defaultIfEmpty(new ResponseEntity<>("Exchange journal is disabled", HttpStatus.NOT_FOUND));
+    }
+
+    /**
+     * Batches are only delivered while the client has demand; until then the bus coalesces and bounds them.
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<BalanceBatch>> events(@RequestParam(name = "uuid", required = false) List<UUID> uuids) {
+        return Flux.create(sink -> {
+            BalanceEventBus.Subscription subscription = balanceEvents.subscribe(uuids,
+                    () -> sink.requestedFromDownstream() > 0,
+                    batch -> sink.next(ServerSentEvent.builder(batch).event("balances").build()),
+                    sink::complete);
+            sink.onDispose(subscription::close);
+        });
+    }
+
+    @PostMapping()
+    public Mono<Account> createAccount(@Valid @RequestBody CreateAccountRequest createAccountRequest) {
+        return accountService.createAccount(createAccountRequest);
+    }
+
+    @PutMapping("/exchange")
+    public Mono<ResponseEntity<Object>> exchange(@Valid @RequestBody ExchangeRequest exchangeRequest,
+                                                 @RequestHeader(name = IdempotencyStore.HEADER, required = false)
+                                                 String idempotencyKey) {
+        Mono<Account> exchange = accountService.exchange(exchangeRequest.getUuid(), exchangeRequest.getAmount(),
+                exchangeRequest.getFrom(), exchangeRequest.target());
+        Mono<Account> result = idempotencyKey == null ? exchange
+                : Mono.fromFuture(() -> idempotencyStore.execute(idempotencyKey, exchangeRequest, exchange::toFuture));
+        return result
+                .<ResponseEntity<Object>>map(ResponseEntity::ok)
+                .defaultIfEmpty(new ResponseEntity<>("Account not found", HttpStatus.NOT_FOUND));
+    }
+
+    /**
+     * Accepts a JSON array or NDJSON; both are decoded item by item, so demand from the chunked exchange
+     * reaches the request body. Results are streamed back in the content type that was sent.
+     */
+    @PutMapping(value = "/exchange/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Flux<ExchangeResult> exchangeBatch(@RequestBody Flux<ExchangeRequest> exchangeRequests) {
+        return accountService.exchangeBatch(exchangeRequests);
+    }
+
+    @PutMapping(value = "/exchange/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ExchangeResult> exchangeBatchStream(@RequestBody Flux<ExchangeRequest> exchangeRequests) {
+        return accountService.exchangeBatch(exchangeRequests);
+    }
+
+    @ResponseStatus(HttpStatus.CONFLICT)
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public String handleConcurrentModification(OptimisticLockingFailureException ex) {
+        return "Account is being modified concurrently, retry later";
+    }
+
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    @ExceptionHandler(RateUnavailableException.class)
+    public String handleRateUnavailable(RateUnavailableException ex) {
+        return "Exchange rate unavailable";
+    }
+
+    @ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+    @ExceptionHandler(IdempotencyKeyReusedException.class)
+    public String handleIdempotencyKeyReused(IdempotencyKeyReusedException ex) {
+        return "Idempotency key was already used for a different request";
+    }
+
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    @ExceptionHandler(IdempotencyStoreFullException.class)
+    public String handleIdempotencyStoreFull(IdempotencyStoreFullException ex) {
+        return "Too many idempotency keys in use, retry later";
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(WebExchangeBindException.class)
+    public Map<String, String> handleValidationExceptions(WebExchangeBindException ex) {
+        Map<String, String> errors = new HashMap<>();
+        ex.getBindingResult().getAllErrors().forEach((error) -> {
+            String fieldName = ((FieldError) error).getField();
+            String errorMessage = error.getDefaultMessage();
+            errors.put(fieldName, errorMessage);
+        });
+        return errors;
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.nn;
+
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+
+import java.util.UUID;
+
+public interface ReactiveAccountRepository extends R2dbcRepository<AccountRow, UUID> {
+}
@@ -0,0 +1,290 @@
+package com.example.nn;
+
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+import reactor.util.retry.RetryBackoffSpec;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * {@link AccountService} of the {@code reactive} profile: the same exchange rules on {@link ExchangeCalculator},
+ * expressed as non-blocking pipelines over R2DBC. Optimistic lock conflicts are retried with the same
+ * {@code nn.exchange.retry.*} budget, as a delayed resubscription instead of a sleeping thread.
+ */
+@Slf4j
+@Service
+@Profile("reactive")
+public class ReactiveAccountService {
+
+    private final ReactiveAccountRepository accountRepository;
+
+    private final RateProvider rateProvider;
+
+    private final Validator validator;
+
+    private final TransactionalOperator transactionalOperator;
+
+    private final int batchChunkSize;
+
+    private final RetryBackoffSpec retry;
+
+    private final ExchangeJournal journal;
+
+    private final ExchangeMetrics metrics;
+
+    private final BalanceEventBus events;
+
+    public ReactiveAccountService(ReactiveAccountRepository accountRepository,
+                                  RateProvider rateProvider,
+                                  Validator validator,
+                                  ReactiveTransactionManager transactionManager,
+                                  @Value("${nn.exchange.batch.chunk-size}") int batchChunkSize,
+                                  @Value("${nn.exchange.retry.max-attempts}") int retryMaxAttempts,
+                                  @Value("${nn.exchange.retry.backoff}") Duration retryBackoff,
+                                  ObjectProvider<ExchangeJournal> journal,
+                                  ExchangeMetrics metrics,
+                                  BalanceEventBus events) {
+        this.accountRepository = accountRepository;
+        this.rateProvider = rateProvider;
+        this.validator = validator;
+        this.transactionalOperator = TransactionalOperator.create(transactionManager);
+        this.batchChunkSize = batchChunkSize;
+        this.retry = Retry.backoff(retryMaxAttempts - 1, retryBackoff)
+                .maxBackoff(retryBackoff.multipliedBy(1024))
+                .filter(OptimisticLockingFailureException.class::isInstance)
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+        this.journal = journal.getIfAvailable();
+        this.metrics = metrics;
+        this.events = events;
+    }
+
+    public Mono<Account> getAccount(String uuid) {
+        return accountRepository.findById(UUID.fromString(uuid)).map(AccountRow::toAccount);
+    }
+
+    /**
+     * @return empty when the exchange journal is disabled
+     */
+    public Mono<List<JournalEntry>> getHistory(String uuid) {
+        if (journal == null) {
+            return Mono.empty();
+        }
+        UUID id = UUID.fromString(uuid);
+        // scans the journal segments, keep it off the event loop
+        return Mono.fromCallable(() -> journal.history(id)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    public Mono<Account> createAccount(CreateAccountRequest createAccountRequest) {
+        var account = new Account();
+        account.setId(UUID.randomUUID());
+        account.setName(createAccountRequest.getName());
+        account.setLastName(createAccountRequest.getLastName());
+        account.setPlnBalance(createAccountRequest.getBalance());
+
+        return accountRepository.save(AccountRow.of(account)).map(AccountRow::toAccount).doOnNext(events::publish);
+    }
+
+    /**
+     * @return the account after the exchange, or empty when it does not exist
+     */
+    public Mono<Account> exchange(String uuid, BigDecimal amount, Currency from, Currency to) {
+        long start = System.nanoTime();
+        UUID id = UUID.fromString(uuid);
+        long amountMinor = FixedPoint.toMinor(amount);
+        return rates().flatMap(rates -> exchangeOnce(id, amountMinor, from, to, rates)
+                        .retryWhen(retry)
+                        .doOnNext(outcome -> {
+                            if (outcome.isApplied()) {
+                                events.publish(outcome.getAccount());
+                            } else {
+                                metrics.insufficientFunds();
+                            }
+                        }))
+                .map(ExchangeOutcome::getAccount)
+                .doOnSuccess(account -> {
+                    if (account == null) {
+                        metrics.notFound();
+                    } else {
+                        metrics.exchange(start);
+                    }
+                });
+    }
+
+    private Mono<ExchangeOutcome> exchangeOnce(UUID id, long amountMinor, Currency from, Currency to,
+                                               RateSnapshot rates) {
+        if (!rates.isQuoted(from, to)) {
+            return Mono.error(new RateUnavailableException("No " + from + "/" + to + " rate"));
+        }
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return accountRepository.findById(id).flatMap(row -> {
+                long loaded = metrics.stage(ExchangeMetrics.Stage.LOAD, start);
+                Account account = row.toAccount();
+                if (!ExchangeCalculator.isEnoughMoney(account, amountMinor, from)) {
+                    return Mono.just(new ExchangeOutcome(account, false));
+                }
+                ExchangeCalculator.calculate(account, amountMinor, from, to, rates);
+                long calculated = metrics.stage(ExchangeMetrics.Stage.CALCULATE, loaded);
+                return accountRepository.save(AccountRow.of(account)).flatMap(saved -> {
+                    metrics.stage(ExchangeMetrics.Stage.SAVE, calculated);
+                    Account exchanged = saved.toAccount();
+                    return journaled(new ExchangeOutcome(exchanged, true), () -> journal(id, exchanged.getVersion(),
+                            from, to, amountMinor, rates, exchanged.getMinor(from), exchanged.getMinor(to)));
+                });
+            });
+        });
+    }
+
+    /**
+     * Applies exchanges in chunks of {@code nn.exchange.batch.chunk-size} as {@link AccountService} does.
+     * Only one chunk is in flight, so requests are pulled from {@code exchangeRequests} as fast as chunks
+     * commit and a slow consumer of the results slows down reading of the requests.
+     */
+    public Flux<ExchangeResult> exchangeBatch(Flux<ExchangeRequest> exchangeRequests) {
+        return rates().flatMapMany(rates -> exchangeRequests
+                .buffer(batchChunkSize)
+                .concatMap(chunk -> Mono.defer(() -> exchangeChunk(chunk, rates))
+                        .as(transactionalOperator::transactional)
+                        .retryWhen(retry)
+                        // once committed, so a rolled back chunk leaves no entries
+                        .flatMap(results -> journaled(results, () -> journal(chunk, results, rates)))
+                        .doOnNext(results -> publish(chunk, results)))
+                .concatMapIterable(results -> results));
+    }
+
+    private Mono<List<ExchangeResult>> exchangeChunk(List<ExchangeRequest> chunk, RateSnapshot rates) {
+        long start = System.nanoTime();
+        return accountRepository.findAllById(uuids(chunk))
+                .collectMap(AccountRow::getId, AccountRow::toAccount)
+                .flatMap(accounts -> {
+                    long loaded = metrics.batchStage(ExchangeMetrics.Stage.LOAD, start);
+                    List<ExchangeResult> results = new ArrayList<>(chunk.size());
+                    Map<UUID, Account> changed = new LinkedHashMap<>();
+                    for (ExchangeRequest exchangeRequest : chunk) {
+                        Optional<ExchangeResult> invalid = ExchangeValidation.validate(validator, exchangeRequest, rates);
+                        if (invalid.isPresent()) {
+                            results.add(invalid.get());
+                            continue;
+                        }
+
+                        Account account = accounts.get(UUID.fromString(exchangeRequest.getUuid()));
+                        long amountMinor = FixedPoint.toMinor(exchangeRequest.getAmount());
+                        if (account == null) {
+                            metrics.notFound();
+                            results.add(ExchangeValidation.notFound(exchangeRequest));
+                        } else if (ExchangeCalculator.isEnoughMoney(account, amountMinor, exchangeRequest.getFrom())) {
+                            ExchangeCalculator.calculate(account, amountMinor, exchangeRequest.getFrom(),
+                                    exchangeRequest.target(), rates);
+                            changed.put(account.getId(), account);
+                            results.add(ExchangeResult.of(ExchangeResult.Status.OK, account));
+                        } else {
+                            metrics.insufficientFunds();
+                            results.add(ExchangeResult.of(ExchangeResult.Status.INSUFFICIENT_FUNDS, account));
+                        }
+                    }
+                    long calculated = metrics.batchStage(ExchangeMetrics.Stage.CALCULATE, loaded);
+
+                    return accountRepository.saveAll(changed.values().stream().map(AccountRow::of).toList())
+                            .collectMap(AccountRow::getId, AccountRow::getVersion)
+                            .map(versions -> {
+                                metrics.batchStage(ExchangeMetrics.Stage.SAVE, calculated);
+                                setVersions(chunk, results, versions);
+                                return results;
+                            });
+                });
+    }
+
+    private Mono<RateSnapshot> rates() {
+        return Mono.fromFuture(rateProvider::getRateAsync);
+    }
+
+    /**
+     * Runs {@code append} of committed exchanges on a worker thread and then emits {@code value}. With
+     * {@code nn.journal.wait-for-sync} an append blocks until the next fsync, which must not happen on the event
+     * loop. The money has moved by then, so a failed append is logged rather than failing, or retrying, the
+     * exchange.
+     */
+    private <T> Mono<T> journaled(T value, Runnable append) {
+        if (journal == null) {
+            return Mono.just(value);
+        }
+        return Mono.fromRunnable(append)
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    log.error("Committed exchanges were not journaled", e);
+                    return Mono.empty();
+                })
+                .thenReturn(value);
+    }
+
+    private void journal(UUID id, long version, Currency from, Currency to, long amountMinor, RateSnapshot rates,
+                         long fromMinor, long toMinor) {
+        if (journal != null) {
+            journal.append(id, version, from, to, amountMinor, rates.crossRate(from, to), fromMinor, toMinor);
+        }
+    }
+
+    private static void setVersions(List<ExchangeRequest> chunk, List<ExchangeResult> results,
+                                    Map<UUID, Long> versions) {
+        for (int i = 0; i < results.size(); i++) {
+            ExchangeResult result = results.get(i);
+            if (result.getStatus() == ExchangeResult.Status.OK) {
+                results.set(i, result.withVersion(versions.get(UUID.fromString(chunk.get(i).getUuid()))));
+            }
+        }
+    }
+
+    private void journal(List<ExchangeRequest> chunk, List<ExchangeResult> results, RateSnapshot rates) {
+        if (journal == null) {
+            return;
+        }
+        for (int i = 0; i < results.size(); i++) {
+            ExchangeResult result = results.get(i);
+            if (result.getStatus() == ExchangeResult.Status.OK) {
+                ExchangeRequest applied = chunk.get(i);
+                UUID id = UUID.fromString(applied.getUuid());
+                Currency from = applied.getFrom();
+                Currency to = applied.target();
+                journal.append(id, result.version(), from, to, FixedPoint.toMinor(applied.getAmount()),
+                        rates.crossRate(from, to), result.getMinor(from), result.getMinor(to));
+            }
+        }
+    }
+
+    private void publish(List<ExchangeRequest> chunk, List<ExchangeResult> results) {
+        for (int i = 0; i < results.size(); i++) {
+            ExchangeResult result = results.get(i);
+            if (result.getStatus() == ExchangeResult.Status.OK) {
+                events.publish(UUID.fromString(chunk.get(i).getUuid()), result.version(), result.balances());
+            }
+        }
+    }
+
+    private static Set<UUID> uuids(List<ExchangeRequest> chunk) {
+        Set<UUID> ids = new LinkedHashSet<>();
+        for (ExchangeRequest exchangeRequest : chunk) {
+            ExchangeValidation.parseUuid(exchangeRequest.getUuid()).ifPresent(ids::add);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.nn;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link AdmissionFilter} of the {@code reactive} profile; the permit is released when the response completes,
+ * errors or is cancelled.
+ */
+public class ReactiveAdmissionFilter implements WebFilter, Ordered {
+
+    private final AdmissionControl admissionControl;
+
+    private final String clientHeader;
+
+    public ReactiveAdmissionFilter(AdmissionControl admissionControl, String clientHeader) {
+        this.admissionControl = admissionControl;
+        this.clientHeader = clientHeader;
+    }
+
+    @Override
+    public int getOrder() {
+        return AdmissionConfiguration.FILTER_ORDER;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        String path = request.getPath().pathWithinApplication().value();
+        if (!AdmissionControl.isControlled(path, request.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE))) {
+            return chain.filter(exchange);
+        }
+        long start = System.nanoTime();
+        AdmissionControl.Decision decision = admissionControl.tryAdmit(client(request),
+                AdmissionControl.isExchange(path));
+        if (!decision.isAdmitted()) {
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(decision.rejection());
+            response.getHeaders().set(AdmissionControl.RETRY_AFTER, Long.toString(decision.retryAfterSeconds()));
+            response.getHeaders().setContentType(MediaType.TEXT_PLAIN);
+            DataBuffer body = response.bufferFactory()
+                    .wrap(decision.rejection().getReasonPhrase().getBytes(StandardCharsets.UTF_8));
+            return response.writeWith(Mono.just(body));
+        }
+        return chain.filter(exchange).doFinally(signal -> admissionControl.complete(decision, start));
+    }
+
+    private String client(ServerHttpRequest request) {
+        String client = clientHeader.isEmpty() ? null : request.getHeaders().getFirst(clientHeader);
+        if (client != null) {
+            return client;
+        }
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        return remoteAddress == null ? "unknown" : remoteAddress.getAddress().getHostAddress();
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.nn;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * Infrastructure of the {@code reactive} profile. Both web stacks are on the classpath, so the server is
+ * chosen explicitly: Netty event loops instead of Tomcat.
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveConfiguration {
+
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    /**
+     * Reactive counterpart of the pooled {@code RestTemplate}: the same connect/read bounds and pool size,
+     * without a thread per outstanding call.
+     */
+    @Bean
+    public WebClient webClient(WebClient.Builder webClientBuilder,
+                               @Value("${nn.http.connect-timeout}") Duration connectTimeout,
+                               @Value("${nn.http.read-timeout}") Duration readTimeout,
+                               @Value("${nn.http.max-connections}") int maxConnections) {
+        var httpClient = HttpClient.create(ConnectionProvider.builder("outbound")
+                        .maxConnections(maxConnections)
+                        .maxIdleTime(Duration.ofMinutes(1))
+                        .build())
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .responseTimeout(readTimeout);
+        return webClientBuilder
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+}
@@ -0,0 +1,267 @@
+package com.example.nn;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * {@link AccountRepository} of sharded mode: every account operation goes to the shard of {@link AccountShards}
+ * its id maps to, in the transaction of the calling thread when there is one. Operations over several
+ * accounts are split by shard; searches ask all shards at once and merge their pages. Concurrent updates are
+ * caught by the same version check as with JPA and fail with {@link ObjectOptimisticLockingFailureException}.
+ */
+public class ShardedAccountRepository implements AccountRepository {
+
+    private static final String SELECT = "select id, name, last_name, balances, version from account";
+
+    private static final String INSERT = AccountBulkService.INSERT;
+
+    private static final String UPDATE =
+            "update account set name = ?, last_name = ?, balances = ?, version = version + 1 where id = ? and version = ?";
+
+    private static final String DELETE = "delete from account where id = ?";
+
+    private static final String SEARCH = "select id, name, last_name from account"
+            + " where last_name like ? escape '!' and name like ? escape '!'";
+
+    private static final String AFTER = " and (last_name > ?"
+            + " or (last_name = ? and name > ?)"
+            + " or (last_name = ? and name = ? and id > ?))";
+
+    private static final String SEARCH_ORDER = " order by last_name, name, id limit ?";
+
+    private static final RowMapper<Account> ACCOUNT = (rs, row) -> {
+        Account account = new Account();
+        account.setId(rs.getObject(1, UUID.class));
+        account.setName(rs.getString(2));
+        account.setLastName(rs.getString(3));
+        account.setBalances(BalancesConverter.decode(rs.getBytes(4)));
+        account.setVersion(rs.getLong(5));
+        return account;
+    };
+
+    private static final RowMapper<AccountSummary> SUMMARY =
+            (rs, row) -> new AccountSummary(rs.getObject(1, UUID.class), rs.getString(2), rs.getString(3));
+
+    /**
+     * The {@code order by last_name, name, id} of the database, which compares ids as unsigned numbers.
+     */
+    static final Comparator<AccountSummary> SEARCH_COMPARATOR = Comparator.comparing(AccountSummary::getLastName)
+            .thenComparing(AccountSummary::getName)
+            .thenComparing(AccountSummary::getId, AccountShards::compareIds);
+
+    private final AccountShards shards;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public ShardedAccountRepository(AccountShards shards, ShardedTransactionManager transactionManager) {
+        this.shards = shards;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public <S extends Account> S save(S account) {
+        return transactionTemplate.execute(status -> {
+            write(shards.shardFor(id(account)), List.of(account));
+            return account;
+        });
+    }
+
+    /**
+     * Writes the accounts of each shard in one JDBC batch, all in one transaction.
+     */
+    @Override
+    public <S extends Account> Iterable<S> saveAll(Iterable<S> accounts) {
+        return transactionTemplate.execute(status -> {
+            List<S> saved = new ArrayList<>();
+            Map<AccountShards.Shard, List<Account>> byShard = new LinkedHashMap<>();
+            for (S account : accounts) {
+                byShard.computeIfAbsent(shards.shardFor(id(account)), shard -> new ArrayList<>()).add(account);
+                saved.add(account);
+            }
+            byShard.forEach(this::write);
+            return saved;
+        });
+    }
+
+    private void write(AccountShards.Shard shard, List<Account> accounts) {
+        List<Object[]> inserts = new ArrayList<>();
+        List<Object[]> updates = new ArrayList<>();
+        for (Account account : accounts) {
+            byte[] balances = BalancesConverter.encode(account.getBalances());
+            if (account.getVersion() == null) {
+                inserts.add(new Object[]{account.getId(), account.getName(), account.getLastName(), balances});
+            } else {
+                updates.add(new Object[]{account.getName(), account.getLastName(), balances, account.getId(),
+                        account.getVersion()});
+            }
+        }
+        if (!inserts.isEmpty()) {
+            shards.jdbc(shard).batchUpdate(INSERT, inserts);
+        }
+        if (!updates.isEmpty()) {
+            int[] updated = shards.jdbc(shard).batchUpdate(UPDATE, updates);
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] == 0) {
+                    throw new ObjectOptimisticLockingFailureException(Account.class, updates.get(i)[3]);
+                }
+            }
+        }
+        for (Account account : accounts) {
+            account.setVersion(account.getVersion() == null ? 0 : account.getVersion() + 1);
+        }
+    }
+
+    /**
+     * A new account gets its id here rather than from Hibernate, as the id decides its shard.
+     */
+    private static UUID id(Account account) {
+        if (account.getId() == null) {
+            account.setId(UUID.randomUUID());
+        }
+        return account.getId();
+    }
+
+    @Override
+    public Optional<Account> findById(UUID id) {
+        return shards.routed(() -> shards.jdbc(shards.shardFor(id)).query(SELECT + " where id = ?", ACCOUNT, id)
+                .stream()
+                .findFirst());
+    }
+
+    @Override
+    public boolean existsById(UUID id) {
+        return findById(id).isPresent();
+    }
+
+    @Override
+    public Iterable<Account> findAll() {
+        return shards.parallel((shard, routing) -> shard.getJdbcTemplate().query(SELECT, ACCOUNT).stream()
+                        .filter(account -> routing.routes(shard, account.getId()))
+                        .toList())
+                .stream()
+                .flatMap(List::stream)
+                .toList();
+    }
+
+    /**
+     * One {@code in} query per shard, on the calling thread so it reads in its transaction.
+     */
+    @Override
+    public Iterable<Account> findAllById(Iterable<UUID> ids) {
+        return shards.routed(() -> {
+            Map<AccountShards.Shard, List<UUID>> byShard = new LinkedHashMap<>();
+            ids.forEach(id -> byShard.computeIfAbsent(shards.shardFor(id), shard -> new ArrayList<>()).add(id));
+            List<Account> found = new ArrayList<>();
+            byShard.forEach((shard, shardIds) -> found.addAll(shards.jdbc(shard).query(
+                    SELECT + " where id in (" + String.join(", ", Collections.nCopies(shardIds.size(), "?")) + ")",
+                    ACCOUNT, shardIds.toArray())));
+            return found;
+        });
+    }
+
+    /**
+     * While accounts are being moved, shards also hold copies of accounts routed elsewhere, so the ids are
+     * counted one by one instead.
+     */
+    @Override
+    public long count() {
+        return shards.parallel((shard, routing) -> routing.clean()
+                        ? shard.getJdbcTemplate().queryForObject("select count(*) from account", Long.class)
+                        : shard.getJdbcTemplate().queryForList("select id from account", UUID.class).stream()
+                        .filter(id -> routing.routes(shard, id))
+                        .count())
+                .stream()
+                .mapToLong(Long::longValue)
+                .sum();
+    }
+
+    @Override
+    public void deleteById(UUID id) {
+        transactionTemplate.executeWithoutResult(status -> shards.jdbc(shards.shardFor(id)).update(DELETE, id));
+    }
+
+    @Override
+    public void delete(Account account) {
+        deleteById(account.getId());
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends UUID> ids) {
+        transactionTemplate.executeWithoutResult(status -> ids.forEach(id ->
+                shards.jdbc(shards.shardFor(id)).update(DELETE, id)));
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Account> accounts) {
+        List<UUID> ids = new ArrayList<>();
+        accounts.forEach(account -> ids.add(account.getId()));
+        deleteAllById(ids);
+    }
+
+    @Override
+    public void deleteAll() {
+        transactionTemplate.executeWithoutResult(status -> shards.all().forEach(shard ->
+                shards.jdbc(shard).update("delete from account")));
+    }
+
+    @Override
+    public List<AccountSummary> search(String lastName, String name, Pageable pageable) {
+        return merge(shards.parallel((shard, routing) -> search(shard, routing, lastName, name, null,
+                pageable.getPageSize())), pageable);
+    }
+
+    @Override
+    public List<AccountSummary> searchAfter(String lastName, String name, String afterLastName, String afterName,
+                                            UUID afterId, Pageable pageable) {
+        AccountSummary after = new AccountSummary(afterId, afterName, afterLastName);
+        return merge(shards.parallel((shard, routing) -> search(shard, routing, lastName, name, after,
+                pageable.getPageSize())), pageable);
+    }
+
+    /**
+     * The first {@code pageSize} matches of {@code shard} routed to it, reading on past the copies of moved
+     * accounts it may still hold.
+     */
+    private static List<AccountSummary> search(AccountShards.Shard shard, AccountShards.Routing routing,
+                                               String lastName, String name, AccountSummary after, int pageSize) {
+        List<AccountSummary> page = new ArrayList<>();
+        while (true) {
+            List<AccountSummary> rows = after == null
+                    ? shard.getJdbcTemplate().query(SEARCH + SEARCH_ORDER, SUMMARY, lastName, name, pageSize)
+                    : shard.getJdbcTemplate().query(SEARCH + AFTER + SEARCH_ORDER, SUMMARY, lastName, name,
+                    after.getLastName(), after.getLastName(), after.getName(), after.getLastName(), after.getName(),
+                    after.getId(), pageSize);
+            for (AccountSummary row : rows) {
+                if (page.size() < pageSize && routing.routes(shard, row.getId())) {
+                    page.add(row);
+                }
+            }
+            if (page.size() == pageSize || rows.size() < pageSize) {
+                return page;
+            }
+            after = rows.get(rows.size() - 1);
+        }
+    }
+
+    /**
+     * Every shard returns its first page in the same order, so the first page overall is among them.
+     */
+    private static List<AccountSummary> merge(List<List<AccountSummary>> pages, Pageable pageable) {
+        return pages.stream()
+                .flatMap(List::stream)
+                .sorted(SEARCH_COMPARATOR)
+                .limit(pageable.getPageSize())
+                .toList();
+    }
+}
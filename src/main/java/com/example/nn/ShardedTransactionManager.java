@@ -0,0 +1,156 @@
+package com.example.nn;
+
+import org.springframework.jdbc.datasource.ConnectionHolder;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.SmartTransactionObject;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Transactions over the shards of {@link AccountShards}, standing in for the JPA transaction manager in sharded
+ * mode so the transaction boundaries of {@link AccountService}, {@link AccountLedger} and
+ * {@link AccountBulkService} keep working.
+ * <p>
+ * A transaction starts without a connection. The first statement on a shard {@link #enlist enlists} it: a
+ * connection of that shard with auto-commit off is bound to the thread, where {@code JdbcTemplate} picks it
+ * up. Commit commits the enlisted shards one after another, so a transaction that wrote to several shards is
+ * atomic per shard only; a failure to commit a later shard leaves the earlier ones committed. The routing read
+ * lock is held from begin to completion, so {@link AccountShards#addShards} never moves an account under an
+ * open transaction.
+ */
+public class ShardedTransactionManager extends AbstractPlatformTransactionManager {
+
+    /**
+     * Shards enlisted in the transaction of the current thread, bound under this class as the key.
+     */
+    private static final class Enlisted {
+
+        private final List<DataSource> dataSources = new ArrayList<>();
+
+        private boolean rollbackOnly;
+    }
+
+    private static final class TransactionObject implements SmartTransactionObject {
+
+        private Enlisted enlisted;
+
+        @Override
+        public boolean isRollbackOnly() {
+            return enlisted.rollbackOnly;
+        }
+
+        @Override
+        public void flush() {
+        }
+    }
+
+    private final Lock routingLock;
+
+    public ShardedTransactionManager(Lock routingLock) {
+        this.routingLock = routingLock;
+    }
+
+    /**
+     * Binds a connection of {@code dataSource} to the transaction of the current thread, unless it already is
+     * or no sharded transaction is active, in which case statements run in auto-commit.
+     */
+    static void enlist(DataSource dataSource) {
+        Enlisted enlisted = (Enlisted) TransactionSynchronizationManager.getResource(ShardedTransactionManager.class);
+        if (enlisted == null || TransactionSynchronizationManager.hasResource(dataSource)) {
+            return;
+        }
+        try {
+            Connection connection = dataSource.getConnection();
+            connection.setAutoCommit(false);
+            TransactionSynchronizationManager.bindResource(dataSource, new ConnectionHolder(connection));
+            enlisted.dataSources.add(dataSource);
+        } catch (SQLException e) {
+            throw new CannotCreateTransactionException("Could not enlist account shard", e);
+        }
+    }
+
+    @Override
+    protected Object doGetTransaction() {
+        TransactionObject transaction = new TransactionObject();
+        transaction.enlisted = (Enlisted) TransactionSynchronizationManager.getResource(ShardedTransactionManager.class);
+        return transaction;
+    }
+
+    @Override
+    protected boolean isExistingTransaction(Object transaction) {
+        return ((TransactionObject) transaction).enlisted != null;
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        routingLock.lock();
+        Enlisted enlisted = new Enlisted();
+        ((TransactionObject) transaction).enlisted = enlisted;
+        TransactionSynchronizationManager.bindResource(ShardedTransactionManager.class, enlisted);
+    }
+
+    @Override
+    protected void doCommit(DefaultTransactionStatus status) {
+        for (DataSource dataSource : ((TransactionObject) status.getTransaction()).enlisted.dataSources) {
+            try {
+                connection(dataSource).commit();
+            } catch (SQLException e) {
+                throw new TransactionSystemException("Could not commit account shard", e);
+            }
+        }
+    }
+
+    @Override
+    protected void doRollback(DefaultTransactionStatus status) {
+        SQLException failure = null;
+        for (DataSource dataSource : ((TransactionObject) status.getTransaction()).enlisted.dataSources) {
+            try {
+                connection(dataSource).rollback();
+            } catch (SQLException e) {
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure != null) {
+            throw new TransactionSystemException("Could not roll back account shard", failure);
+        }
+    }
+
+    @Override
+    protected void doSetRollbackOnly(DefaultTransactionStatus status) {
+        ((TransactionObject) status.getTransaction()).enlisted.rollbackOnly = true;
+    }
+
+    @Override
+    protected void doCleanupAfterCompletion(Object transaction) {
+        TransactionSynchronizationManager.unbindResource(ShardedTransactionManager.class);
+        try {
+            for (DataSource dataSource : ((TransactionObject) transaction).enlisted.dataSources) {
+                Connection connection = ((ConnectionHolder) TransactionSynchronizationManager.unbindResource(dataSource))
+                        .getConnection();
+                try {
+                    connection.setAutoCommit(true);
+                } catch (SQLException e) {
+                    logger.debug("Could not reset auto-commit of account shard connection", e);
+                }
+                DataSourceUtils.releaseConnection(connection, null);
+            }
+        } finally {
+            routingLock.unlock();
+        }
+    }
+
+    private static Connection connection(DataSource dataSource) {
+        return ((ConnectionHolder) TransactionSynchronizationManager.getResource(dataSource)).getConnection();
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.nn;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+
+import java.time.Duration;
+
+/**
+ * Hash-sharded account storage, enabled with {@code nn.shards.count} above 1. Accounts then live in
+ * {@link AccountShards} instead of the primary database, reached through {@link ShardedAccountRepository} and
+ * {@link ShardedTransactionManager}, which take the place of the JPA repository and transaction manager, so
+ * the services above them are unchanged.
+ */
+@Configuration
+@Profile("!reactive")
+@ConditionalOnExpression("${nn.shards.count:1} > 1")
+public class ShardingConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public AccountShards accountShards(@Value("${nn.shards.url}") String url,
+                                       @Value("${nn.shards.count}") int count,
+                                       @Value("${nn.shards.pool-size}") int poolSize,
+                                       @Value("${nn.shards.rebalance-lock-timeout}") Duration lockTimeout,
+                                       @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        return new AccountShards(url, count, poolSize, lockTimeout, virtualThreads);
+    }
+
+    /**
+     * Named like the JPA transaction manager, which backs off, so every transaction template and the
+     * repositories use it.
+     */
+    @Bean
+    public ShardedTransactionManager transactionManager(AccountShards accountShards) {
+        return new ShardedTransactionManager(accountShards.routingLock().readLock());
+    }
+
+    @Bean
+    @Primary
+    public ShardedAccountRepository shardedAccountRepository(AccountShards accountShards,
+                                                             ShardedTransactionManager transactionManager) {
+        return new ShardedAccountRepository(accountShards, transactionManager);
+    }
+
+    @Bean
+    public ShardsEndpoint shardsEndpoint(AccountShards accountShards) {
+        return new ShardsEndpoint(accountShards);
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.nn;
+
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+
+import java.util.Map;
+
+/**
+ * {@code /actuator/shards}: accounts per shard on GET, and on POST with {@code {"count": m}} the rebalancing
+ * tool, growing the account storage to {@code m} shards with {@link AccountShards#addShards}. Shards added at
+ * run time are lost on restart unless {@code nn.shards.count} is raised to match and {@code nn.shards.url}
+ * points at persistent databases.
+ */
+@Endpoint(id = "shards")
+public class ShardsEndpoint {
+
+    private final AccountShards shards;
+
+    public ShardsEndpoint(AccountShards shards) {
+        this.shards = shards;
+    }
+
+    @ReadOperation
+    public Map<String, Object> shards() {
+        return Map.of("count", shards.count(),
+                "accounts", shards.parallel((shard, routing) -> shard.getJdbcTemplate()
+                        .queryForObject("select count(*) from account", Long.class)));
+    }
+
+    @WriteOperation
+    public Map<String, Object> rebalance(int count) {
+        long moved;
+        try {
+            moved = shards.addShards(count);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidEndpointRequestException(e.getMessage(), e.getMessage());
+        }
+        return Map.of("count", shards.count(), "moved", moved);
+    }
+}
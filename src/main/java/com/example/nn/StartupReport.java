@@ -0,0 +1,60 @@
+package com.example.nn;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aot.AotDetector;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long a new instance takes to become useful, measured from JVM start so class loading before Spring
+ * counts too: {@code nn.startup.ready} until the application is ready and {@code nn.startup.first-exchange}
+ * until its first exchange completed. Both are logged once, together with whether the AOT initializers and
+ * a CDS archive were used, so the fast-startup build can be compared with a regular one.
+ */
+@Slf4j
+@Component
+public class StartupReport {
+
+    private final MeterRegistry registry;
+
+    public StartupReport(ExchangeMetrics metrics, MeterRegistry registry) {
+        this.registry = registry;
+        metrics.onFirstExchange(this::firstExchange);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void ready(ApplicationReadyEvent event) {
+        long uptime = uptimeMillis();
+        TimeGauge.builder("nn.startup.ready", () -> uptime, TimeUnit.MILLISECONDS)
+                .description("Time from JVM start until the application was ready")
+                .register(registry);
+        log.info("Ready {} ms after JVM start, context started in {} ms (AOT: {}, CDS archive: {})", uptime,
+                event.getTimeTaken().toMillis(), AotDetector.useGeneratedArtifacts(), sharedArchive());
+    }
+
+    private void firstExchange() {
+        long uptime = uptimeMillis();
+        TimeGauge.builder("nn.startup.first-exchange", () -> uptime, TimeUnit.MILLISECONDS)
+                .description("Time from JVM start until the first exchange completed")
+                .register(registry);
+        log.info("First exchange completed {} ms after JVM start", uptime);
+    }
+
+    private static long uptimeMillis() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+
+    private static String sharedArchive() {
+        return ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+                .filter(argument -> argument.startsWith("-XX:SharedArchiveFile="))
+                .map(argument -> argument.substring("-XX:SharedArchiveFile=".length()))
+                .findFirst()
+                .orElse("none");
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.nn;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * {@code /actuator/valuation}: progress of the running {@link PortfolioValuation} and the report of the last
+ * one on GET; POST starts a run, or joins the running one, and answers with its progress right away.
+ */
+@Component
+@Profile("!reactive")
+@Endpoint(id = "valuation")
+public class ValuationEndpoint {
+
+    private final PortfolioValuation valuation;
+
+    public ValuationEndpoint(PortfolioValuation valuation) {
+        this.valuation = valuation;
+    }
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        return valuation.status();
+    }
+
+    @WriteOperation
+    public Map<String, Object> start() {
+        valuation.start();
+        return valuation.status();
+    }
+}
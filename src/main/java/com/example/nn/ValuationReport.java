@@ -0,0 +1,71 @@
+package com.example.nn;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Outcome of one run of {@link PortfolioValuation}. Only the first violations are listed, so the report stays
+ * small however many accounts break an invariant.
+ */
+@Getter
+@AllArgsConstructor
+public class ValuationReport {
+
+    private final Instant startedAt;
+
+    private final Instant completedAt;
+
+    /**
+     * Date and source of the rate table every account was valued with.
+     */
+    private final LocalDate ratesDate;
+
+    private final String ratesSource;
+
+    private final long accounts;
+
+    /**
+     * Sum of all balances held, by currency.
+     */
+    private final Map<Currency, BigDecimal> totals;
+
+    /**
+     * All accounts valued in PLN, each balance converted like an exchange, rounded down.
+     */
+    private final BigDecimal plnValue;
+
+    /**
+     * {@link #plnValue} at the USD mid rate, rounded down; {@code null} when USD is not quoted.
+     */
+    private final BigDecimal usdValue;
+
+    /**
+     * Number of accounts by PLN value, keyed by the upper bound of the bucket.
+     */
+    private final Map<String, Long> histogram;
+
+    /**
+     * Non-zero balances in currencies the rate table has no mid rate for, or too large to convert to PLN, left
+     * out of the values.
+     */
+    private final long unvaluedBalances;
+
+    private final long negativeBalanceAccounts;
+
+    /**
+     * Accounts whose stored balances are not whole minor units of the known currencies.
+     */
+    private final long malformedAccounts;
+
+    private final List<Violation> violations;
+
+    public record Violation(UUID id, String invariant) {
+    }
+}
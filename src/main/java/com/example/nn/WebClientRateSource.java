@@ -0,0 +1,67 @@
+package com.example.nn;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * NBP source of the {@code reactive} profile. The request itself is non-blocking; {@link #fetch()} waits for
+ * it only on the rate refresh thread, never on an event loop.
+ */
+@Component
+@Profile("reactive")
+public class WebClientRateSource implements RateSource {
+
+    private final WebClient webClient;
+
+    private final URI path;
+
+    private final String historyPath;
+
+    public WebClientRateSource(WebClient webClient,
+                               @Value("${nn.rates.nbp-url}") String path,
+                               @Value("${nn.rates.nbp-history-url}") String historyPath) {
+        this.webClient = webClient;
+        this.path = URI.create(path);
+        this.historyPath = historyPath;
+    }
+
+    @Override
+    public String getName() {
+        return "nbp";
+    }
+
+    @Override
+    public RateSnapshot fetch() {
+        return webClient.get()
+                .uri(path)
+                .retrieve()
+                .bodyToMono(RatesTable[].class)
+                .map(ratesTables -> RateSnapshot.of(ratesTables, getName(), Instant.now()))
+                .switchIfEmpty(Mono.error(() -> new RateUnavailableException("Empty rates response")))
+                .block();
+    }
+
+    @Override
+    public List<RateSnapshot> fetchRange(LocalDate from, LocalDate to) {
+        return NbpRanges.fetch(from, to, getName(), (start, end) -> webClient.get()
+                .uri(historyPath, start, end)
+                .exchangeToMono(response -> {
+                    if (response.statusCode().is2xxSuccessful()) {
+                        return response.bodyToMono(RatesTable[].class);
+                    }
+                    // NBP answers 404 for a range without any table, e.g. a long weekend
+                    return response.statusCode().value() == 404
+                            ? Mono.just(new RatesTable[0])
+                            : response.createError();
+                })
+                .block());
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.nn;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.util.MimeType;
+
+/**
+ * Binary encodings of the API payloads next to JSON, picked by {@code Content-Type} and {@code Accept}:
+ * {@value MediaType#APPLICATION_CBOR_VALUE} and {@value #APPLICATION_SMILE_VALUE}. Both carry the same object
+ * model as the JSON, but a decimal balance is a scale and an unscaled integer instead of digits, an account id
+ * is 16 raw bytes instead of a 36 character string, and Smile refers back to property names it already wrote.
+ * The mappers come from the same Boot builder as the JSON one, so {@code spring.jackson.*} applies to all
+ * three, and like JSON they are generated straight into the response stream.
+ */
+@Configuration
+public class WireFormatConfiguration {
+
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
+    public static final MediaType APPLICATION_SMILE = MediaType.parseMediaType(APPLICATION_SMILE_VALUE);
+
+    // the codecs fall back to the JSON types when given a mapper alone
+    private static final MimeType[] SMILE_MIME_TYPES = {
+            APPLICATION_SMILE, new MimeType("application", "*+x-jackson-smile")
+    };
+
+    @Bean
+    @Profile("!reactive")
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(cbor(builder));
+    }
+
+    @Bean
+    @Profile("!reactive")
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(smile(builder));
+    }
+
+    /**
+     * WebFlux has a Smile codec by default, here given the Boot configured mapper. Its Jackson CBOR codec
+     * cannot write a response publisher, so the reactive stack speaks Smile only.
+     */
+    @Bean
+    @Profile("reactive")
+    public CodecCustomizer smileCodecCustomizer(Jackson2ObjectMapperBuilder builder) {
+        ObjectMapper smileObjectMapper = smile(builder);
+        return configurer -> {
+            configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(smileObjectMapper, SMILE_MIME_TYPES));
+            configurer.defaultCodecs().jackson2SmileEncoder(new Jackson2SmileEncoder(smileObjectMapper, SMILE_MIME_TYPES));
+        };
+    }
+
+    static ObjectMapper cbor(Jackson2ObjectMapperBuilder builder) {
+        return builder.createXmlMapper(false).factory(new CBORFactory()).build();
+    }
+
+    static ObjectMapper smile(Jackson2ObjectMapperBuilder builder) {
+        return builder.createXmlMapper(false).factory(new SmileFactory()).build();
+    }
+}
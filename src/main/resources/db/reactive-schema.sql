@@ -0,0 +1,8 @@
+-- the servlet profile lets Hibernate create this table; R2DBC has no schema generation
+create table if not exists account (
+    id uuid not null primary key,
+    name varchar(255),
+    last_name varchar(255),
+    balances varbinary(255) not null,
+    version bigint
+);
@@ -0,0 +1,9 @@
+-- account table of one shard in sharded mode; unsharded, Hibernate creates it in the primary database
+create table if not exists account (
+    id uuid not null primary key,
+    name varchar(255),
+    last_name varchar(255),
+    balances varbinary(255) not null,
+    version bigint
+);
+create index if not exists account_last_name_name_idx on account (last_name, name, id);
@@ -0,0 +1,99 @@
+package com.example.nn;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "nn.account.import.batch-size=2")
+class AccountBulkServiceTest {
+
+    private final AccountBulkService accountBulkService;
+
+    private final AccountService accountService;
+
+    @MockBean
+    private RestTemplate restTemplate;
+
+    @Autowired
+    public AccountBulkServiceTest(AccountBulkService accountBulkService, AccountService accountService) {
+        this.accountBulkService = accountBulkService;
+        this.accountService = accountService;
+    }
+
+    @Test
+    void testCsvImportRoundTrip() throws Exception {
+        // given
+        var lastName = "Nowak-" + UUID.randomUUID();
+        var csv = "balance,name,lastName\n"
+                + "100.50,Jan," + lastName + "\n"
+                + "-5,Anna," + lastName + "\n"
+                + "200,\"Kowalski, \"\"Jr\"\"\"," + lastName + "\n"
+                + "abc,Ewa," + lastName + "\n"
+                + "300,Piotr," + lastName + "\n";
+
+        // when
+        var result = accountBulkService.importAccounts(AccountBulkService.Format.CSV,
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+        var exported = new ByteArrayOutputStream();
+        accountBulkService.export(AccountBulkService.Format.CSV, exported);
+
+        // then
+        assertThat(result.getImported()).isEqualTo(3);
+        assertThat(result.getRejected()).isEqualTo(2);
+        assertThat(result.getRejectedRows()).containsExactly(
+                new ImportResult.RejectedRow(2, Map.of("balance", "Balance must be more than zero")),
+                new ImportResult.RejectedRow(4, Map.of("balance", "Balance must be a number")));
+        var reader = new StringReader(exported.toString(StandardCharsets.UTF_8));
+        var header = Csv.readRecord(reader);
+        assertThat(header.subList(0, 5)).containsExactly("id", "name", "lastName", "plnBalance", "usdBalance");
+        var imported = new ArrayList<List<String>>();
+        for (var record = Csv.readRecord(reader); record != null; record = Csv.readRecord(reader)) {
+            if (record.get(2).equals(lastName)) {
+                imported.add(record);
+            }
+        }
+        assertThat(imported).extracting(record -> record.get(1) + "=" + record.get(3))
+                .containsExactlyInAnyOrder("Jan=100.5", "Kowalski, \"Jr\"=200", "Piotr=300");
+        assertThat(accountService.getAccount(imported.get(0).get(0))).isPresent();
+    }
+
+    @Test
+    void testNdjsonImportRejectsMalformedLines() throws Exception {
+        // given
+        var ndjson = """
+                {"name":"Jan","lastName":"Kowalski","balance":2000}
+                {"name":"Jan",
+                {"lastName":"Kowalski","balance":2000}
+
+                null
+                {"name":"Anna","lastName":"Nowak","balance":10.25}
+                """;
+
+        // when
+        var result = accountBulkService.importAccounts(AccountBulkService.Format.NDJSON,
+                new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)));
+        var exported = new ByteArrayOutputStream();
+        var count = accountBulkService.export(AccountBulkService.Format.NDJSON, exported);
+
+        // then
+        assertThat(result.getImported()).isEqualTo(2);
+        assertThat(result.getRejectedRows()).extracting(ImportResult.RejectedRow::row).containsExactly(2L, 3L, 5L);
+        assertThat(result.getRejectedRows().get(1).errors()).containsEntry("name", "Name is mandatory");
+        assertThat(result.getRejectedRows().get(2).errors()).containsEntry("row", "Record must be a JSON object");
+        assertThat(exported.toString(StandardCharsets.UTF_8).lines()).hasSize((int) count)
+                .anyMatch(line -> line.contains("\"name\":\"Anna\"") && line.contains("\"plnBalance\":10.25"));
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.nn;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AccountCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final AccountCache cache = new AccountCache(100, Duration.ofMinutes(1), Duration.ofMinutes(1), registry);
+
+    @Test
+    void testUnknownIdIsLoadedOnce() {
+        // given
+        var uuid = UUID.randomUUID();
+        var loads = new AtomicInteger();
+
+        // when
+        var first = cache.get(uuid, id -> {
+            loads.incrementAndGet();
+            return Optional.empty();
+        });
+        var second = cache.get(uuid, id -> {
+            loads.incrementAndGet();
+            return Optional.empty();
+        });
+
+        // then
+        assertThat(first).isEmpty();
+        assertThat(second).isEmpty();
+        assertThat(loads).hasValue(1);
+        assertThat(registry.get("cache.gets").tag("cache", "accounts").tag("result", "hit").functionCounter().count())
+                .isEqualTo(1);
+        assertThat(registry.get("cache.gets").tag("cache", "accounts").tag("result", "miss").functionCounter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void testOlderVersionDoesNotReplaceNewer() {
+        // given
+        var uuid = UUID.randomUUID();
+        var newer = account(uuid, 1900, 2L);
+        var older = account(uuid, 2000, 1L);
+
+        // when
+        cache.put(newer);
+        cache.put(older);
+
+        // then
+        assertThat(cache.get(uuid, id -> Optional.empty())).containsSame(newer);
+    }
+
+    @Test
+    void testPutReplacesNegativeEntry() {
+        // given
+        var uuid = UUID.randomUUID();
+        cache.get(uuid, id -> Optional.empty());
+        var created = account(uuid, 2000, 0L);
+
+        // when
+        cache.put(created);
+
+        // then
+        assertThat(cache.get(uuid, id -> Optional.empty())).containsSame(created);
+    }
+
+    private static Account account(UUID uuid, int pln, long version) {
+        var account = new Account(uuid, "Jan", "Kowalski", new BigDecimal(pln), BigDecimal.ZERO);
+        account.setVersion(version);
+        return account;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.nn;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.web.client.RestTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = "nn.exchange.retry.max-attempts=100")
+class AccountConcurrencyTest {
+
+    private final AccountService accountService;
+
+    @MockBean
+    private RestTemplate restTemplate;
+
+    @Autowired
+    public AccountConcurrencyTest(AccountService accountService) {
+        this.accountService = accountService;
+    }
+
+    @Test
+    void testConcurrentExchangesOnOneAccountLoseNoUpdates() throws Exception {
+        // given
+        var ratesTable = new RatesTable(LocalDate.now(), List.of(new RatesTable.Rate("USD", new BigDecimal(4))));
+        when(restTemplate.getForObject(any(), any())).thenReturn(new RatesTable[]{ratesTable});
+        var account = accountService.createAccount(new CreateAccountRequest("Jan", "Kowalski", new BigDecimal(2000)));
+        var uuid = account.getId().toString();
+        var threads = 16;
+        var executor = Executors.newFixedThreadPool(threads);
+
+        // when
+        List<Future<Account>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Callable<Account> exchange = () -> accountService.exchange(uuid, new BigDecimal(100),
+                    Currency.PLN, Currency.USD);
+            results.add(executor.submit(exchange));
+        }
+        int succeeded = 0;
+        for (Future<Account> result : results) {
+            try {
+                result.get();
+                succeeded++;
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(OptimisticLockingFailureException.class);
+            }
+        }
+        executor.shutdown();
+
+        // then
+        var after = accountService.getAccount(uuid).orElseThrow();
+        assertThat(succeeded).isPositive();
+        assertThat(after.getPlnBalance()).isEqualByComparingTo(new BigDecimal(2000 - 100 * succeeded));
+        assertThat(after.getUsdBalance()).isEqualByComparingTo(new BigDecimal(25 * succeeded));
+    }
+}
@@ -1,24 +1,38 @@
 package com.example.nn;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
-@WebMvcTest
+@WebMvcTest(AccountController.class)
+@Import({IdempotencyStore.class, SimpleMeterRegistry.class, WireFormatConfiguration.class})
 class AccountControllerTest {
 
     AccountController accountController;
@@ -28,6 +42,15 @@ class AccountControllerTest {
     @MockBean
     private AccountService accountService;
 
+    @MockBean
+    private AccountBulkService accountBulkService;
+
+    @MockBean
+    private BalanceEventBus balanceEventBus;
+
+    @MockBean
+    private ExchangeOrderQueue exchangeOrderQueue;
+
     @Autowired
     public AccountControllerTest(AccountController accountController, MockMvc mvc) {
         this.accountController = accountController;
@@ -53,6 +76,41 @@ class AccountControllerTest {
                 .andExpect(jsonPath("$.usdBalance", is(0)));
     }
 
+    @Test
+    void testBinaryWireFormats() throws Exception {
+        // given
+        var uuid = UUID.randomUUID();
+        var account = new Account(uuid, "Jan", "Kowalski", new BigDecimal("1899.75"), new BigDecimal("24.09"));
+        var cbor = new ObjectMapper(new CBORFactory());
+        var smile = new ObjectMapper(new SmileFactory());
+        when(accountService.getAccount(uuid.toString())).thenReturn(Optional.of(account));
+        when(accountService.exchange(any(), any(), any(), any())).thenReturn(account);
+
+        // when
+        var exchanged = mvc.perform(MockMvcRequestBuilders.put("/account/exchange")
+                        .content(cbor.writeValueAsBytes(new ExchangeRequest(uuid.toString(), new BigDecimal("100.25"),
+                                Currency.PLN)))
+                        .contentType(MediaType.APPLICATION_CBOR).accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+        var found = mvc.perform(MockMvcRequestBuilders.get("/account/" + uuid)
+                        .accept(WireFormatConfiguration.APPLICATION_SMILE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(WireFormatConfiguration.APPLICATION_SMILE))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        // then
+        verify(accountService).exchange(uuid.toString(), new BigDecimal("100.25"), Currency.PLN, Currency.USD);
+        for (var read : List.of(cbor.readTree(exchanged), smile.readTree(found))) {
+            assertThat(cbor.treeToValue(read.get("id"), UUID.class)).isEqualTo(uuid);
+            assertThat(read.get("id").isBinary()).isTrue();
+            assertThat(read.get("plnBalance").decimalValue()).isEqualByComparingTo("1899.75");
+            assertThat(read.get("usdBalance").decimalValue()).isEqualByComparingTo("24.09");
+        }
+        assertThat(exchanged.length).isLessThan(new ObjectMapper().writeValueAsBytes(account).length);
+    }
+
     @Test
     void testGetAccountNotFound() throws Exception {
         // given
@@ -67,6 +125,24 @@ class AccountControllerTest {
                 .andExpect(content().string("Account not found"));
     }
 
+    @Test
+    void testSearchAccounts() throws Exception {
+        // given
+        var uuid = UUID.randomUUID();
+        var page = new AccountPage(List.of(new AccountSummary(uuid, "Jan", "Kowalski")), "next");
+
+        // when
+        when(accountService.search("Kow", null, "previous", 1)).thenReturn(page);
+
+        // then
+        mvc.perform(MockMvcRequestBuilders.get("/account?lastName=Kow&page=previous&size=1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accounts[0].id", is(uuid.toString())))
+                .andExpect(jsonPath("$.accounts[0].lastName", is("Kowalski")))
+                .andExpect(jsonPath("$.accounts[0].plnBalance").doesNotExist())
+                .andExpect(jsonPath("$.nextPage", is("next")));
+    }
+
     @Test
     void testCreateAccount() throws Exception {
         // given
@@ -112,7 +188,7 @@ class AccountControllerTest {
         var expectedAccount = new Account(uuid, "Jan", "Kowalski", new BigDecimal(1900), new BigDecimal(25));
 
         // when
-        when(accountService.exchange(any(), any(), any())).thenReturn(expectedAccount);
+        when(accountService.exchange(any(), any(), any(), any())).thenReturn(expectedAccount);
 
         // then
         mvc.perform(MockMvcRequestBuilders.put("/account/exchange")
@@ -126,6 +202,155 @@ class AccountControllerTest {
                 .andExpect(jsonPath("$.usdBalance", is(25)));
     }
 
+    @Test
+    void testExchangeRetryWithIdempotencyKey() throws Exception {
+        // given
+        var uuid = UUID.randomUUID();
+        var exchangeRequest = new ExchangeRequest(uuid.toString(), new BigDecimal(100), Currency.PLN);
+        var expectedAccount = new Account(uuid, "Jan", "Kowalski", new BigDecimal(1900), new BigDecimal(25));
+        var key = UUID.randomUUID().toString();
+
+        // when
+        when(accountService.exchange(any(), any(), any(), any())).thenReturn(expectedAccount);
+        for (int i = 0; i < 2; i++) {
+            mvc.perform(MockMvcRequestBuilders.put("/account/exchange")
+                            .header(IdempotencyStore.HEADER, key)
+                            .content(asJsonString(exchangeRequest))
+                            .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.plnBalance", is(1900)))
+                    .andExpect(jsonPath("$.usdBalance", is(25)));
+        }
+
+        // then
+        verify(accountService, times(1)).exchange(uuid.toString(), new BigDecimal(100), Currency.PLN, Currency.USD);
+    }
+
+    @Test
+    void testAsyncExchangeIsAcceptedAndLongPolled() throws Exception {
+        // given
+        var uuid = UUID.randomUUID();
+        var exchangeRequest = new ExchangeRequest(uuid.toString(), new BigDecimal(100), Currency.PLN);
+        var order = new ExchangeOrder(UUID.randomUUID(), exchangeRequest);
+        when(exchangeOrderQueue.submit(any())).thenReturn(Optional.of(order));
+        when(exchangeOrderQueue.find(order.getOrderId())).thenReturn(Optional.of(order));
+
+        // when
+        mvc.perform(MockMvcRequestBuilders.put("/account/exchange")
+                        .header(AccountController.PREFER, AccountController.RESPOND_ASYNC)
+                        .content(asJsonString(exchangeRequest))
+                        .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/account/exchange/orders/" + order.getOrderId()))
+                .andExpect(jsonPath("$.orderId", is(order.getOrderId().toString())))
+                .andExpect(jsonPath("$.status", is("QUEUED")));
+        var poll = mvc.perform(MockMvcRequestBuilders.get("/account/exchange/orders/" + order.getOrderId())
+                        .param("wait", "PT5S"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        order.complete(ExchangeResult.of(ExchangeResult.Status.OK,
+                new Account(uuid, "Jan", "Kowalski", new BigDecimal(1900), new BigDecimal(25))));
+
+        // then
+        mvc.perform(MockMvcRequestBuilders.asyncDispatch(poll))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status", is("DONE")))
+                .andExpect(jsonPath("$.result.plnBalance", is(1900)));
+        var unknown = mvc.perform(MockMvcRequestBuilders.get("/account/exchange/orders/" + UUID.randomUUID()))
+                .andReturn();
+        mvc.perform(MockMvcRequestBuilders.asyncDispatch(unknown))
+                .andExpect(status().isNotFound());
+        verify(accountService, times(0)).exchange(any(), any(), any(), any());
+    }
+
+    @Test
+    void testIdempotencyKeyReusedForDifferentRequest() throws Exception {
+        // given
+        var uuid = UUID.randomUUID();
+        var key = UUID.randomUUID().toString();
+        var account = new Account(uuid, "Jan", "Kowalski", new BigDecimal(1900), new BigDecimal(25));
+        when(accountService.exchange(any(), any(), any(), any())).thenReturn(account);
+        mvc.perform(MockMvcRequestBuilders.put("/account/exchange")
+                        .header(IdempotencyStore.HEADER, key)
+                        .content(asJsonString(new ExchangeRequest(uuid.toString(), new BigDecimal(100), Currency.PLN)))
+                        .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        // when then
+        mvc.perform(MockMvcRequestBuilders.put("/account/exchange")
+                        .header(IdempotencyStore.HEADER, key)
+                        .content(asJsonString(new ExchangeRequest(uuid.toString(), new BigDecimal(200), Currency.PLN)))
+                        .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isUnprocessableEntity());
+    }
+
+    @Test
+    void testAsyncExchangeWithIdempotencyKeyIsRejected() throws Exception {
+        // given
+        var exchangeRequest = new ExchangeRequest(UUID.randomUUID().toString(), new BigDecimal(100), Currency.PLN);
+
+        // when then
+        mvc.perform(MockMvcRequestBuilders.put("/account/exchange")
+                        .header(AccountController.PREFER, AccountController.RESPOND_ASYNC)
+                        .header(IdempotencyStore.HEADER, UUID.randomUUID().toString())
+                        .content(asJsonString(exchangeRequest))
+                        .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        verify(exchangeOrderQueue, times(0)).submit(any());
+        verify(accountService, times(0)).exchange(any(), any(), any(), any());
+    }
+
+    @Test
+    void testExchangeToNamedCurrency() throws Exception {
+        // given
+        var uuid = UUID.randomUUID();
+        var exchangeRequest = new ExchangeRequest(uuid.toString(), new BigDecimal(100), Currency.PLN, Currency.EUR);
+        var expectedAccount = new Account(uuid, "Jan", "Kowalski", new BigDecimal(1900), new BigDecimal(0));
+        expectedAccount.setBalance(Currency.EUR, new BigDecimal("21.8"));
+
+        // when
+        when(accountService.exchange(uuid.toString(), new BigDecimal(100), Currency.PLN, Currency.EUR))
+                .thenReturn(expectedAccount);
+
+        // then
+        mvc.perform(MockMvcRequestBuilders.put("/account/exchange")
+                        .content(asJsonString(exchangeRequest))
+                        .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.plnBalance", is(1900)))
+                .andExpect(jsonPath("$.eurBalance", is(21.8)))
+                .andExpect(jsonPath("$.chfBalance", is(0)));
+    }
+
+    @Test
+    void testExchangeToSameCurrency() throws Exception {
+        // given
+        var exchangeRequest = new ExchangeRequest(UUID.randomUUID().toString(), new BigDecimal(100),
+                Currency.EUR, Currency.EUR);
+
+        // when then
+        mvc.perform(MockMvcRequestBuilders.put("/account/exchange")
+                        .content(asJsonString(exchangeRequest))
+                        .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.distinctCurrencies", is("From and to must differ")));
+    }
+
+    @Test
+    void testExchangeWithMoreThanTwoDecimalsIsRejected() throws Exception {
+        // given
+        var exchangeRequest = new ExchangeRequest(UUID.randomUUID().toString(), new BigDecimal("100.255"),
+                Currency.PLN);
+
+        // when then
+        mvc.perform(MockMvcRequestBuilders.put("/account/exchange")
+                        .content(asJsonString(exchangeRequest))
+                        .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.amount", is("Amount must have at most 13 integer digits and 2 decimal places")));
+        verify(accountService, times(0)).exchange(any(), any(), any(), any());
+    }
+
     @Test
     void testExchangeCurrencyMissingProperties() throws Exception {
         // given
@@ -141,6 +366,74 @@ class AccountControllerTest {
                 .andExpect(jsonPath("$.from", is("From is mandatory")));
     }
 
+    @Test
+    void testExchangeBatch() throws Exception {
+        // given
+        var uuid = UUID.randomUUID();
+        var exchangeRequests = List.of(
+                new ExchangeRequest(uuid.toString(), new BigDecimal(100), Currency.PLN),
+                new ExchangeRequest("not-a-uuid", new BigDecimal(100), Currency.PLN));
+        var results = List.of(
+                ExchangeResult.of(ExchangeResult.Status.OK,
+                        new Account(uuid, "Jan", "Kowalski", new BigDecimal(1900), new BigDecimal(25))),
+                ExchangeResult.failed("not-a-uuid", ExchangeResult.Status.INVALID, "uuid is malformed"));
+
+        // when
+        when(accountService.exchangeBatch(anyList())).thenReturn(results);
+
+        // then
+        mvc.perform(MockMvcRequestBuilders.put("/account/exchange/batch")
+                        .content(asJsonString(exchangeRequests))
+                        .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].uuid", is(uuid.toString())))
+                .andExpect(jsonPath("$[0].status", is("OK")))
+                .andExpect(jsonPath("$[0].plnBalance", is(1900)))
+                .andExpect(jsonPath("$[0].usdBalance", is(25)))
+                .andExpect(jsonPath("$[1].status", is("INVALID")))
+                .andExpect(jsonPath("$[1].message", is("uuid is malformed")));
+    }
+
+    @Test
+    void testExchangeBatchStreamReportsMalformedLinesAsInvalid() throws Exception {
+        // given
+        var uuid = UUID.randomUUID();
+        var body = asJsonString(new ExchangeRequest(uuid.toString(), new BigDecimal(100), Currency.PLN)) + "\n"
+                + "{\"uuid\": \n"
+                + "null\n"
+                + "\n"
+                + asJsonString(new ExchangeRequest(uuid.toString(), new BigDecimal(50), Currency.PLN)) + "\n";
+        var received = new ArrayList<ExchangeRequest>();
+        doAnswer(invocation -> {
+            Iterator<ExchangeRequest> requests = invocation.getArgument(0);
+            Consumer<ExchangeResult> sink = invocation.getArgument(1);
+            requests.forEachRemaining(exchangeRequest -> {
+                received.add(exchangeRequest);
+                sink.accept(exchangeRequest == null
+                        ? ExchangeResult.failed(null, ExchangeResult.Status.INVALID, "malformed")
+                        : ExchangeResult.failed(exchangeRequest.getUuid(), ExchangeResult.Status.NOT_FOUND, "missing"));
+            });
+            return null;
+        }).when(accountService).exchangeBatch(any(Iterator.class), any());
+
+        // when
+        var result = mvc.perform(MockMvcRequestBuilders.put("/account/exchange/batch")
+                        .content(body)
+                        .contentType(MediaType.APPLICATION_NDJSON).accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // then
+        mvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                .andExpect(status().isOk());
+        assertThat(result.getResponse().getContentAsString().lines()).hasSize(4);
+        assertThat(received).hasSize(4);
+        assertThat(received.get(0).getAmount()).isEqualByComparingTo(new BigDecimal(100));
+        assertThat(received.get(1)).isNull();
+        assertThat(received.get(2)).isNull();
+        assertThat(received.get(3).getAmount()).isEqualByComparingTo(new BigDecimal(50));
+    }
+
     public static String asJsonString(final Object obj) {
         try {
             return new ObjectMapper().writeValueAsString(obj);
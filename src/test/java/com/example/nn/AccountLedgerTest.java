@@ -0,0 +1,120 @@
+package com.example.nn;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AccountLedgerTest {
+
+    private static final RateSnapshot RATES = new RateSnapshot(Map.of(Currency.USD, new BigDecimal(4)),
+            LocalDate.now(), "test", Instant.now());
+
+    private final AccountRepository accountRepository = mock(AccountRepository.class);
+
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+    @SuppressWarnings("unchecked")
+    private final ObjectProvider<ExchangeJournal> journal = mock(ObjectProvider.class);
+
+    private final BalanceEventBus events = mock(BalanceEventBus.class);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testExchangeInMemory() throws Exception {
+        // given
+        var uuid = UUID.randomUUID();
+        when(accountRepository.findById(uuid))
+                .thenReturn(Optional.of(new Account(uuid, "Jan", "Kowalski", new BigDecimal(2000), new BigDecimal(0))));
+        var ledger = ledger();
+
+        // when
+        var toUsd = ledger.exchange(uuid, 100_00, Currency.PLN, Currency.USD, RATES).orElseThrow();
+        var tooMuch = ledger.exchange(uuid, 26_00, Currency.USD, Currency.PLN, RATES).orElseThrow();
+
+        // then
+        assertThat(toUsd.isApplied()).isTrue();
+        assertThat(toUsd.getAccount().getPlnBalance()).isEqualByComparingTo(new BigDecimal(1900));
+        assertThat(toUsd.getAccount().getUsdBalance()).isEqualByComparingTo(new BigDecimal(25));
+        assertThat(tooMuch.isApplied()).isFalse();
+        assertThat(ledger.exchange(UUID.randomUUID(), 1_00, Currency.PLN, Currency.USD, RATES)).isEmpty();
+        verify(accountRepository, never()).saveAll(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRecoversUnflushedBalancesFromReplayLog() throws Exception {
+        // given
+        var uuid = UUID.randomUUID();
+        when(accountRepository.findById(uuid))
+                .thenReturn(Optional.of(new Account(uuid, "Jan", "Kowalski", new BigDecimal(2000), new BigDecimal(0))));
+        when(accountRepository.findAllById(any()))
+                .thenAnswer(invocation -> List.of(new Account(uuid, "Jan", "Kowalski", new BigDecimal(2000), new BigDecimal(0))));
+        var crashed = ledger();
+        crashed.exchange(uuid, 100_00, Currency.PLN, Currency.USD, RATES);
+        crashed.exchange(uuid, 5_00, Currency.USD, Currency.PLN, RATES);
+
+        // when
+        var recovered = ledger();
+
+        // then
+        ArgumentCaptor<Iterable<Account>> saved = ArgumentCaptor.forClass(Iterable.class);
+        verify(accountRepository).saveAll(saved.capture());
+        var account = saved.getValue().iterator().next();
+        assertThat(account.getPlnBalance()).isEqualByComparingTo(new BigDecimal(1920));
+        assertThat(account.getUsdBalance()).isEqualByComparingTo(new BigDecimal(20));
+        assertThat(recovered.find(uuid).orElseThrow().getPlnBalance()).isEqualByComparingTo(new BigDecimal(1920));
+        try (var segments = Files.list(directory)) {
+            assertThat(segments.filter(file -> file.toFile().length() > 0)).isEmpty();
+        }
+    }
+
+    @Test
+    void testDropsAccountsUnchangedSinceLastFlush() throws Exception {
+        // given
+        var uuid = UUID.randomUUID();
+        when(accountRepository.findById(uuid))
+                .thenReturn(Optional.of(new Account(uuid, "Jan", "Kowalski", new BigDecimal(2000), new BigDecimal(0))));
+        when(accountRepository.findAllById(any()))
+                .thenAnswer(invocation -> List.of(new Account(uuid, "Jan", "Kowalski", new BigDecimal(2000), new BigDecimal(0))));
+        var ledger = ledger();
+        ledger.exchange(uuid, 100_00, Currency.PLN, Currency.USD, RATES);
+
+        // when
+        ledger.flush();
+        ledger.exchange(uuid, 100_00, Currency.PLN, Currency.USD, RATES);
+        ledger.flush();
+        ledger.flush();
+        ledger.exchange(uuid, 100_00, Currency.PLN, Currency.USD, RATES);
+
+        // then
+        verify(accountRepository, times(2)).findById(uuid);
+    }
+
+    private AccountLedger ledger() throws Exception {
+        var ledger = new AccountLedger(accountRepository, journal, events, transactionManager, directory, 8);
+        ledger.recover();
+        return ledger;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.nn;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.client.RestTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class AccountSearchTest {
+
+    private final AccountService accountService;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    private RestTemplate restTemplate;
+
+    @Autowired
+    public AccountSearchTest(AccountService accountService, JdbcTemplate jdbcTemplate) {
+        this.accountService = accountService;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Test
+    void testKeysetPagesByLastNameAndName() {
+        // given
+        var lastName = "Search-" + UUID.randomUUID();
+        for (String name : List.of("Ewa", "Adam", "Jan", "Jan", "Anna")) {
+            accountService.createAccount(new CreateAccountRequest(name, lastName, new BigDecimal(100)));
+        }
+        accountService.createAccount(new CreateAccountRequest("Jan", lastName + "x", new BigDecimal(100)));
+
+        // when
+        var pages = new ArrayList<AccountPage>();
+        String page = null;
+        do {
+            var result = accountService.search(lastName.substring(0, 20), null, page, 2);
+            pages.add(result);
+            page = result.getNextPage();
+        } while (page != null);
+        var janOnly = accountService.search(lastName, "J", null, 10);
+
+        // then
+        assertThat(pages).hasSize(3);
+        assertThat(pages).flatExtracting(AccountPage::getAccounts)
+                .extracting(account -> account.getName() + "/" + account.getLastName().substring(lastName.length()))
+                .containsExactly("Adam/", "Anna/", "Ewa/", "Jan/", "Jan/", "Jan/x");
+        assertThat(janOnly.getAccounts()).hasSize(3).allMatch(account -> account.getName().equals("Jan"));
+        assertThat(janOnly.getNextPage()).isNull();
+    }
+
+    @Test
+    void testLikeWildcardsAreLiteral() {
+        // given
+        var lastName = "100%_" + UUID.randomUUID();
+        accountService.createAccount(new CreateAccountRequest("Jan", lastName, new BigDecimal(100)));
+
+        // when
+        var literal = accountService.search("100%_", null, null, 10);
+        var wildcard = accountService.search("1_0", null, null, 10);
+
+        // then
+        assertThat(literal.getAccounts()).extracting(AccountSummary::getLastName).contains(lastName);
+        assertThat(wildcard.getAccounts()).extracting(AccountSummary::getLastName).doesNotContain(lastName);
+    }
+
+    @Test
+    void testNameIndexIsCreated() {
+        // when
+        var columns = jdbcTemplate.queryForList("select column_name from information_schema.index_columns"
+                + " where index_name = 'ACCOUNT_LAST_NAME_NAME_IDX' order by ordinal_position", String.class);
+
+        // then
+        assertThat(columns).containsExactly("LAST_NAME", "NAME", "ID");
+        assertThatThrownBy(() -> accountService.search(null, null, "not-a-page", 10))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testPageTokenCarriesAnyName() {
+        // given
+        var longName = "Ż".repeat(70_000);
+        var last = new AccountSummary(UUID.randomUUID(), null, longName);
+
+        // when
+        var parsed = AccountPage.parsePosition(AccountPage.position(last));
+
+        // then
+        assertThat(parsed.getId()).isEqualTo(last.getId());
+        assertThat(parsed.getName()).isNull();
+        assertThat(parsed.getLastName()).isEqualTo(longName);
+    }
+}
@@ -1,20 +1,33 @@
 package com.example.nn;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.crossstore.ChangeSetPersister;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.client.RestTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @SpringBootTest
@@ -28,9 +41,22 @@ class AccountServiceTest {
     @MockBean
     private RestTemplate restTemplate;
 
+    @MockBean
+    private ExchangeJournal journal;
+
+    private final MeterRegistry meterRegistry;
+
+    private final RateProvider rateProvider;
+
+    private final BalanceEventBus balanceEventBus;
+
     @Autowired
-    public AccountServiceTest(AccountService accountService) {
+    public AccountServiceTest(AccountService accountService, MeterRegistry meterRegistry, RateProvider rateProvider,
+                              BalanceEventBus balanceEventBus) {
         this.accountService = accountService;
+        this.meterRegistry = meterRegistry;
+        this.rateProvider = rateProvider;
+        this.balanceEventBus = balanceEventBus;
     }
 
     @Test
@@ -48,6 +74,24 @@ class AccountServiceTest {
         result.ifPresent(account -> assertThat(account.getId()).isEqualTo(uuid));
     }
 
+    @Test
+    void testGetAccountIsReadThroughCache() {
+        // given
+        var uuid = UUID.randomUUID();
+        var expectedAccount = new Account(uuid, "Jan", "Kowalski", new BigDecimal(2000), new BigDecimal(0));
+
+        when(accountRepository.findById(uuid)).thenReturn(Optional.of(expectedAccount));
+
+        // when
+        var first = accountService.getAccount(uuid.toString());
+        var second = accountService.getAccount(uuid.toString());
+
+        // then
+        assertThat(first).containsSame(expectedAccount);
+        assertThat(second).containsSame(expectedAccount);
+        verify(accountRepository, times(1)).findById(uuid);
+    }
+
     @Test
     void testCreateAccount() {
         // given
@@ -73,6 +117,27 @@ class AccountServiceTest {
         assertThat(result.getUsdBalance()).isEqualTo(usdBalance);
     }
 
+    @Test
+    void testCreateAccountPublishesBalanceEvent() throws InterruptedException {
+        // given
+        var uuid = UUID.randomUUID();
+        var batches = new LinkedBlockingQueue<BalanceBatch>();
+        var subscription = balanceEventBus.subscribe(List.of(uuid), () -> true, batches::add, () -> {
+        });
+        when(accountRepository.save(any()))
+                .thenReturn(new Account(uuid, "Jan", "Kowalski", new BigDecimal(2000), BigDecimal.ZERO));
+
+        // when
+        accountService.createAccount(new CreateAccountRequest("Jan", "Kowalski", new BigDecimal(2000)));
+        var batch = batches.poll(5, TimeUnit.SECONDS);
+        subscription.close();
+
+        // then
+        assertThat(batch.getEvents()).singleElement()
+                .satisfies(event -> assertThat(event.getAccountId()).isEqualTo(uuid))
+                .satisfies(event -> assertThat(event.getBalanceView()).containsEntry("plnBalance", new BigDecimal(2000)));
+    }
+
     @Test
     void testExchangeFromPln() throws ChangeSetPersister.NotFoundException {
         // given
@@ -87,8 +152,8 @@ class AccountServiceTest {
         var usdBalanceAfter = new BigDecimal(25);
         var accountAfter = new Account(uuid, name, lastName, plnBalanceAfter, usdBalanceAfter);
 
-        RatesResponse.Rate rate = new RatesResponse.Rate(new BigDecimal(4), LocalDate.now());
-        var ratesResponse = new RatesResponse(List.of(rate));
+        var ratesTable = new RatesTable(LocalDate.now(), List.of(new RatesTable.Rate("USD", new BigDecimal(4))));
+        var ratesResponse = new RatesTable[]{ratesTable};
 
         var amount = new BigDecimal(100);
         var from = Currency.PLN;
@@ -99,7 +164,7 @@ class AccountServiceTest {
         when(restTemplate.getForObject(any(), any())).thenReturn(ratesResponse);
 
         // when
-        var result = accountService.exchange(uuid.toString(), amount, from);
+        var result = accountService.exchange(uuid.toString(), amount, from, from.counterpart());
 
         // then
         assertThat(result).isNotNull();
@@ -110,6 +175,27 @@ class AccountServiceTest {
         assertThat(result.getUsdBalance()).isEqualTo(usdBalanceAfter);
     }
 
+    @Test
+    void testExchangeIsJournaledOnceCommitted() throws ChangeSetPersister.NotFoundException {
+        // given
+        var uuid = UUID.randomUUID();
+        var account = new Account(uuid, "Jan", "Kowalski", new BigDecimal(2000), new BigDecimal(0));
+        var ratesTable = new RatesTable(LocalDate.now(), List.of(new RatesTable.Rate("USD", new BigDecimal(4))));
+        var inTransaction = new ArrayList<Boolean>();
+
+        when(accountRepository.findById(any())).thenReturn(Optional.of(account));
+        when(accountRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(restTemplate.getForObject(any(), any())).thenReturn(new RatesTable[]{ratesTable});
+        doAnswer(invocation -> inTransaction.add(TransactionSynchronizationManager.isActualTransactionActive()))
+                .when(journal).append(eq(uuid), anyLong(), any(), any(), anyLong(), anyLong(), anyLong(), anyLong());
+
+        // when
+        accountService.exchange(uuid.toString(), new BigDecimal(100), Currency.PLN, Currency.USD);
+
+        // then
+        assertThat(inTransaction).containsExactly(false);
+    }
+
     @Test
     void testExchangeFromUsd() throws ChangeSetPersister.NotFoundException {
         // given
@@ -124,8 +210,8 @@ class AccountServiceTest {
         var usdBalanceAfter = new BigDecimal(0);
         var accountAfter = new Account(uuid, name, lastName, plnBalanceAfter, usdBalanceAfter);
 
-        RatesResponse.Rate rate = new RatesResponse.Rate(new BigDecimal(4), LocalDate.now());
-        var ratesResponse = new RatesResponse(List.of(rate));
+        var ratesTable = new RatesTable(LocalDate.now(), List.of(new RatesTable.Rate("USD", new BigDecimal(4))));
+        var ratesResponse = new RatesTable[]{ratesTable};
 
         var amount = new BigDecimal(25);
         var from = Currency.USD;
@@ -136,7 +222,7 @@ class AccountServiceTest {
         when(restTemplate.getForObject(any(), any())).thenReturn(ratesResponse);
 
         // when
-        var result = accountService.exchange(uuid.toString(), amount, from);
+        var result = accountService.exchange(uuid.toString(), amount, from, from.counterpart());
 
         // then
         assertThat(result).isNotNull();
@@ -161,8 +247,8 @@ class AccountServiceTest {
         var usdBalanceAfter = new BigDecimal(0);
         var accountAfter = new Account(uuid, name, lastName, plnBalanceAfter, usdBalanceAfter);
 
-        RatesResponse.Rate rate = new RatesResponse.Rate(new BigDecimal(4), LocalDate.now());
-        var ratesResponse = new RatesResponse(List.of(rate));
+        var ratesTable = new RatesTable(LocalDate.now(), List.of(new RatesTable.Rate("USD", new BigDecimal(4))));
+        var ratesResponse = new RatesTable[]{ratesTable};
 
         var amount = new BigDecimal(100);
         var from = Currency.PLN;
@@ -173,7 +259,7 @@ class AccountServiceTest {
         when(restTemplate.getForObject(any(), any())).thenReturn(ratesResponse);
 
         // when
-        var result = accountService.exchange(uuid.toString(), amount, from);
+        var result = accountService.exchange(uuid.toString(), amount, from, from.counterpart());
 
         // then
         assertThat(result).isNotNull();
@@ -184,4 +270,151 @@ class AccountServiceTest {
         assertThat(result.getUsdBalance()).isEqualTo(usdBalanceAfter);
     }
 
-}
\ No newline at end of file
+    @Test
+    void testExchangeBatch() {
+        // given
+        var uuid = UUID.randomUUID();
+        var poorUuid = UUID.randomUUID();
+        var unknownUuid = UUID.randomUUID();
+        var account = new Account(uuid, "Jan", "Kowalski", new BigDecimal(2000), new BigDecimal(0));
+        var poorAccount = new Account(poorUuid, "Anna", "Nowak", new BigDecimal(50), new BigDecimal(0));
+
+        var ratesTable = new RatesTable(LocalDate.now(), List.of(new RatesTable.Rate("USD", new BigDecimal(4))));
+        var ratesResponse = new RatesTable[]{ratesTable};
+
+        var exchangeRequests = List.of(
+                new ExchangeRequest(uuid.toString(), new BigDecimal(100), Currency.PLN),
+                new ExchangeRequest(uuid.toString(), new BigDecimal(25), Currency.USD),
+                new ExchangeRequest(poorUuid.toString(), new BigDecimal(100), Currency.PLN),
+                new ExchangeRequest(unknownUuid.toString(), new BigDecimal(100), Currency.PLN),
+                new ExchangeRequest("not-a-uuid", new BigDecimal(100), Currency.PLN),
+                new ExchangeRequest(uuid.toString(), null, Currency.PLN));
+
+        var singleLoads = meterRegistry.timer("nn.exchange.stage", "stage", "load", "kind", "single").count();
+        var batchLoads = meterRegistry.timer("nn.exchange.stage", "stage", "load", "kind", "batch").count();
+
+        when(accountRepository.findAllById(any())).thenReturn(List.of(account, poorAccount));
+        when(restTemplate.getForObject(any(), any())).thenReturn(ratesResponse);
+
+        // when
+        var results = accountService.exchangeBatch(exchangeRequests);
+
+        // then
+        assertThat(results).extracting(ExchangeResult::getStatus).containsExactly(
+                ExchangeResult.Status.OK,
+                ExchangeResult.Status.OK,
+                ExchangeResult.Status.INSUFFICIENT_FUNDS,
+                ExchangeResult.Status.NOT_FOUND,
+                ExchangeResult.Status.INVALID,
+                ExchangeResult.Status.INVALID);
+        assertThat(results.get(0).getPlnBalance()).isEqualByComparingTo(new BigDecimal(1900));
+        assertThat(results.get(0).getUsdBalance()).isEqualByComparingTo(new BigDecimal(25));
+        assertThat(results.get(1).getPlnBalance()).isEqualByComparingTo(new BigDecimal(2000));
+        assertThat(results.get(1).getUsdBalance()).isEqualByComparingTo(new BigDecimal(0));
+        assertThat(results.get(5).getMessage()).isEqualTo("Amount is mandatory");
+        assertThat(meterRegistry.timer("nn.exchange.stage", "stage", "load", "kind", "batch").count())
+                .isEqualTo(batchLoads + 1);
+        assertThat(meterRegistry.timer("nn.exchange.stage", "stage", "load", "kind", "single").count())
+                .isEqualTo(singleLoads);
+    }
+
+    @Test
+    void testExchangeBatchReportsNullItemAsInvalid() {
+        // given
+        var uuid = UUID.randomUUID();
+        var account = new Account(uuid, "Jan", "Kowalski", new BigDecimal(2000), new BigDecimal(0));
+        var ratesTable = new RatesTable(LocalDate.now(), List.of(new RatesTable.Rate("USD", new BigDecimal(4))));
+        var exchangeRequests = Arrays.asList(
+                new ExchangeRequest(uuid.toString(), new BigDecimal(100), Currency.PLN),
+                null);
+
+        when(accountRepository.findAllById(any())).thenReturn(List.of(account));
+        when(restTemplate.getForObject(any(), any())).thenReturn(new RatesTable[]{ratesTable});
+
+        // when
+        var results = accountService.exchangeBatch(exchangeRequests);
+
+        // then
+        assertThat(results).extracting(ExchangeResult::getStatus)
+                .containsExactly(ExchangeResult.Status.OK, ExchangeResult.Status.INVALID);
+        assertThat(results.get(0).getPlnBalance()).isEqualByComparingTo(new BigDecimal(1900));
+        assertThat(results.get(1).getMessage()).isEqualTo("Exchange request is missing or malformed");
+    }
+
+    @Test
+    void testExchangeBetweenForeignCurrencies() throws ChangeSetPersister.NotFoundException {
+        // given
+        var uuid = UUID.randomUUID();
+        var accountBefore = new Account(uuid, "Jan", "Kowalski", new BigDecimal(0), new BigDecimal(0));
+        accountBefore.setBalance(Currency.EUR, new BigDecimal(100));
+
+        var ratesTable = new RatesTable(LocalDate.now(), List.of(
+                new RatesTable.Rate("USD", new BigDecimal(4)),
+                new RatesTable.Rate("EUR", new BigDecimal("4.4"))));
+
+        when(accountRepository.findById(any())).thenReturn(Optional.of(accountBefore));
+        when(accountRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(restTemplate.getForObject(any(), any())).thenReturn(new RatesTable[]{ratesTable});
+        rateProvider.refresh().join();
+
+        // when
+        var result = accountService.exchange(uuid.toString(), new BigDecimal(100), Currency.EUR, Currency.USD);
+
+        // then
+        assertThat(result.getBalance(Currency.EUR)).isEqualTo(new BigDecimal(0));
+        assertThat(result.getUsdBalance()).isEqualTo(new BigDecimal(110));
+        assertThat(result.getPlnBalance()).isEqualTo(new BigDecimal(0));
+    }
+
+    @Test
+    void testExchangeRetriesOnConcurrentModification() throws ChangeSetPersister.NotFoundException {
+        // given
+        var uuid = UUID.randomUUID();
+        var accountBefore = new Account(uuid, "Jan", "Kowalski", new BigDecimal(2000), new BigDecimal(0));
+        var accountAfter = new Account(uuid, "Jan", "Kowalski", new BigDecimal(1900), new BigDecimal(25));
+
+        var ratesTable = new RatesTable(LocalDate.now(), List.of(new RatesTable.Rate("USD", new BigDecimal(4))));
+        var ratesResponse = new RatesTable[]{ratesTable};
+
+        when(accountRepository.findById(any()))
+                .thenReturn(Optional.of(accountBefore))
+                .thenReturn(Optional.of(new Account(uuid, "Jan", "Kowalski", new BigDecimal(2000), new BigDecimal(0))));
+        when(accountRepository.save(any()))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Account.class, uuid))
+                .thenReturn(accountAfter);
+        when(restTemplate.getForObject(any(), any())).thenReturn(ratesResponse);
+
+        // when
+        var result = accountService.exchange(uuid.toString(), new BigDecimal(100), Currency.PLN, Currency.USD);
+
+        // then
+        assertThat(result.getPlnBalance()).isEqualTo(new BigDecimal(1900));
+        assertThat(result.getUsdBalance()).isEqualTo(new BigDecimal(25));
+        verify(accountRepository, times(2)).save(any());
+    }
+
+    @Test
+    void testExchangeRecordsStagesAndRejections() {
+        // given
+        var uuid = UUID.randomUUID();
+        var ratesTable = new RatesTable(LocalDate.now(), List.of(new RatesTable.Rate("USD", new BigDecimal(4))));
+        var ratesResponse = new RatesTable[]{ratesTable};
+        var notFound = meterRegistry.counter("nn.exchange.rejections", "reason", "not_found").count();
+        var loads = meterRegistry.timer("nn.exchange.stage", "stage", "load", "kind", "single").count();
+
+        when(accountRepository.findById(any())).thenReturn(Optional.empty());
+        when(restTemplate.getForObject(any(), any())).thenReturn(ratesResponse);
+
+        // when
+        assertThatThrownBy(() -> accountService.exchange(uuid.toString(), new BigDecimal(100),
+                Currency.PLN, Currency.USD))
+                .isInstanceOf(ChangeSetPersister.NotFoundException.class);
+
+        // then
+        assertThat(meterRegistry.counter("nn.exchange.rejections", "reason", "not_found").count())
+                .isEqualTo(notFound + 1);
+        assertThat(meterRegistry.timer("nn.exchange.stage", "stage", "load", "kind", "single").count()).isEqualTo(loads + 1);
+        assertThat(meterRegistry.get("nn.rates.age").gauge().value()).isGreaterThanOrEqualTo(0);
+    }
+
+}
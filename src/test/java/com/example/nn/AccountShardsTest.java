@@ -0,0 +1,237 @@
+package com.example.nn;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+        "nn.shards.count=3",
+        "nn.shards.url=jdbc:h2:mem:nn-shard-test-{index};DB_CLOSE_DELAY=-1",
+        "nn.rates.sources=file",
+        "nn.rates.file.location=classpath:rates/table-a.json"
+})
+class AccountShardsTest {
+
+    private final AccountService accountService;
+
+    private final AccountBulkService accountBulkService;
+
+    private final AccountRepository accountRepository;
+
+    private final AccountShards shards;
+
+    @Autowired
+    public AccountShardsTest(AccountService accountService, AccountBulkService accountBulkService,
+                             AccountRepository accountRepository, AccountShards shards) {
+        this.accountService = accountService;
+        this.accountBulkService = accountBulkService;
+        this.accountRepository = accountRepository;
+        this.shards = shards;
+    }
+
+    @Test
+    void testAccountsAreRoutedToTheirShard() throws Exception {
+        // given
+        var lastName = "Shard-" + UUID.randomUUID();
+        var accounts = new ArrayList<Account>();
+        for (int i = 0; i < 30; i++) {
+            accounts.add(accountService.createAccount(new CreateAccountRequest("Jan", lastName, new BigDecimal(100))));
+        }
+        var csv = "name,lastName,balance\nAnna," + lastName + ",50\nEwa," + lastName + ",60\n";
+
+        // when
+        accountService.exchange(accounts.get(0).getId().toString(), BigDecimal.TEN, Currency.PLN, Currency.USD);
+        var batch = accountService.exchangeBatch(accounts.stream()
+                .map(account -> new ExchangeRequest(account.getId().toString(), BigDecimal.ONE, Currency.PLN))
+                .toList());
+        var imported = accountBulkService.importAccounts(AccountBulkService.Format.CSV,
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+        var exported = new ByteArrayOutputStream();
+        accountBulkService.export(AccountBulkService.Format.CSV, exported);
+
+        // then
+        assertThat(accountRepository).isInstanceOf(ShardedAccountRepository.class);
+        for (Account account : accounts) {
+            var shard = shards.all().get(AccountShards.shardOf(account.getId(), 3));
+            assertThat(shard.getJdbcTemplate().queryForObject("select count(*) from account where id = ?",
+                    Long.class, account.getId())).isEqualTo(1);
+        }
+        assertThat(shards.all()).allMatch(shard -> shard.getJdbcTemplate()
+                .queryForObject("select count(*) from account where last_name = ?", Long.class, lastName) > 0);
+        assertThat(batch).allMatch(result -> result.getStatus() == ExchangeResult.Status.OK);
+        assertThat(accountService.getAccount(accounts.get(0).getId().toString()).orElseThrow().getPlnBalance())
+                .isEqualByComparingTo("89");
+        assertThat(imported.getImported()).isEqualTo(2);
+        assertThat(exported.toString(StandardCharsets.UTF_8).lines().filter(line -> line.contains(lastName)))
+                .hasSize(32);
+    }
+
+    @Test
+    void testSearchMergesShardsInOrder() {
+        // given
+        var lastName = "ShardSearch-" + UUID.randomUUID();
+        for (String name : List.of("Ewa", "Adam", "Jan", "Jan", "Anna", "Jan", "Ola")) {
+            accountService.createAccount(new CreateAccountRequest(name, lastName, new BigDecimal(100)));
+        }
+
+        // when
+        var pages = new ArrayList<AccountPage>();
+        String page = null;
+        do {
+            var result = accountService.search(lastName, null, page, 2);
+            pages.add(result);
+            page = result.getNextPage();
+        } while (page != null);
+
+        // then
+        var found = pages.stream().flatMap(result -> result.getAccounts().stream()).toList();
+        assertThat(found).extracting(AccountSummary::getName)
+                .containsExactly("Adam", "Anna", "Ewa", "Jan", "Jan", "Jan", "Ola");
+        assertThat(found).isSortedAccordingTo(ShardedAccountRepository.SEARCH_COMPARATOR);
+    }
+
+    @Test
+    void testStaleSaveFailsOnVersion() {
+        // given
+        var account = accountService.createAccount(new CreateAccountRequest("Jan", "Stale", new BigDecimal(100)));
+        var first = accountRepository.findById(account.getId()).orElseThrow();
+        var second = accountRepository.findById(account.getId()).orElseThrow();
+
+        // when
+        first.setPlnBalance(new BigDecimal(50));
+        accountRepository.save(first);
+        second.setPlnBalance(new BigDecimal(10));
+
+        // then
+        assertThatThrownBy(() -> accountRepository.save(second))
+                .isInstanceOf(ObjectOptimisticLockingFailureException.class);
+        assertThat(accountRepository.findById(account.getId()).orElseThrow().getPlnBalance())
+                .isEqualByComparingTo("50");
+    }
+
+    @Test
+    void testAddShardsOnlyMovesAccountsToNewShards() {
+        // given
+        try (var grown = new AccountShards("jdbc:h2:mem:nn-shard-grow-{index};DB_CLOSE_DELAY=-1", 2, 2,
+                Duration.ofSeconds(5), false)) {
+            var repository = new ShardedAccountRepository(grown,
+                    new ShardedTransactionManager(grown.routingLock().readLock()));
+            var ids = new ArrayList<UUID>();
+            for (int i = 0; i < 200; i++) {
+                var account = new Account();
+                account.setName("Grow" + i);
+                account.setLastName("Shards");
+                ids.add(repository.save(account).getId());
+            }
+
+            // when
+            long moved = grown.addShards(4);
+
+            // then
+            long expectedMoves = ids.stream().filter(id -> AccountShards.shardOf(id, 4) >= 2).count();
+            assertThat(moved).isEqualTo(expectedMoves).isGreaterThan(0);
+            assertThat(ids).allMatch(id -> AccountShards.shardOf(id, 4) == AccountShards.shardOf(id, 2)
+                    || AccountShards.shardOf(id, 4) >= 2);
+            assertThat(repository.findAllById(ids)).hasSize(200);
+            assertThat(repository.count()).isEqualTo(200);
+            assertThat(grown.all()).allMatch(shard -> shard.getJdbcTemplate()
+                    .queryForObject("select count(*) from account", Long.class) > 0);
+        }
+    }
+
+    @Test
+    void testReadOverAllShardsDoesNotBlockAddShards() throws Exception {
+        // given
+        try (var grown = new AccountShards("jdbc:h2:mem:nn-shard-read-{index};DB_CLOSE_DELAY=-1", 2, 2,
+                Duration.ofSeconds(5), false)) {
+            var repository = new ShardedAccountRepository(grown,
+                    new ShardedTransactionManager(grown.routingLock().readLock()));
+            var ids = saveAccounts(repository, 2500);
+            var reading = new CountDownLatch(2);
+            var release = new CountDownLatch(1);
+            var slowRead = CompletableFuture.runAsync(() -> grown.parallel((shard, routing) -> {
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }));
+            reading.await();
+
+            // when
+            var growing = CompletableFuture.supplyAsync(() -> grown.addShards(4));
+            var created = CompletableFuture.supplyAsync(() -> saveAccounts(repository, 1).get(0));
+            var found = CompletableFuture.supplyAsync(() -> repository.findAllById(ids));
+
+            // then
+            assertThat(created.get(10, TimeUnit.SECONDS)).isNotNull();
+            assertThat(found.get(10, TimeUnit.SECONDS)).hasSize(2500);
+            // the copies left in the old shards are only deleted once the read is done
+            assertThat(growing).isNotDone();
+            release.countDown();
+            slowRead.get(10, TimeUnit.SECONDS);
+            long expectedMoves = ids.stream().filter(id -> AccountShards.shardOf(id, 4) >= 2).count();
+            // the account created meanwhile is either moved or created in its new shard
+            assertThat(growing.get(10, TimeUnit.SECONDS)).isBetween(expectedMoves, expectedMoves + 1);
+            assertThat(repository.count()).isEqualTo(2501);
+            assertThat(repository.findAll()).hasSize(2501);
+            assertThat(grown.all().stream().mapToLong(shard -> shard.getJdbcTemplate()
+                    .queryForObject("select count(*) from account", Long.class)).sum()).isEqualTo(2501);
+        }
+    }
+
+    @Test
+    void testAddShardsTimesOutOnTheRoutingLockAndContinuesWhenRunAgain() {
+        // given
+        try (var grown = new AccountShards("jdbc:h2:mem:nn-shard-timeout-{index};DB_CLOSE_DELAY=-1", 2, 2,
+                Duration.ofMillis(50), false)) {
+            var repository = new ShardedAccountRepository(grown,
+                    new ShardedTransactionManager(grown.routingLock().readLock()));
+            var ids = saveAccounts(repository, 200);
+
+            // when
+            grown.routingLock().readLock().lock();
+            try {
+                assertThatThrownBy(() -> grown.addShards(4)).isInstanceOf(IllegalStateException.class);
+            } finally {
+                grown.routingLock().readLock().unlock();
+            }
+            assertThatThrownBy(() -> grown.addShards(3)).isInstanceOf(IllegalArgumentException.class);
+            grown.addShards(4);
+
+            // then
+            assertThat(grown.count()).isEqualTo(4);
+            assertThat(repository.findAllById(ids)).hasSize(200);
+            assertThat(repository.count()).isEqualTo(200);
+        }
+    }
+
+    private static List<UUID> saveAccounts(ShardedAccountRepository repository, int count) {
+        var ids = new ArrayList<UUID>();
+        for (int i = 0; i < count; i++) {
+            var account = new Account();
+            account.setName("Grow" + i);
+            account.setLastName("Shards");
+            ids.add(repository.save(account).getId());
+        }
+        return ids;
+    }
+}
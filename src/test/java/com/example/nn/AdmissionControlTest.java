@@ -0,0 +1,131 @@
+package com.example.nn;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdmissionControlTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void testClientBucketAllowsBurstThenRate() {
+        // given
+        var rateLimiter = new ClientRateLimiter(2, 3, 100);
+        var now = System.nanoTime();
+
+        // when
+        var burst = new long[]{rateLimiter.tryAcquire("a", now), rateLimiter.tryAcquire("a", now),
+                rateLimiter.tryAcquire("a", now)};
+        var overBurst = rateLimiter.tryAcquire("a", now);
+        var otherClient = rateLimiter.tryAcquire("b", now);
+        var afterRefill = rateLimiter.tryAcquire("a", now + SECOND / 2);
+
+        // then
+        assertThat(burst).containsOnly(0);
+        assertThat(overBurst).isEqualTo(SECOND / 2);
+        assertThat(otherClient).isZero();
+        assertThat(afterRefill).isZero();
+    }
+
+    @Test
+    void testLimitGrowsWhileLatencyHoldsAndShrinksWhenItRises() {
+        // given
+        var limit = new AdaptiveConcurrencyLimit(20, 4, 100);
+
+        // when
+        saturate(limit, 500, TimeUnit.MILLISECONDS.toNanos(10));
+        var grown = limit.getLimit();
+        saturate(limit, 30, TimeUnit.MILLISECONDS.toNanos(100));
+        var shrunk = limit.getLimit();
+
+        // then
+        assertThat(grown).isEqualTo(100);
+        assertThat(shrunk).isBetween(4, 50);
+    }
+
+    @Test
+    void testFilterRejectsWithRetryAfter() throws Exception {
+        // given
+        var admissionControl = new AdmissionControl(new ClientRateLimiter(1, 1, 100),
+                new AdaptiveConcurrencyLimit(10, 1, 10), new SimpleMeterRegistry());
+        var filter = new AdmissionFilter(admissionControl, "X-Client-Id");
+
+        // when
+        var admitted = exchange(filter, "/account/exchange", "a");
+        var rateLimited = exchange(filter, "/account/exchange", "a");
+        var otherClient = exchange(filter, "/account/exchange", "b");
+        var stream = exchange(filter, "/account/events", "a");
+        var batchStream = exchange(filter, "/account/exchange/batch", "a", "application/x-ndjson");
+        var batch = exchange(filter, "/account/exchange/batch", "a", "application/json");
+
+        // then
+        assertThat(admitted.getStatus()).isEqualTo(200);
+        assertThat(rateLimited.getStatus()).isEqualTo(429);
+        assertThat(rateLimited.getHeader(AdmissionControl.RETRY_AFTER)).isEqualTo("1");
+        assertThat(otherClient.getStatus()).isEqualTo(200);
+        assertThat(stream.getStatus()).isEqualTo(200);
+        assertThat(batchStream.getStatus()).isEqualTo(200);
+        assertThat(batch.getStatus()).isEqualTo(429);
+    }
+
+    @Test
+    void testOverLimitIsShedWith503() {
+        // given
+        var admissionControl = new AdmissionControl(new ClientRateLimiter(1000, 1000, 100),
+                new AdaptiveConcurrencyLimit(2, 1, 2), new SimpleMeterRegistry());
+        var start = System.nanoTime();
+
+        // when
+        var first = admissionControl.tryAdmit("a", true);
+        var second = admissionControl.tryAdmit("b", true);
+        var shed = admissionControl.tryAdmit("c", true);
+        var read = admissionControl.tryAdmit("c", false);
+        admissionControl.complete(read, start);
+        var stillShed = admissionControl.tryAdmit("c", true);
+        admissionControl.complete(first, start);
+        var afterRelease = admissionControl.tryAdmit("c", true);
+
+        // then
+        assertThat(first.isAdmitted()).isTrue();
+        assertThat(second.isAdmitted()).isTrue();
+        assertThat(shed.rejection().value()).isEqualTo(503);
+        assertThat(shed.retryAfterSeconds()).isEqualTo(1);
+        assertThat(read.isAdmitted()).isTrue();
+        assertThat(stillShed.isAdmitted()).isFalse();
+        assertThat(afterRelease.isAdmitted()).isTrue();
+    }
+
+    /**
+     * Keeps every permit taken and completes one request of {@code rttNanos} per step.
+     */
+    private static void saturate(AdaptiveConcurrencyLimit limit, int steps, long rttNanos) {
+        for (int i = 0; i < steps; i++) {
+            while (limit.tryAcquire()) {
+                // take all
+            }
+            limit.release(rttNanos);
+        }
+    }
+
+    private static MockHttpServletResponse exchange(AdmissionFilter filter, String path, String client)
+            throws Exception {
+        return exchange(filter, path, client, null);
+    }
+
+    private static MockHttpServletResponse exchange(AdmissionFilter filter, String path, String client,
+                                                    String contentType) throws Exception {
+        var request = new MockHttpServletRequest("PUT", path);
+        request.addHeader("X-Client-Id", client);
+        request.setContentType(contentType);
+        var response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.nn;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BalanceEventBusTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    // flushed by the tests themselves
+    private final BalanceEventBus bus = new BalanceEventBus(2, Duration.ofHours(1), "drop_oldest", false, registry);
+
+    @AfterEach
+    void shutdown() {
+        bus.shutdown();
+    }
+
+    @Test
+    void testEventsOfOneAccountAreCoalesced() throws Exception {
+        // given
+        var first = account(1000);
+        var other = account(500);
+        var batches = new LinkedBlockingQueue<BalanceBatch>();
+        bus.subscribe(null, () -> true, batches::add, () -> {
+        });
+
+        // when
+        bus.publish(first);
+        bus.publish(other);
+        first.setPlnBalance(new BigDecimal(900));
+        bus.publish(first);
+        bus.flush();
+        var batch = batches.poll(5, TimeUnit.SECONDS);
+
+        // then
+        assertThat(batch.getDropped()).isZero();
+        assertThat(batch.getEvents()).extracting(BalanceEvent::getAccountId)
+                .containsExactly(other.getId(), first.getId());
+        assertThat(batch.getEvents().get(1).getBalanceView()).containsEntry("plnBalance", new BigDecimal(900));
+        assertThat(registry.get("nn.events.coalesced").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testLatePublishedOlderVersionDoesNotReplaceNewerEvent() throws Exception {
+        // given
+        var newer = account(900);
+        newer.setVersion(2L);
+        var older = newer.copy();
+        older.setPlnBalance(new BigDecimal(1000));
+        older.setVersion(1L);
+        var batches = new LinkedBlockingQueue<BalanceBatch>();
+        bus.subscribe(null, () -> true, batches::add, () -> {
+        });
+
+        // when
+        bus.publish(newer);
+        bus.publish(older);
+        bus.flush();
+        var batch = batches.poll(5, TimeUnit.SECONDS);
+
+        // then
+        assertThat(batch.getEvents()).singleElement()
+                .satisfies(event -> assertThat(event.getVersion()).isEqualTo(2))
+                .satisfies(event -> assertThat(event.getBalanceView()).containsEntry("plnBalance", new BigDecimal(900)));
+    }
+
+    @Test
+    void testOlderVersionPublishedAfterDeliveryOfNewerIsDropped() throws Exception {
+        // given
+        var newer = account(900);
+        newer.setVersion(2L);
+        var older = newer.copy();
+        older.setPlnBalance(new BigDecimal(1000));
+        older.setVersion(1L);
+        var batches = new LinkedBlockingQueue<BalanceBatch>();
+        bus.subscribe(null, () -> true, batches::add, () -> {
+        });
+
+        // when
+        bus.publish(newer);
+        bus.flush();
+        var first = batches.poll(5, TimeUnit.SECONDS);
+        bus.publish(older);
+        bus.flush();
+        var second = batches.poll(100, TimeUnit.MILLISECONDS);
+        bus.publish(newer);
+        bus.flush();
+        var third = batches.poll(5, TimeUnit.SECONDS);
+
+        // then
+        assertThat(first.getEvents()).extracting(BalanceEvent::getVersion).containsExactly(2L);
+        assertThat(second).isNull();
+        assertThat(third.getEvents()).extracting(BalanceEvent::getVersion).containsExactly(2L);
+    }
+
+    @Test
+    void testSlowSubscriberDropsOldestAndKeepsCollecting() throws Exception {
+        // given
+        var ready = new AtomicBoolean(false);
+        var batches = new LinkedBlockingQueue<BalanceBatch>();
+        var accounts = List.of(account(1), account(2), account(3));
+        var watched = bus.subscribe(null, ready::get, batches::add, () -> {
+        });
+        var other = account(4);
+        var unrelated = new LinkedBlockingQueue<BalanceBatch>();
+        bus.subscribe(List.of(other.getId()), () -> true, unrelated::add, () -> {
+        });
+
+        // when
+        accounts.forEach(bus::publish);
+        bus.flush();
+        var whileBusy = batches.poll(100, TimeUnit.MILLISECONDS);
+        ready.set(true);
+        bus.flush();
+        var batch = batches.poll(5, TimeUnit.SECONDS);
+        watched.close();
+        bus.publish(accounts.get(0));
+        bus.flush();
+
+        // then
+        assertThat(whileBusy).isNull();
+        assertThat(batch.getDropped()).isEqualTo(1);
+        assertThat(batch.getEvents()).extracting(BalanceEvent::getAccountId)
+                .containsExactly(accounts.get(1).getId(), accounts.get(2).getId());
+        assertThat(batches.poll(100, TimeUnit.MILLISECONDS)).isNull();
+        assertThat(unrelated).isEmpty();
+        assertThat(bus.subscribers()).isEqualTo(1);
+    }
+
+    @Test
+    void testOverflowDisconnects() throws Exception {
+        // given
+        var strict = new BalanceEventBus(1, Duration.ofHours(1), "disconnect", false, new SimpleMeterRegistry());
+        var closed = new LinkedBlockingQueue<Boolean>();
+        strict.subscribe(null, () -> false, batch -> {
+        }, () -> closed.add(true));
+
+        // when
+        strict.publish(account(1));
+        strict.publish(account(2));
+
+        // then
+        assertThat(closed.poll(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(strict.subscribers()).isZero();
+        strict.shutdown();
+    }
+
+    private static Account account(int plnBalance) {
+        return new Account(UUID.randomUUID(), "Jan", "Kowalski", new BigDecimal(plnBalance), BigDecimal.ZERO);
+    }
+}
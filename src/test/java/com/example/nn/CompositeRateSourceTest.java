@@ -0,0 +1,105 @@
+package com.example.nn;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CompositeRateSourceTest {
+
+    @Test
+    void testFailoverUsesNextSourceAndRecordsStats() {
+        // given
+        var nbp = source("nbp");
+        var file = source("file");
+        when(nbp.fetch()).thenThrow(new RateUnavailableException("NBP down"));
+        when(file.fetch()).thenReturn(snapshot("file"));
+        var composite = new CompositeRateSource(List.of(file, nbp), List.of("nbp", "file"), "failover",
+                new SimpleMeterRegistry(), false);
+
+        // when
+        var result = composite.fetch();
+
+        // then
+        assertThat(result.getSource()).isEqualTo("file");
+        assertThat(composite.getStats())
+                .extracting(RateSourceStats::getSource, RateSourceStats::getSuccesses, RateSourceStats::getFailures)
+                .containsExactly(
+                        tuple("nbp", 0L, 1L),
+                        tuple("file", 1L, 0L));
+        composite.shutdown();
+    }
+
+    @Test
+    void testRaceFetchesOnVirtualThreadsWhenEnabled() {
+        // given
+        var nbp = source("nbp");
+        var virtual = new AtomicBoolean();
+        when(nbp.fetch()).thenAnswer(invocation -> {
+            virtual.set(Thread.currentThread().isVirtual());
+            return snapshot("nbp");
+        });
+        var composite = new CompositeRateSource(List.of(nbp), List.of("nbp"), "race", new SimpleMeterRegistry(), true);
+
+        // when
+        composite.fetch();
+
+        // then
+        assertThat(virtual).isTrue();
+        composite.shutdown();
+    }
+
+    @Test
+    void testRaceReturnsFastestSource() {
+        // given
+        var slow = source("nbp");
+        var fast = source("file");
+        when(slow.fetch()).thenAnswer(invocation -> {
+            Thread.sleep(2000);
+            return snapshot("nbp");
+        });
+        when(fast.fetch()).thenReturn(snapshot("file"));
+        var composite = new CompositeRateSource(List.of(slow, fast), List.of("nbp", "file"), "race",
+                new SimpleMeterRegistry(), false);
+
+        // when
+        var result = composite.fetch();
+
+        // then
+        assertThat(result.getSource()).isEqualTo("file");
+        composite.shutdown();
+    }
+
+    @Test
+    void testFailsWhenAllSourcesFail() {
+        // given
+        var nbp = source("nbp");
+        when(nbp.fetch()).thenThrow(new RateUnavailableException("NBP down"));
+        var composite = new CompositeRateSource(List.of(nbp), List.of("nbp"), "race", new SimpleMeterRegistry(), false);
+
+        // when then
+        assertThatThrownBy(composite::fetch).isInstanceOf(RateUnavailableException.class);
+        composite.shutdown();
+    }
+
+    private static RateSource source(String name) {
+        var source = mock(RateSource.class);
+        when(source.getName()).thenReturn(name);
+        return source;
+    }
+
+    private static RateSnapshot snapshot(String source) {
+        return new RateSnapshot(Map.of(Currency.USD, new BigDecimal(4)), LocalDate.now(), source, Instant.now());
+    }
+}
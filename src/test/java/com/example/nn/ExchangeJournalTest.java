@@ -0,0 +1,176 @@
+package com.example.nn;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ExchangeJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testAppendAcrossSegmentsAndReadHistory() throws Exception {
+        // given
+        var uuid = UUID.randomUUID();
+        var other = UUID.randomUUID();
+        var journal = journal();
+
+        // when
+        journal.append(uuid, 1, Currency.PLN, Currency.USD, 100_00, 2_403557264L, 1900_00, 24_03);
+        journal.append(other, 1, Currency.PLN, Currency.EUR, 10_00, 2_180264248L, 90_00, 2_18);
+        journal.append(uuid, 2, Currency.USD, Currency.PLN, 10_00, 41_605000000L, 14_03, 1941_60);
+        journal.sync();
+
+        // then
+        var history = journal.history(uuid);
+        assertThat(history).hasSize(2);
+        assertThat(history.get(0).getFrom()).isEqualTo(Currency.PLN);
+        assertThat(history.get(0).getAmount()).isEqualByComparingTo(new BigDecimal(100));
+        assertThat(history.get(0).getTo()).isEqualTo(Currency.USD);
+        assertThat(history.get(0).getRate()).isEqualByComparingTo(new BigDecimal("0.2403557264"));
+        assertThat(history.get(1).getRate()).isEqualByComparingTo(new BigDecimal("4.1605"));
+        assertThat(history.get(1).getFromBalance()).isEqualByComparingTo(new BigDecimal("14.03"));
+        assertThat(history.get(1).getToBalance()).isEqualByComparingTo(new BigDecimal("1941.60"));
+        try (var segments = Files.list(directory)) {
+            assertThat(segments.filter(file -> file.toString().endsWith(".seg")).count()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void testReopenContinuesAfterLastEntryAndReplaysBalances() throws Exception {
+        // given
+        var uuid = UUID.randomUUID();
+        var first = journal();
+        first.append(uuid, 1, Currency.PLN, Currency.USD, 100_00, 2_500000000L, 1900_00, 25_00);
+        first.close();
+
+        // when
+        var reopened = journal();
+        reopened.append(uuid, 2, Currency.USD, Currency.PLN, 25_00, 40_000000000L, 0, 2000_00);
+
+        // then
+        assertThat(reopened.history(uuid)).hasSize(2);
+        var latest = reopened.replay().get(uuid);
+        assertThat(latest.get(Currency.PLN)).isEqualByComparingTo(new BigDecimal(2000));
+        assertThat(latest.get(Currency.USD)).isEqualByComparingTo(new BigDecimal(0));
+    }
+
+    @Test
+    void testReplayKeepsHighestVersionAndHistoryTheLatestEntries() throws Exception {
+        // given
+        var uuid = UUID.randomUUID();
+        var journal = new ExchangeJournal(directory, 2, Duration.ofHours(1), false, 2, 100);
+        journal.open();
+
+        // when
+        journal.append(uuid, 2, Currency.PLN, Currency.USD, 100_00, 2_500000000L, 1800_00, 50_00);
+        journal.append(uuid, 1, Currency.PLN, Currency.USD, 100_00, 2_500000000L, 1900_00, 25_00);
+        journal.append(uuid, 3, Currency.PLN, Currency.EUR, 100_00, 2_000000000L, 1700_00, 20_00);
+        journal.append(uuid, 3, Currency.PLN, Currency.EUR, 100_00, 2_000000000L, 1600_00, 40_00);
+
+        // then
+        var latest = journal.replay().get(uuid);
+        assertThat(latest.get(Currency.PLN)).isEqualByComparingTo(new BigDecimal(1600));
+        assertThat(latest.get(Currency.USD)).isEqualByComparingTo(new BigDecimal(50));
+        assertThat(latest.get(Currency.EUR)).isEqualByComparingTo(new BigDecimal(40));
+        assertThat(journal.history(uuid)).extracting(JournalEntry::getFromBalance)
+                .containsExactly(new BigDecimal(1700), new BigDecimal(1600));
+    }
+
+    @Test
+    void testHistoryIsOrderedByVersion() throws Exception {
+        // given
+        var uuid = UUID.randomUUID();
+        var journal = journal();
+
+        // when, committed in version order but appended the other way round
+        journal.append(uuid, 2, Currency.PLN, Currency.USD, 100_00, 2_500000000L, 1800_00, 50_00);
+        journal.append(uuid, 1, Currency.PLN, Currency.USD, 100_00, 2_500000000L, 1900_00, 25_00);
+
+        // then
+        assertThat(journal.history(uuid)).extracting(JournalEntry::getVersion).containsExactly(1L, 2L);
+        journal.close();
+    }
+
+    @Test
+    void testRollDeletesSegmentsPastRetention() throws Exception {
+        // given
+        var dropped = UUID.randomUUID();
+        var kept = UUID.randomUUID();
+        var journal = new ExchangeJournal(directory, 2, Duration.ofHours(1), false, 100, 2);
+        journal.open();
+        journal.append(dropped, 1, Currency.PLN, Currency.USD, 100_00, 2_500000000L, 1900_00, 25_00);
+        journal.append(dropped, 2, Currency.PLN, Currency.USD, 100_00, 2_500000000L, 1800_00, 50_00);
+
+        // when
+        for (int version = 1; version <= 4; version++) {
+            journal.append(kept, version, Currency.PLN, Currency.USD, 10_00, 2_500000000L, 2000_00, 2_50);
+        }
+        journal.append(kept, 5, Currency.PLN, Currency.USD, 10_00, 2_500000000L, 1990_00, 5_00);
+
+        // then
+        assertThat(journal.history(dropped)).isEmpty();
+        assertThat(journal.history(UUID.randomUUID())).isEmpty();
+        assertThat(journal.history(kept)).extracting(JournalEntry::getVersion).containsExactly(3L, 4L, 5L);
+        assertThat(journal.replay()).containsOnlyKeys(kept);
+        try (var segments = Files.list(directory)) {
+            assertThat(segments.filter(file -> file.toString().endsWith(".seg")).count()).isEqualTo(2);
+        }
+        journal.close();
+
+        var reopened = new ExchangeJournal(directory, 2, Duration.ofHours(1), false, 100, 2);
+        reopened.open();
+        assertThat(reopened.history(kept)).extracting(JournalEntry::getVersion).containsExactly(3L, 4L, 5L);
+    }
+
+    @Test
+    void testRollDropsIndexOfAccountsWithoutRetainedEntries() throws Exception {
+        // given
+        var journal = new ExchangeJournal(directory, 2, Duration.ofHours(1), false, 100, 2);
+        journal.open();
+        for (int i = 0; i < 4; i++) {
+            journal.append(UUID.randomUUID(), 1, Currency.PLN, Currency.USD, 100_00, 2_500000000L, 1900_00, 25_00);
+        }
+        var indexed = journal.indexedAccounts();
+
+        // when
+        for (int i = 0; i < 4; i++) {
+            journal.append(UUID.randomUUID(), 1, Currency.PLN, Currency.USD, 100_00, 2_500000000L, 1900_00, 25_00);
+        }
+
+        // then, the two retained segments hold the last four accounts only
+        assertThat(indexed).isEqualTo(4);
+        assertThat(journal.indexedAccounts()).isEqualTo(4);
+        journal.close();
+    }
+
+    @Test
+    void testSecondJournalOnTheSameDirectoryFailsToOpen() throws Exception {
+        // given
+        var first = journal();
+
+        // when
+        var second = new ExchangeJournal(directory, 2, Duration.ofHours(1), false, 100, 100);
+
+        // then
+        assertThatThrownBy(second::open).isInstanceOf(IllegalStateException.class);
+        first.close();
+        second.open();
+        second.close();
+    }
+
+    private ExchangeJournal journal() throws Exception {
+        var journal = new ExchangeJournal(directory, 2, Duration.ofHours(1), false, 100, 100);
+        journal.open();
+        return journal;
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.nn;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.Filter;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.web.server.WebFilter;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Fires {@link #IN_FLIGHT} concurrent exchanges at a running server whose requests each wait for
+ * {@link #LATENCY} — a stand-in for waiting on the database and NBP — and reports throughput, CPU time and
+ * the peak number of platform threads. An identical unmeasured round runs first to warm up the JIT.
+ * Subclasses run it on platform threads, virtual threads and the reactive stack; run them with
+ * {@code mvn test -Pload} and compare the logged lines.
+ */
+@Slf4j
+@Tag("load")
+@Import(ExchangeLoadTest.LatencyConfiguration.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "nn.rates.sources=file",
+        "nn.rates.file.location=classpath:rates/table-a.json",
+        "nn.journal.enabled=false",
+        "nn.admission.enabled=false",
+        "spring.datasource.hikari.maximum-pool-size=50"
+})
+abstract class ExchangeLoadTest {
+
+    static final int IN_FLIGHT = 2000;
+
+    static final Duration LATENCY = Duration.ofMillis(100);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @LocalServerPort
+    private int port;
+
+    /**
+     * Upper bound for the peak platform thread count of the JVM during the run.
+     */
+    abstract int maxPlatformThreads();
+
+    @Test
+    void testConcurrentExchanges() {
+        // given
+        List<String> uuids = new ArrayList<>(IN_FLIGHT);
+        for (HttpResponse<String> created : send("POST", "/account",
+                Collections.nCopies(IN_FLIGHT, "{\"name\":\"Jan\",\"lastName\":\"Kowalski\",\"balance\":1000}"))) {
+            uuids.add(id(created));
+        }
+        var threads = ManagementFactory.getThreadMXBean();
+        var os = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        exchange(uuids);
+        threads.resetPeakThreadCount();
+        long cpuBefore = os.getProcessCpuTime();
+
+        // when
+        long start = System.nanoTime();
+        List<HttpResponse<String>> responses = exchange(uuids);
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        Duration cpu = Duration.ofNanos(os.getProcessCpuTime() - cpuBefore);
+
+        // then
+        log.info("{}: {} exchanges in {} ms ({} /s), {} ms CPU, peak platform threads {}",
+                getClass().getSimpleName(), IN_FLIGHT, elapsed.toMillis(),
+                IN_FLIGHT * 1000L / Math.max(1, elapsed.toMillis()), cpu.toMillis(), threads.getPeakThreadCount());
+        assertThat(responses).allSatisfy(response -> assertThat(response.statusCode()).isEqualTo(200));
+        assertThat(threads.getPeakThreadCount()).isLessThanOrEqualTo(maxPlatformThreads());
+    }
+
+    /**
+     * Sends one exchange per account, all at once, and waits for every response.
+     */
+    private List<HttpResponse<String>> exchange(List<String> uuids) {
+        return send("PUT", "/account/exchange", uuids.stream()
+                .map(uuid -> "{\"uuid\":\"" + uuid + "\",\"amount\":100,\"from\":\"PLN\"}")
+                .toList());
+    }
+
+    private List<HttpResponse<String>> send(String method, String path, List<String> bodies) {
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>(bodies.size());
+        try (var client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build()) {
+            for (String body : bodies) {
+                var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                        .header("Content-Type", "application/json")
+                        .method(method, HttpRequest.BodyPublishers.ofString(body))
+                        .build();
+                responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+            }
+            return responses.stream().map(CompletableFuture::join).toList();
+        }
+    }
+
+    private String id(HttpResponse<String> created) {
+        try {
+            return objectMapper.readTree(created.body()).get("id").asText();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Adds {@link #LATENCY} to every request: a sleeping thread in the servlet stacks, a timer in the reactive one.
+     * Only the filter type of the running stack is picked up.
+     */
+    @TestConfiguration
+    static class LatencyConfiguration {
+
+        @Bean
+        Filter blockingFilter() {
+            return (request, response, chain) -> {
+                try {
+                    Thread.sleep(LATENCY);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                chain.doFilter(request, response);
+            };
+        }
+
+        @Bean
+        WebFilter delayingWebFilter() {
+            return (exchange, chain) -> Mono.delay(LATENCY).then(chain.filter(exchange));
+        }
+    }
+}
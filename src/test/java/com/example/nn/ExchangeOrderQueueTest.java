@@ -0,0 +1,191 @@
+package com.example.nn;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class ExchangeOrderQueueTest {
+
+    private final AccountService accountService = mock(AccountService.class);
+
+    private final List<String> applied = Collections.synchronizedList(new ArrayList<>());
+
+    private ExchangeOrderQueue queue;
+
+    @AfterEach
+    void close() throws Exception {
+        if (queue != null) {
+            queue.close();
+        }
+    }
+
+    @Test
+    void testOrdersOfAnAccountAreAppliedInArrivalOrder() throws Exception {
+        // given
+        var first = UUID.randomUUID().toString();
+        var second = UUID.randomUUID().toString();
+        exchanges(request -> {
+            applied.add(request.getUuid() + ":" + request.getAmount().toPlainString());
+            return ok(request);
+        });
+        queue = queue(4, 100);
+
+        // when
+        var orders = new ArrayList<ExchangeOrder>();
+        for (int i = 1; i <= 50; i++) {
+            orders.add(queue.submit(new ExchangeRequest(first, new BigDecimal(i), Currency.PLN)).orElseThrow());
+            orders.add(queue.submit(new ExchangeRequest(second, new BigDecimal(i), Currency.PLN)).orElseThrow());
+        }
+        for (ExchangeOrder order : orders) {
+            order.completion().get(5, TimeUnit.SECONDS);
+        }
+
+        // then
+        assertThat(orders).allMatch(order -> order.getStatus() == ExchangeOrder.Status.DONE
+                && order.getResult().getUuid().equals(order.getRequest().getUuid()));
+        assertThat(queue.find(orders.get(0).getOrderId())).containsSame(orders.get(0));
+        assertThat(queue.partitionOf(first.toUpperCase())).isEqualTo(queue.partitionOf(first));
+        for (String uuid : List.of(first, second)) {
+            assertThat(applied.stream().filter(entry -> entry.startsWith(uuid)).map(entry -> entry.split(":")[1])
+                    .map(Integer::valueOf)
+                    .toList()).isSorted().hasSize(50);
+        }
+    }
+
+    @Test
+    void testFullPartitionRejectsOrders() throws Exception {
+        // given
+        var release = new CountDownLatch(1);
+        var writing = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            throw new RateUnavailableException("No rates");
+        }).when(accountService).exchangeBatch(any(), any());
+        queue = queue(1, 1);
+        var uuid = UUID.randomUUID().toString();
+
+        // when
+        var applying = queue.submit(new ExchangeRequest(uuid, BigDecimal.ONE, Currency.PLN)).orElseThrow();
+        writing.await(5, TimeUnit.SECONDS);
+        var queued = queue.submit(new ExchangeRequest(uuid, BigDecimal.ONE, Currency.PLN));
+        var rejected = queue.submit(new ExchangeRequest(uuid, BigDecimal.ONE, Currency.PLN));
+        release.countDown();
+        applying.completion().get(5, TimeUnit.SECONDS);
+
+        // then
+        assertThat(queued).isPresent();
+        assertThat(rejected).isEmpty();
+        assertThat(applying.getStatus()).isEqualTo(ExchangeOrder.Status.FAILED);
+        assertThat(applying.getMessage()).isEqualTo("Exchange rate unavailable");
+        assertThat(queued.get().completion().get(5, TimeUnit.SECONDS).getStatus())
+                .isEqualTo(ExchangeOrder.Status.FAILED);
+    }
+
+    @Test
+    void testFailedBatchIsAppliedOrderByOrder() throws Exception {
+        // given
+        var writing = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        exchanges(request -> {
+            if (request.getAmount().intValue() == 1) {
+                writing.countDown();
+                await(release);
+            }
+            if (request.getAmount().intValue() == 13) {
+                throw new IllegalStateException("Poisoned");
+            }
+            return ok(request);
+        });
+        queue = queue(1, 100);
+        var uuid = UUID.randomUUID().toString();
+
+        // when
+        var blocking = queue.submit(new ExchangeRequest(uuid, new BigDecimal(1), Currency.PLN)).orElseThrow();
+        writing.await(5, TimeUnit.SECONDS);
+        var before = queue.submit(new ExchangeRequest(uuid, new BigDecimal(12), Currency.PLN)).orElseThrow();
+        var poisoned = queue.submit(new ExchangeRequest(uuid, new BigDecimal(13), Currency.PLN)).orElseThrow();
+        var after = queue.submit(new ExchangeRequest(uuid, new BigDecimal(14), Currency.PLN)).orElseThrow();
+        release.countDown();
+        for (ExchangeOrder order : List.of(blocking, before, poisoned, after)) {
+            order.completion().get(5, TimeUnit.SECONDS);
+        }
+
+        // then
+        assertThat(List.of(blocking, before, after)).allMatch(order -> order.getStatus() == ExchangeOrder.Status.DONE);
+        assertThat(poisoned.getStatus()).isEqualTo(ExchangeOrder.Status.FAILED);
+        assertThat(poisoned.getMessage()).isEqualTo("Exchange failed");
+    }
+
+    @Test
+    void testErrorFailsTheBatchAndKeepsTheWriterRunning() throws Exception {
+        // given
+        exchanges(request -> {
+            if (request.getAmount().intValue() == 1) {
+                throw new StackOverflowError();
+            }
+            return ok(request);
+        });
+        queue = queue(1, 100);
+        var uuid = UUID.randomUUID().toString();
+
+        // when
+        var failed = queue.submit(new ExchangeRequest(uuid, new BigDecimal(1), Currency.PLN)).orElseThrow()
+                .completion().get(5, TimeUnit.SECONDS);
+        var next = queue.submit(new ExchangeRequest(uuid, new BigDecimal(2), Currency.PLN)).orElseThrow()
+                .completion().get(5, TimeUnit.SECONDS);
+
+        // then
+        assertThat(failed.getStatus()).isEqualTo(ExchangeOrder.Status.FAILED);
+        assertThat(next.getStatus()).isEqualTo(ExchangeOrder.Status.DONE);
+    }
+
+    /**
+     * Stubs {@link AccountService#exchangeBatch(Iterator, Consumer)} as one chunk: a failing request fails the
+     * whole call before any result is handed out.
+     */
+    private void exchanges(Function<ExchangeRequest, ExchangeResult> exchange) {
+        doAnswer(invocation -> {
+            Iterator<ExchangeRequest> requests = invocation.getArgument(0);
+            Consumer<ExchangeResult> sink = invocation.getArgument(1);
+            List<ExchangeResult> results = new ArrayList<>();
+            requests.forEachRemaining(request -> results.add(exchange.apply(request)));
+            results.forEach(sink);
+            return null;
+        }).when(accountService).exchangeBatch(any(), any());
+    }
+
+    private static ExchangeResult ok(ExchangeRequest request) {
+        return ExchangeResult.failed(request.getUuid(), ExchangeResult.Status.OK, null);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ExchangeOrderQueue queue(int partitions, int capacity) {
+        return new ExchangeOrderQueue(accountService, partitions, capacity, 10, 1000, Duration.ofMinutes(1),
+                new SimpleMeterRegistry());
+    }
+}
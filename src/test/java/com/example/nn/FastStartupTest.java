@@ -0,0 +1,61 @@
+package com.example.nn;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.crossstore.ChangeSetPersister;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "nn.rates.sources=file",
+        "nn.rates.file.location=classpath:rates/table-a.json"
+})
+@ActiveProfiles("fast-startup")
+class FastStartupTest {
+
+    private final ConfigurableListableBeanFactory beanFactory;
+
+    private final MeterRegistry registry;
+
+    @Autowired
+    public FastStartupTest(ConfigurableListableBeanFactory beanFactory, MeterRegistry registry) {
+        this.beanFactory = beanFactory;
+        this.registry = registry;
+    }
+
+    @Test
+    void testExchangePathIsEagerAndStartupIsReported() throws ChangeSetPersister.NotFoundException {
+        // given
+        var accountService = beanFactory.getBean(AccountService.class);
+        var account = accountService.createAccount(new CreateAccountRequest("Jan", "Startup", new BigDecimal(100)));
+
+        // when
+        accountService.exchange(account.getId().toString(), BigDecimal.ONE, Currency.PLN, Currency.USD);
+
+        // then
+        assertThat(beanFactory.getBeanDefinition("accountBulkService").isLazyInit()).isTrue();
+        assertThat(beanFactory.getBeanDefinition("accountService").isLazyInit()).isFalse();
+        assertThat(beanFactory.getBeanDefinition("rateProvider").isLazyInit()).isFalse();
+        assertThat(registry.find("nn.startup.ready").timeGauge()).isNotNull();
+        assertThat(registry.find("nn.startup.first-exchange").timeGauge()).isNotNull();
+    }
+
+    @Test
+    void testBeansWithScheduledMethodsAreEager() {
+        // given
+        var valuation = beanFactory.getBeanDefinition("portfolioValuation");
+
+        // when
+        boolean lazy = valuation.isLazyInit();
+
+        // then
+        assertThat(lazy).isFalse();
+        assertThat(beanFactory.containsSingleton("portfolioValuation")).isTrue();
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.nn;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FixedPointTest {
+
+    @Test
+    void testDecimalRoundTrip() {
+        assertThat(FixedPoint.toMinor(new BigDecimal("2000"))).isEqualTo(2000_00);
+        assertThat(FixedPoint.toMinor(new BigDecimal("24.039"))).isEqualTo(24_03);
+        assertThat(FixedPoint.toDecimal(2000_00)).isEqualTo(new BigDecimal(2000));
+        assertThat(FixedPoint.toDecimal(941_60)).isEqualTo(new BigDecimal("941.6"));
+        assertThat(FixedPoint.toDecimal(-1_50)).isEqualTo(new BigDecimal("-1.5"));
+        assertThat(FixedPoint.toDecimal(24_03)).isEqualTo(new BigDecimal("24.03"));
+    }
+
+    @Test
+    void testMoneyHasAtMost13IntegerDigitsAnd2Decimals() {
+        assertThat(FixedPoint.isMoney(new BigDecimal("9999999999999.99"))).isTrue();
+        assertThat(FixedPoint.isMoney(new BigDecimal("1.500"))).isTrue();
+        assertThat(FixedPoint.isMoney(new BigDecimal("1e20"))).isFalse();
+        assertThat(FixedPoint.isMoney(new BigDecimal("0.001"))).isFalse();
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.nn;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdempotencyStoreTest {
+
+    private static final UUID ID = UUID.randomUUID();
+
+    private final IdempotencyStore store = new IdempotencyStore(100, Duration.ofMinutes(1), new SimpleMeterRegistry());
+
+    @Test
+    void testDuplicateWaitsForExchangeInFlight() {
+        // given
+        var account = new Account(UUID.randomUUID(), "Jan", "Kowalski", new BigDecimal(1900), new BigDecimal(25));
+        var request = new ExchangeRequest(account.getId().toString(), new BigDecimal(100), Currency.PLN);
+        var inFlight = new CompletableFuture<Account>();
+        var exchanges = new AtomicInteger();
+
+        // when
+        var first = store.execute("key", request, () -> {
+            exchanges.incrementAndGet();
+            return inFlight;
+        });
+        var duplicate = store.execute("key", request, () -> {
+            exchanges.incrementAndGet();
+            return CompletableFuture.completedFuture(account);
+        });
+        var pending = duplicate.isDone();
+        inFlight.complete(account);
+        account.setBalance(Currency.PLN, new BigDecimal(1800));
+
+        // then
+        assertThat(pending).isFalse();
+        assertThat(exchanges).hasValue(1);
+        assertThat(first.join().getPlnBalance()).isEqualByComparingTo("1900");
+        assertThat(duplicate.join().getPlnBalance()).isEqualByComparingTo("1900");
+    }
+
+    @Test
+    void testFailedExchangeIsRetried() {
+        // given
+        var account = new Account(UUID.randomUUID(), "Jan", "Kowalski", new BigDecimal(1900), new BigDecimal(25));
+        var request = new ExchangeRequest(account.getId().toString(), new BigDecimal("100.00"), Currency.PLN);
+        var retry = new ExchangeRequest(account.getId().toString(), new BigDecimal(100), Currency.PLN, Currency.USD);
+
+        // when
+        var failed = store.execute("key", request,
+                () -> CompletableFuture.failedFuture(new RateUnavailableException("No rates")));
+        var retried = store.execute("key", retry, () -> CompletableFuture.completedFuture(account));
+
+        // then
+        assertThat(failed).isCompletedExceptionally();
+        assertThat(retried.join().getId()).isEqualTo(account.getId());
+        assertThatThrownBy(() -> store.execute("key", new ExchangeRequest(account.getId().toString(),
+                new BigDecimal(100), Currency.PLN, Currency.EUR), () -> CompletableFuture.completedFuture(account)))
+                .isInstanceOf(IdempotencyKeyReusedException.class);
+    }
+
+    @Test
+    void testFullStoreKeepsRecentKeysAndRefusesNewOnes() {
+        // given
+        var store = new IdempotencyStore(3, Duration.ofMinutes(1), new SimpleMeterRegistry());
+        var exchanges = new AtomicInteger();
+        var inFlight = new CompletableFuture<Account>();
+        store.execute("running", request(), () -> inFlight);
+        for (String key : new String[]{"old", "recent"}) {
+            store.execute(key, request(), () -> {
+                exchanges.incrementAndGet();
+                return CompletableFuture.completedFuture(account());
+            });
+        }
+
+        // when
+        var retry = store.execute("recent", request(), () -> {
+            exchanges.incrementAndGet();
+            return CompletableFuture.completedFuture(account());
+        });
+
+        // then
+        assertThat(retry.join()).isNotNull();
+        assertThat(exchanges).hasValue(2);
+        assertThatThrownBy(() -> store.execute("new", request(),
+                () -> CompletableFuture.completedFuture(account())))
+                .isInstanceOf(IdempotencyStoreFullException.class);
+        assertThat(store.execute("running", request(), CompletableFuture::new)).isNotDone();
+    }
+
+    private static ExchangeRequest request() {
+        return new ExchangeRequest(ID.toString(), new BigDecimal(100), Currency.PLN);
+    }
+
+    private static Account account() {
+        return new Account(ID, "Jan", "Kowalski", new BigDecimal(1900), new BigDecimal(25));
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.nn;
+
+import org.springframework.test.context.TestPropertySource;
+
+@TestPropertySource(properties = "spring.threads.virtual.enabled=false")
+class PlatformThreadExchangeLoadTest extends ExchangeLoadTest {
+
+    @Override
+    int maxPlatformThreads() {
+        // Tomcat grows its pool up to server.tomcat.threads.max and queues the rest
+        return Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.nn;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "nn.valuation.chunk-size=2048",
+        "nn.valuation.parallelism=2",
+        "nn.rates.sources=file",
+        "nn.rates.file.location=classpath:rates/table-a.json"
+})
+class PortfolioValuationTest {
+
+    private final PortfolioValuation valuation;
+
+    private final AccountService accountService;
+
+    private final AccountBulkService accountBulkService;
+
+    private final RateProvider rateProvider;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public PortfolioValuationTest(PortfolioValuation valuation, AccountService accountService,
+                                  AccountBulkService accountBulkService, RateProvider rateProvider,
+                                  JdbcTemplate jdbcTemplate) {
+        this.valuation = valuation;
+        this.accountService = accountService;
+        this.accountBulkService = accountBulkService;
+        this.rateProvider = rateProvider;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Test
+    void testValuesAllAccountsAndReportsViolations() throws Exception {
+        // given
+        var csv = new StringBuilder("name,lastName,balance\n");
+        for (int i = 1; i <= 2997; i++) {
+            csv.append("Jan,Valued,").append(i).append('\n');
+        }
+        accountBulkService.importAccounts(AccountBulkService.Format.CSV,
+                new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)));
+        var negative = accountService.createAccount(new CreateAccountRequest("Jan", "Negative", BigDecimal.ONE));
+        var malformed = accountService.createAccount(new CreateAccountRequest("Jan", "Malformed", BigDecimal.ONE));
+        var huge = accountService.createAccount(new CreateAccountRequest("Jan", "Huge", BigDecimal.ONE));
+        var exchanging = accountService.createAccount(new CreateAccountRequest("Jan", "Exchanging", new BigDecimal(1000)));
+        var exchanged = accountService.exchange(exchanging.getId().toString(), new BigDecimal(100), Currency.PLN,
+                Currency.USD);
+        var balances = new long[Currency.count()];
+        balances[Currency.PLN.ordinal()] = -500;
+        jdbcTemplate.update("update account set balances = ? where id = ?", BalancesConverter.encode(balances),
+                negative.getId());
+        jdbcTemplate.update("update account set balances = ? where id = ?", new byte[5], malformed.getId());
+        var hugeBalances = new long[Currency.count()];
+        hugeBalances[Currency.USD.ordinal()] = Long.MAX_VALUE / 2;
+        jdbcTemplate.update("update account set balances = ? where id = ?", BalancesConverter.encode(hugeBalances),
+                huge.getId());
+
+        // when
+        var report = valuation.start().get(30, TimeUnit.SECONDS);
+
+        // then
+        var usdMinor = FixedPoint.toMinor(exchanged.getUsdBalance());
+        var plnMinor = 2997L * 2998 / 2 * 100 - 500 + 900_00;
+        var usdInPln = rateProvider.getRate().convert(usdMinor, Currency.USD, Currency.PLN);
+        assertThat(report.getAccounts()).isEqualTo(3001);
+        assertThat(report.getTotals().get(Currency.PLN)).isEqualByComparingTo(FixedPoint.toDecimal(plnMinor));
+        assertThat(report.getTotals().get(Currency.USD))
+                .isEqualByComparingTo(FixedPoint.toDecimal(usdMinor + Long.MAX_VALUE / 2));
+        assertThat(report.getPlnValue()).isEqualByComparingTo(FixedPoint.toDecimal(plnMinor + usdInPln));
+        assertThat(report.getUsdValue()).isPositive();
+        assertThat(report.getTotals().values()).allMatch(total -> total.scale() >= 0);
+        assertThat(report.getHistogram().values().stream().mapToLong(Long::longValue).sum()).isEqualTo(3001);
+        assertThat(report.getHistogram()).containsEntry("0", 3L).containsEntry("<10", 9L);
+        assertThat(report.getUnvaluedBalances()).isEqualTo(1);
+        assertThat(report.getNegativeBalanceAccounts()).isEqualTo(1);
+        assertThat(report.getMalformedAccounts()).isEqualTo(1);
+        assertThat(report.getViolations()).containsExactlyInAnyOrder(
+                new ValuationReport.Violation(negative.getId(), "negative balance"),
+                new ValuationReport.Violation(malformed.getId(), "malformed balances"),
+                new ValuationReport.Violation(huge.getId(), "PLN value out of range"));
+        assertThat(valuation.status()).containsEntry("running", false).containsEntry("accountsValued", 3001L)
+                .containsEntry("lastReport", report);
+    }
+}
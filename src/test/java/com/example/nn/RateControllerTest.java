@@ -0,0 +1,137 @@
+package com.example.nn;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(RateController.class)
+@Import(SimpleMeterRegistry.class)
+class RateControllerTest {
+
+    private static final LocalDate DATE = LocalDate.of(2023, 5, 2);
+
+    private final MockMvc mvc;
+
+    @MockBean
+    private RateProvider rateProvider;
+
+    @MockBean
+    private CompositeRateSource rateSource;
+
+    @MockBean
+    private RateHistory rateHistory;
+
+    @Autowired
+    public RateControllerTest(MockMvc mvc) {
+        this.mvc = mvc;
+    }
+
+    @Test
+    void testHistoryOfADate() throws Exception {
+        // given
+        when(rateHistory.asOf(DATE)).thenReturn(Optional.of(rates()));
+
+        // when / then
+        mvc.perform(MockMvcRequestBuilders.get("/rates/history/2023-05-02"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.effectiveDate", is("2023-05-02")));
+        mvc.perform(MockMvcRequestBuilders.get("/rates/history/2023-05-01"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testConvert() throws Exception {
+        // given
+        when(rateHistory.asOf(DATE)).thenReturn(Optional.of(rates()));
+
+        // when / then
+        mvc.perform(MockMvcRequestBuilders.get("/rates/convert")
+                        .param("amount", "100").param("from", "USD").param("to", "PLN").param("date", "2023-05-02"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.result", is(400)));
+    }
+
+    @Test
+    void testConvertRejectsAmountsThatAreNotMoney() throws Exception {
+        // given
+        when(rateHistory.asOf(DATE)).thenReturn(Optional.of(rates()));
+
+        // when / then
+        for (String amount : new String[]{"0", "-1", "0.001", "1e20"}) {
+            mvc.perform(MockMvcRequestBuilders.get("/rates/convert")
+                            .param("amount", amount).param("from", "USD").param("to", "PLN")
+                            .param("date", "2023-05-02"))
+                    .andExpect(status().isBadRequest());
+        }
+    }
+
+    @Test
+    void testBackfill() throws Exception {
+        // given
+        var from = LocalDate.of(2023, 5, 1);
+        var to = LocalDate.of(2023, 5, 31);
+        when(rateHistory.backfillAsync(from, to)).thenReturn(CompletableFuture.completedFuture(3));
+        when(rateHistory.size()).thenReturn(3);
+
+        // when
+        MvcResult result = mvc.perform(MockMvcRequestBuilders.post("/rates/history/backfill")
+                        .param("from", "2023-05-01").param("to", "2023-05-31"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // then
+        mvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.tables", is(3)))
+                .andExpect(jsonPath("$.stored", is(3)));
+    }
+
+    @Test
+    void testBackfillRejectsBadRangeAndConcurrentRun() throws Exception {
+        // given
+        when(rateHistory.backfillAsync(LocalDate.of(2023, 5, 31), LocalDate.of(2023, 5, 1)))
+                .thenThrow(new IllegalArgumentException("Backfill range ends before it starts"));
+        when(rateHistory.backfillAsync(LocalDate.of(2023, 6, 1), LocalDate.of(2023, 6, 30)))
+                .thenThrow(new IllegalStateException("A rate history backfill is already running"));
+
+        // when
+        MvcResult reversed = mvc.perform(MockMvcRequestBuilders.post("/rates/history/backfill")
+                        .param("from", "2023-05-31").param("to", "2023-05-01"))
+                .andReturn();
+        MvcResult running = mvc.perform(MockMvcRequestBuilders.post("/rates/history/backfill")
+                        .param("from", "2023-06-01").param("to", "2023-06-30"))
+                .andReturn();
+
+        // then
+        mvc.perform(MockMvcRequestBuilders.asyncDispatch(reversed))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Backfill range ends before it starts"));
+        mvc.perform(MockMvcRequestBuilders.asyncDispatch(running))
+                .andExpect(status().isConflict());
+        verify(rateHistory, never()).backfill(any(), any());
+    }
+
+    private static RateSnapshot rates() {
+        return new RateSnapshot(Map.of(Currency.USD, new BigDecimal(4)), DATE, "nbp", Instant.now());
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.nn;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RateHistoryTest {
+
+    private final RateSource file = new FileRateSource(new ObjectMapper().findAndRegisterModules(),
+            new ClassPathResource("rates/history.json"));
+
+    @Test
+    void testBackfillAndLookupWithPreviousBusinessDayFallback() {
+        // given
+        var history = history(file);
+
+        // when
+        var stored = history.backfill(LocalDate.of(2023, 5, 1), LocalDate.of(2023, 5, 31));
+
+        // then
+        assertThat(stored).isEqualTo(3);
+        // 2023-05-03 is a public holiday without a table
+        assertThat(history.asOf(LocalDate.of(2023, 5, 3)).orElseThrow().getEffectiveDate())
+                .isEqualTo(LocalDate.of(2023, 5, 2));
+        assertThat(history.asOf(LocalDate.of(2023, 5, 7)).orElseThrow().mid(Currency.USD))
+                .isEqualByComparingTo("4.1605");
+        assertThat(history.asOf(LocalDate.of(2023, 5, 1))).isEmpty();
+        assertThat(history.asOf(LocalDate.of(2023, 5, 13))).isEmpty();
+    }
+
+    @Test
+    void testConvertsAtTheTableOfTheDate() {
+        // given
+        var history = history(file);
+        history.backfill(LocalDate.of(2023, 5, 1), LocalDate.of(2023, 5, 31));
+
+        // when
+        var conversion = ConversionResult.of(history.asOf(LocalDate.of(2023, 5, 3)).orElseThrow(), 100_00,
+                Currency.EUR, Currency.USD);
+
+        // then
+        assertThat(conversion.getEffectiveDate()).isEqualTo(LocalDate.of(2023, 5, 2));
+        assertThat(conversion.getRate()).isEqualByComparingTo("1.1009991573");
+        assertThat(conversion.getResult()).isEqualByComparingTo("110.09");
+    }
+
+    @Test
+    void testRecordsTablesFetchedByRateProvider() {
+        // given
+        var provider = provider(file);
+        var history = new RateHistory(composite(file), provider, Period.ofDays(7), 0, Period.ofYears(1), false);
+
+        // when
+        provider.refresh().join();
+
+        // then
+        assertThat(history.asOf(LocalDate.of(2023, 5, 5))).isPresent();
+        assertThat(history.size()).isEqualTo(1);
+    }
+
+    @Test
+    void testBackfillRangeIsCapped() {
+        // given
+        var history = history(file);
+        var today = LocalDate.now();
+
+        // when / then
+        assertThatThrownBy(() -> history.backfillAsync(LocalDate.of(2023, 5, 31), LocalDate.of(2023, 5, 1)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> history.backfillAsync(LocalDate.of(2001, 12, 1), LocalDate.of(2002, 1, 31)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> history.backfillAsync(today, today.plusDays(1)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> history.backfillAsync(LocalDate.of(2021, 1, 1), LocalDate.of(2023, 1, 1)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testSecondBackfillIsRejectedWhileOneRuns() {
+        // given
+        var release = new CountDownLatch(1);
+        var history = history(new RateSource() {
+            @Override
+            public String getName() {
+                return "slow";
+            }
+
+            @Override
+            public RateSnapshot fetch() {
+                throw new RateUnavailableException("unused");
+            }
+
+            @Override
+            public List<RateSnapshot> fetchRange(LocalDate from, LocalDate to) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return List.of();
+            }
+        });
+        var running = history.backfillAsync(LocalDate.of(2023, 5, 1), LocalDate.of(2023, 5, 31));
+
+        // when
+        assertThatThrownBy(() -> history.backfillAsync(LocalDate.of(2023, 6, 1), LocalDate.of(2023, 6, 30)))
+                .isInstanceOf(IllegalStateException.class);
+        release.countDown();
+        running.join();
+
+        // then
+        assertThat(history.backfillAsync(LocalDate.of(2023, 6, 1), LocalDate.of(2023, 6, 30)).join()).isZero();
+    }
+
+    @Test
+    void testNbpRangesAreSplitInto93DayRequests() {
+        // given
+        List<LocalDate[]> requests = new ArrayList<>();
+        var table = new RatesTable(LocalDate.of(2023, 1, 2), List.of(new RatesTable.Rate("USD", BigDecimal.TEN)));
+
+        // when
+        var snapshots = NbpRanges.fetch(LocalDate.of(2023, 1, 1), LocalDate.of(2023, 12, 31), "nbp", (from, to) -> {
+            requests.add(new LocalDate[]{from, to});
+            return new RatesTable[]{table};
+        });
+
+        // then
+        assertThat(snapshots).hasSize(4);
+        assertThat(requests.get(0)).containsExactly(LocalDate.of(2023, 1, 1), LocalDate.of(2023, 4, 3));
+        assertThat(requests.get(3)).containsExactly(LocalDate.of(2023, 10, 7), LocalDate.of(2023, 12, 31));
+    }
+
+    private static RateHistory history(RateSource source) {
+        return new RateHistory(composite(source), provider(new RateSource() {
+            @Override
+            public String getName() {
+                return "unused";
+            }
+
+            @Override
+            public RateSnapshot fetch() {
+                return new RateSnapshot(Map.of(), LocalDate.now(), getName(), Instant.now());
+            }
+        }), Period.ofDays(7), 0, Period.ofYears(1), false);
+    }
+
+    private static RateProvider provider(RateSource source) {
+        return new RateProvider(composite(source), Duration.ofDays(1), Duration.ofDays(2), new SimpleMeterRegistry(),
+                false);
+    }
+
+    private static CompositeRateSource composite(RateSource source) {
+        return new CompositeRateSource(List.of(source), List.of(source.getName()), "failover",
+                new SimpleMeterRegistry(), false);
+    }
+}
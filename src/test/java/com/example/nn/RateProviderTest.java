@@ -0,0 +1,134 @@
+package com.example.nn;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RateProviderTest {
+
+    private final RateSource rateSource = mock(RateSource.class);
+
+    private CompositeRateSource compositeRateSource;
+
+    private RateProvider rateProvider;
+
+    @BeforeEach
+    void setUp() {
+        when(rateSource.getName()).thenReturn("nbp");
+        compositeRateSource = new CompositeRateSource(List.of(rateSource), List.of("nbp"), "failover",
+                new SimpleMeterRegistry(), false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        rateProvider.shutdown();
+        compositeRateSource.shutdown();
+    }
+
+    @Test
+    void testConcurrentColdReadsShareOneFetch() throws Exception {
+        // given
+        rateProvider = new RateProvider(compositeRateSource, Duration.ofMinutes(15), Duration.ofHours(24),
+                new SimpleMeterRegistry(), false);
+        var release = new CountDownLatch(1);
+        when(rateSource.fetch()).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return snapshot(new BigDecimal(4));
+        });
+
+        // when
+        var first = rateProvider.refresh();
+        var second = rateProvider.refresh();
+        release.countDown();
+
+        // then
+        assertThat(second).isSameAs(first);
+        assertThat(first.get(5, TimeUnit.SECONDS).mid(Currency.USD)).isEqualTo(new BigDecimal(4));
+        verify(rateSource, times(1)).fetch();
+    }
+
+    @Test
+    void testServesLastKnownRateWhenRefreshFails() {
+        // given
+        rateProvider = new RateProvider(compositeRateSource, Duration.ZERO, Duration.ofHours(24),
+                new SimpleMeterRegistry(), false);
+        when(rateSource.fetch())
+                .thenReturn(snapshot(new BigDecimal(4)))
+                .thenThrow(new ResourceAccessException("NBP down"));
+
+        // when
+        var cold = rateProvider.getRate();
+        var stale = rateProvider.getRate();
+
+        // then
+        assertThat(cold.mid(Currency.USD)).isEqualTo(new BigDecimal(4));
+        assertThat(stale).isSameAs(cold);
+    }
+
+    @Test
+    void testFailsWhenNoRateWithinStalenessBound() {
+        // given
+        rateProvider = new RateProvider(compositeRateSource, Duration.ZERO, Duration.ZERO,
+                new SimpleMeterRegistry(), false);
+        when(rateSource.fetch()).thenThrow(new ResourceAccessException("NBP down"));
+
+        // when then
+        assertThatThrownBy(() -> rateProvider.getRate()).isInstanceOf(RateUnavailableException.class);
+    }
+
+    @Test
+    void testRefreshSucceedsWhenListenerThrows() {
+        // given
+        rateProvider = new RateProvider(compositeRateSource, Duration.ofHours(1), Duration.ofHours(24),
+                new SimpleMeterRegistry(), false);
+        when(rateSource.fetch()).thenReturn(snapshot(new BigDecimal(4)));
+        rateProvider.onRefresh(snapshot -> {
+            throw new IllegalStateException("listener down");
+        });
+
+        // when
+        var rate = rateProvider.getRate();
+
+        // then
+        assertThat(rate.mid(Currency.USD)).isEqualTo(new BigDecimal(4));
+    }
+
+    @Test
+    void testErrorInFetchDoesNotStallLaterRefreshes() {
+        // given
+        rateProvider = new RateProvider(compositeRateSource, Duration.ofHours(1), Duration.ofHours(24),
+                new SimpleMeterRegistry(), false);
+        when(rateSource.fetch())
+                .thenThrow(new OutOfMemoryError("fetch"))
+                .thenReturn(snapshot(new BigDecimal(4)));
+
+        // when
+        var failed = rateProvider.refresh();
+
+        // then
+        assertThat(failed).failsWithin(5, TimeUnit.SECONDS);
+        assertThat(rateProvider.refresh().join().mid(Currency.USD)).isEqualTo(new BigDecimal(4));
+    }
+
+    private static RateSnapshot snapshot(BigDecimal mid) {
+        return new RateSnapshot(Map.of(Currency.USD, mid), LocalDate.now(), "nbp", Instant.now());
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.nn;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RateSnapshotTest {
+
+    @Test
+    void testConversionsRoundDown() {
+        // given
+        var mids = Map.of(Currency.USD, new BigDecimal("4.1605"), Currency.EUR, new BigDecimal("4.5866"));
+        var rates = new RateSnapshot(mids, LocalDate.now(), "nbp", Instant.now());
+
+        // when then
+        assertThat(rates.convert(100_00, Currency.PLN, Currency.USD)).isEqualTo(24_03);
+        assertThat(rates.convert(10_00, Currency.USD, Currency.PLN)).isEqualTo(41_60);
+        assertThat(rates.convert(100_00, Currency.EUR, Currency.USD)).isEqualTo(110_24);
+        assertThat(rates.convert(Long.MAX_VALUE / 1_000, Currency.USD, Currency.USD)).isEqualTo(Long.MAX_VALUE / 1_000);
+        assertThat(rates.crossRate(Currency.PLN, Currency.USD)).isEqualTo(2_403557264L);
+        assertThat(rates.crossRate(Currency.EUR, Currency.PLN)).isEqualTo(45_866000000L);
+    }
+
+    @Test
+    void testExactCrossRateDoesNotLoseAMinorUnit() {
+        // given
+        var rates = new RateSnapshot(Map.of(Currency.USD, new BigDecimal(3)), LocalDate.now(), "nbp", Instant.now());
+
+        // when then
+        assertThat(rates.convert(3_00, Currency.PLN, Currency.USD)).isEqualTo(1_00);
+    }
+
+    @Test
+    void testTableKeepsSupportedCurrenciesOnly() {
+        // given
+        var table = new RatesTable(LocalDate.of(2023, 5, 5), List.of(
+                new RatesTable.Rate("USD", new BigDecimal("4.1605")),
+                new RatesTable.Rate("THB", new BigDecimal("0.1230")),
+                new RatesTable.Rate("CHF", new BigDecimal("4.6617"))));
+
+        // when
+        var rates = RateSnapshot.of(new RatesTable[]{table}, "nbp", Instant.now());
+
+        // then
+        assertThat(rates.getMids()).containsOnlyKeys(Currency.PLN, Currency.USD, Currency.CHF);
+        assertThat(rates.getEffectiveDate()).isEqualTo(LocalDate.of(2023, 5, 5));
+        assertThat(rates.isQuoted(Currency.CHF, Currency.USD)).isTrue();
+        assertThat(rates.isQuoted(Currency.CHF, Currency.GBP)).isFalse();
+        assertThatThrownBy(() -> rates.convert(1_00, Currency.GBP, Currency.PLN))
+                .isInstanceOf(RateUnavailableException.class);
+    }
+}
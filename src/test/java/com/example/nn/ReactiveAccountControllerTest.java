@@ -0,0 +1,217 @@
+package com.example.nn;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+import static com.example.nn.AccountControllerTest.asJsonString;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@WebFluxTest(ReactiveAccountController.class)
+@Import({IdempotencyStore.class, SimpleMeterRegistry.class, WireFormatConfiguration.class})
+@ActiveProfiles("reactive")
+class ReactiveAccountControllerTest {
+
+    private final WebTestClient client;
+
+    @MockBean
+    private ReactiveAccountService accountService;
+
+    @MockBean
+    private BalanceEventBus balanceEventBus;
+
+    @Autowired
+    public ReactiveAccountControllerTest(WebTestClient client) {
+        this.client = client;
+    }
+
+    @Test
+    void testGetAccountRequest() {
+        // given
+        var uuid = UUID.randomUUID();
+        var account = new Account(uuid, "Jan", "Kowalski", new BigDecimal(2000), new BigDecimal(0));
+
+        // when
+        when(accountService.getAccount(uuid.toString())).thenReturn(Mono.just(account));
+
+        // then
+        client.get().uri("/account/" + uuid)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo(uuid.toString())
+                .jsonPath("$.name").isEqualTo("Jan")
+                .jsonPath("$.lastName").isEqualTo("Kowalski")
+                .jsonPath("$.plnBalance").isEqualTo(2000)
+                .jsonPath("$.usdBalance").isEqualTo(0);
+    }
+
+    @Test
+    void testGetAccountNotFound() {
+        // given
+        var uuid = UUID.randomUUID();
+
+        // when
+        when(accountService.getAccount(any())).thenReturn(Mono.empty());
+
+        // then
+        client.get().uri("/account/" + uuid)
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody(String.class).isEqualTo("Account not found");
+    }
+
+    @Test
+    void testCreateAccount() {
+        // given
+        var createAccountRequest = new CreateAccountRequest("Jan", "Kowalski", new BigDecimal(2000));
+        var uuid = UUID.randomUUID();
+        var expectedAccount = new Account(uuid, "Jan", "Kowalski", new BigDecimal(2000), new BigDecimal(0));
+
+        // when
+        when(accountService.createAccount(any())).thenReturn(Mono.just(expectedAccount));
+
+        // then
+        client.post().uri("/account")
+                .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON)
+                .bodyValue(asJsonString(createAccountRequest))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo(uuid.toString())
+                .jsonPath("$.name").isEqualTo("Jan")
+                .jsonPath("$.lastName").isEqualTo("Kowalski")
+                .jsonPath("$.plnBalance").isEqualTo(2000)
+                .jsonPath("$.usdBalance").isEqualTo(0);
+    }
+
+    @Test
+    void testCreateAccountInSmile() throws Exception {
+        // given
+        var smile = new ObjectMapper(new SmileFactory());
+        var uuid = UUID.randomUUID();
+        var expectedAccount = new Account(uuid, "Jan", "Kowalski", new BigDecimal(2000), new BigDecimal(0));
+        when(accountService.createAccount(any())).thenReturn(Mono.just(expectedAccount));
+
+        // when
+        var body = client.post().uri("/account")
+                .contentType(WireFormatConfiguration.APPLICATION_SMILE).accept(WireFormatConfiguration.APPLICATION_SMILE)
+                .bodyValue(smile.writeValueAsBytes(new CreateAccountRequest("Jan", "Kowalski", new BigDecimal(2000))))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(WireFormatConfiguration.APPLICATION_SMILE)
+                .expectBody(byte[].class)
+                .returnResult()
+                .getResponseBody();
+
+        // then
+        var account = smile.readTree(body);
+        assertThat(smile.treeToValue(account.get("id"), UUID.class)).isEqualTo(uuid);
+        assertThat(account.get("lastName").asText()).isEqualTo("Kowalski");
+        assertThat(account.get("plnBalance").decimalValue()).isEqualByComparingTo("2000");
+    }
+
+    @Test
+    void testCreateAccountMissingProperties() {
+        // given
+        var createAccountRequest = new CreateAccountRequest();
+
+        // when then
+        client.post().uri("/account")
+                .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON)
+                .bodyValue(asJsonString(createAccountRequest))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.name").isEqualTo("Name is mandatory")
+                .jsonPath("$.lastName").isEqualTo("Lastname is mandatory")
+                .jsonPath("$.balance").isEqualTo("Balance is mandatory");
+    }
+
+    @Test
+    void testExchangeCurrency() {
+        // given
+        var uuid = UUID.randomUUID();
+        var exchangeRequest = new ExchangeRequest(uuid.toString(), new BigDecimal(100), Currency.PLN);
+        var expectedAccount = new Account(uuid, "Jan", "Kowalski", new BigDecimal(1900), new BigDecimal(25));
+
+        // when
+        when(accountService.exchange(any(), any(), any(), any())).thenReturn(Mono.just(expectedAccount));
+
+        // then
+        client.put().uri("/account/exchange")
+                .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON)
+                .bodyValue(asJsonString(exchangeRequest))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo(uuid.toString())
+                .jsonPath("$.name").isEqualTo("Jan")
+                .jsonPath("$.lastName").isEqualTo("Kowalski")
+                .jsonPath("$.plnBalance").isEqualTo(1900)
+                .jsonPath("$.usdBalance").isEqualTo(25);
+    }
+
+    @Test
+    void testExchangeCurrencyMissingProperties() {
+        // given
+        var exchangeRequest = new ExchangeRequest();
+
+        // when then
+        client.put().uri("/account/exchange")
+                .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON)
+                .bodyValue(asJsonString(exchangeRequest))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.uuid").isEqualTo("uuid is mandatory")
+                .jsonPath("$.amount").isEqualTo("Amount is mandatory")
+                .jsonPath("$.from").isEqualTo("From is mandatory");
+    }
+
+    @Test
+    void testExchangeBatch() {
+        // given
+        var uuid = UUID.randomUUID();
+        var exchangeRequests = List.of(
+                new ExchangeRequest(uuid.toString(), new BigDecimal(100), Currency.PLN),
+                new ExchangeRequest("not-a-uuid", new BigDecimal(100), Currency.PLN));
+        var results = Flux.just(
+                ExchangeResult.of(ExchangeResult.Status.OK,
+                        new Account(uuid, "Jan", "Kowalski", new BigDecimal(1900), new BigDecimal(25))),
+                ExchangeResult.failed("not-a-uuid", ExchangeResult.Status.INVALID, "uuid is malformed"));
+
+        // when
+        when(accountService.exchangeBatch(any())).thenReturn(results);
+
+        // then
+        client.put().uri("/account/exchange/batch")
+                .contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON)
+                .bodyValue(asJsonString(exchangeRequests))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].uuid").isEqualTo(uuid.toString())
+                .jsonPath("$[0].status").isEqualTo("OK")
+                .jsonPath("$[0].plnBalance").isEqualTo(1900)
+                .jsonPath("$[0].usdBalance").isEqualTo(25)
+                .jsonPath("$[1].status").isEqualTo("INVALID")
+                .jsonPath("$[1].message").isEqualTo("uuid is malformed");
+    }
+}
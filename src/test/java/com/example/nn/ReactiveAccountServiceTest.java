@@ -0,0 +1,123 @@
+package com.example.nn;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "nn.rates.sources=file",
+        "nn.rates.file.location=classpath:rates/table-a.json",
+        "nn.journal.enabled=true",
+        "nn.journal.directory=${java.io.tmpdir}/nn-journal-${random.uuid}",
+        "nn.journal.segment-records=1024",
+        "nn.journal.wait-for-sync=true",
+        "nn.exchange.retry.max-attempts=100"
+})
+@ActiveProfiles("reactive")
+class ReactiveAccountServiceTest {
+
+    private final ReactiveAccountService accountService;
+
+    @Autowired
+    public ReactiveAccountServiceTest(ReactiveAccountService accountService) {
+        this.accountService = accountService;
+    }
+
+    @Test
+    void testExchangeFromPln() {
+        // given
+        var account = accountService.createAccount(
+                new CreateAccountRequest("Jan", "Kowalski", new BigDecimal(2000))).block();
+
+        // when
+        var result = accountService.exchange(account.getId().toString(), new BigDecimal(100),
+                Currency.PLN, Currency.USD);
+
+        // then
+        StepVerifier.create(result)
+                .assertNext(after -> {
+                    assertThat(after.getPlnBalance()).isEqualByComparingTo("1900");
+                    assertThat(after.getUsdBalance()).isEqualByComparingTo("24.03");
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void testExchangeWaitsForJournalSync() {
+        // given
+        var account = accountService.createAccount(
+                new CreateAccountRequest("Jan", "Kowalski", new BigDecimal(2000))).block();
+        var uuid = account.getId().toString();
+
+        // when
+        accountService.exchange(uuid, new BigDecimal(100), Currency.PLN, Currency.USD).block();
+
+        // then
+        StepVerifier.create(accountService.getHistory(uuid))
+                .assertNext(history -> {
+                    assertThat(history).hasSize(1);
+                    assertThat(history.get(0).getFromBalance()).isEqualByComparingTo("1900");
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void testExchangeOfUnknownAccountIsEmpty() {
+        // when
+        var result = accountService.exchange(UUID.randomUUID().toString(), new BigDecimal(100),
+                Currency.PLN, Currency.USD);
+
+        // then
+        StepVerifier.create(result).verifyComplete();
+    }
+
+    @Test
+    void testConcurrentExchangesOnOneAccountLoseNoUpdates() {
+        // given
+        var account = accountService.createAccount(
+                new CreateAccountRequest("Jan", "Kowalski", new BigDecimal(2000))).block();
+        var uuid = account.getId().toString();
+
+        // when
+        var applied = Flux.range(0, 16)
+                .flatMap(i -> accountService.exchange(uuid, new BigDecimal(100), Currency.PLN, Currency.USD))
+                .count()
+                .block();
+
+        // then
+        var after = accountService.getAccount(uuid).block();
+        assertThat(applied).isEqualTo(16);
+        assertThat(after.getPlnBalance()).isEqualByComparingTo("400");
+    }
+
+    @Test
+    void testExchangeBatch() {
+        // given
+        var account = accountService.createAccount(
+                new CreateAccountRequest("Jan", "Kowalski", new BigDecimal(200))).block();
+        var uuid = account.getId().toString();
+        var exchangeRequests = Flux.just(
+                new ExchangeRequest(uuid, new BigDecimal(100), Currency.PLN),
+                new ExchangeRequest("not-a-uuid", new BigDecimal(100), Currency.PLN),
+                new ExchangeRequest(uuid, new BigDecimal(100), Currency.PLN),
+                new ExchangeRequest(uuid, new BigDecimal(100), Currency.PLN));
+
+        // when
+        var results = accountService.exchangeBatch(exchangeRequests);
+
+        // then
+        StepVerifier.create(results.map(ExchangeResult::getStatus))
+                .expectNext(ExchangeResult.Status.OK, ExchangeResult.Status.INVALID, ExchangeResult.Status.OK,
+                        ExchangeResult.Status.INSUFFICIENT_FUNDS)
+                .verifyComplete();
+        assertThat(accountService.getAccount(uuid).block().getPlnBalance()).isEqualByComparingTo("0");
+    }
+}
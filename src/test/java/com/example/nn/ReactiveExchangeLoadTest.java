@@ -0,0 +1,13 @@
+package com.example.nn;
+
+import org.springframework.test.context.ActiveProfiles;
+
+@ActiveProfiles("reactive")
+class ReactiveExchangeLoadTest extends ExchangeLoadTest {
+
+    @Override
+    int maxPlatformThreads() {
+        // event loops, R2DBC and JVM housekeeping only; no thread per in-flight request
+        return 100;
+    }
+}
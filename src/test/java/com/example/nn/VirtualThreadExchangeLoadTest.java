@@ -0,0 +1,13 @@
+package com.example.nn;
+
+import org.springframework.test.context.TestPropertySource;
+
+@TestPropertySource(properties = "spring.threads.virtual.enabled=true")
+class VirtualThreadExchangeLoadTest extends ExchangeLoadTest {
+
+    @Override
+    int maxPlatformThreads() {
+        // carriers, pollers and JVM housekeeping only; no thread per in-flight request
+        return 100;
+    }
+}